@@ -0,0 +1,161 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.its.phabricator.conduit;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gson.stream.JsonReader;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.results.ManiphestEdit;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.results.ManiphestSearch;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.results.ProjectSearch;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.HttpEntity;
+import org.apache.http.util.EntityUtils;
+import org.eclipse.jgit.lib.Config;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for the per-event hot path of Conduit calls
+ *
+ * <p>Calls are answered by a {@link FixtureConduitConnection}, so the numbers cover building the
+ * parameters, serializing and form encoding them, and parsing and decoding the response, but not
+ * the network. Run with {@code -prof gc} to get allocation numbers next to the throughput.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public class ConduitBenchmark {
+  private static final String TOKEN = "api-abcdefghijklmnopqrstuvwxyz12";
+
+  private FixtureConduitConnection connection;
+  private Conduit conduit;
+  private SearchUtils searchUtils;
+  private String smallComment;
+  private String largeComment;
+  private List<ManiphestTransaction> mixedTransactions;
+  private List<Integer> pageOfTaskIds;
+  private String projectSearchPage;
+
+  @Setup
+  public void setUp() {
+    connection = new FixtureConduitConnection();
+    connection.setResponse("maniphest.edit", Fixtures.maniphestEditResponse());
+    connection.setResponse("maniphest.search", Fixtures.maniphestSearchPage());
+    projectSearchPage = Fixtures.projectSearchPage();
+    connection.setResponse("project.search", projectSearchPage);
+
+    searchUtils = new SearchUtils();
+    ProjectSearchCache projectSearchCache =
+        new ProjectSearchCache(CacheBuilder.newBuilder().build());
+    projectSearchCache.put("gerrit", new ProjectSearch("PHID-PROJ-aaaaaaaaaaaaaaaaaaaa", 101));
+    projectSearchCache.put(
+        "needs-review", new ProjectSearch("PHID-PROJ-bbbbbbbbbbbbbbbbbbbb", 102));
+    TaskExistenceCache taskExistenceCache =
+        new TaskExistenceCache(
+            CacheBuilder.newBuilder().build(), CacheBuilder.newBuilder().build());
+    // Suppression is off, as the benchmarks post the same comments over and over.
+    CommentDeduplicator commentDeduplicator =
+        new CommentDeduplicator(
+            "its-phabricator",
+            new Config(),
+            CacheBuilder.newBuilder().build(),
+            new DisabledMetricMaker());
+    conduit =
+        new Conduit(
+            baseUrl -> connection,
+            searchUtils,
+            projectSearchCache,
+            taskExistenceCache,
+            commentDeduplicator,
+            null,
+            "http://phabricator.example.org",
+            TOKEN);
+
+    smallComment = "Change 12345 merged: https://gerrit.example.org/c/12345";
+    largeComment = Fixtures.largeRemarkupComment();
+    mixedTransactions =
+        ImmutableList.of(
+            ManiphestTransaction.comment(smallComment),
+            ManiphestTransaction.addProject("gerrit"),
+            ManiphestTransaction.removeProject("needs-review"));
+    pageOfTaskIds = new ArrayList<>();
+    for (int i = 0; i < Fixtures.PAGE_SIZE; i++) {
+      pageOfTaskIds.add(Fixtures.FIRST_TASK_ID + i);
+    }
+  }
+
+  @Benchmark
+  public ManiphestEdit maniphestEditSmallComment() throws Exception {
+    return conduit.maniphestEdit(Fixtures.FIRST_TASK_ID, smallComment, null, null);
+  }
+
+  @Benchmark
+  public ManiphestEdit maniphestEditLargeRemarkupComment() throws Exception {
+    return conduit.maniphestEdit(Fixtures.FIRST_TASK_ID, largeComment, null, null);
+  }
+
+  @Benchmark
+  public ManiphestEdit maniphestEditCoalescedTransactions() throws Exception {
+    return conduit.maniphestEdit(Fixtures.FIRST_TASK_ID, mixedTransactions);
+  }
+
+  @Benchmark
+  public ManiphestSearch maniphestSearchFirstOfPage() throws Exception {
+    return conduit.maniphestSearch(Fixtures.FIRST_TASK_ID);
+  }
+
+  @Benchmark
+  public Map<Integer, ManiphestSearch> maniphestSearchWholePage() throws Exception {
+    return conduit.maniphestSearch(pageOfTaskIds);
+  }
+
+  @Benchmark
+  public SearchPage<ProjectSearch> projectSearchDecodePage() throws Exception {
+    JsonReader reader = new JsonReader(new StringReader(projectSearchPage));
+    return connection.readCallCapsule(
+        "project.search", reader, r -> searchUtils.readPage(r, ProjectSearch.class));
+  }
+
+  @Benchmark
+  public byte[] encodeLargeRemarkupComment() throws Exception {
+    Map<String, Object> transaction = new HashMap<>();
+    transaction.put("type", "comment");
+    transaction.put("value", largeComment);
+
+    Map<String, Object> params = new HashMap<>();
+    params.put("objectIdentifier", Fixtures.FIRST_TASK_ID);
+    params.put("transactions", ImmutableList.of(transaction));
+    HttpEntity entity = connection.createRequestEntity("maniphest.edit", params, TOKEN);
+    return EntityUtils.toByteArray(entity);
+  }
+}
@@ -0,0 +1,67 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.its.phabricator.conduit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.io.ByteStreams;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gson.stream.JsonReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.http.HttpEntity;
+import org.eclipse.jgit.lib.Config;
+
+/**
+ * Connection that answers calls with fixed responses instead of going over the network
+ *
+ * <p>Requests still get serialized and form encoded, and responses still get parsed from a stream,
+ * so everything but the network round trip of a call is covered.
+ */
+class FixtureConduitConnection extends ConduitConnection {
+  private final Map<String, byte[]> responses = new HashMap<>();
+
+  FixtureConduitConnection() {
+    super(
+        "its-phabricator",
+        new Config(),
+        new CircuitBreaker.Metrics(new DisabledMetricMaker()),
+        new ConduitMetrics(new DisabledMetricMaker()),
+        "http://phabricator.example.org");
+  }
+
+  /** Sets the raw HTTP response body to answer calls to a method with */
+  void setResponse(String method, String body) {
+    responses.put(method, body.getBytes(UTF_8));
+  }
+
+  @Override
+  <T> T call(String method, Map<String, Object> params, String token, ResultReader<T> resultReader)
+      throws ConduitException {
+    HttpEntity requestEntity = createRequestEntity(method, params, token);
+    try {
+      requestEntity.writeTo(ByteStreams.nullOutputStream());
+      JsonReader reader =
+          new JsonReader(
+              new InputStreamReader(new ByteArrayInputStream(responses.get(method)), UTF_8));
+      return readCallCapsule(method, reader, resultReader);
+    } catch (IOException e) {
+      throw new ConduitException("Could not replay fixture for " + method, e);
+    }
+  }
+}
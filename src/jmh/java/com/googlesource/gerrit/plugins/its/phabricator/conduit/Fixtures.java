@@ -0,0 +1,185 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.its.phabricator.conduit;
+
+import com.google.common.base.Strings;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+
+/** Payloads shaped like the ones of a real Phabricator instance */
+class Fixtures {
+  static final int PAGE_SIZE = 100;
+  static final int FIRST_TASK_ID = 4711;
+
+  /** Gives the response to a 'maniphest.edit' call that applied a transaction */
+  static String maniphestEditResponse() {
+    JsonObject object = new JsonObject();
+    object.addProperty("id", FIRST_TASK_ID);
+    object.addProperty("phid", phid("TASK", FIRST_TASK_ID));
+
+    JsonArray transactions = new JsonArray();
+    JsonObject transaction = new JsonObject();
+    transaction.addProperty("phid", phid("XACT-TASK", 1));
+    transactions.add(transaction);
+
+    JsonObject result = new JsonObject();
+    result.add("object", object);
+    result.add("transactions", transactions);
+    return capsule(result);
+  }
+
+  /** Gives a full page of a 'maniphest.search' response */
+  static String maniphestSearchPage() {
+    JsonArray data = new JsonArray();
+    for (int i = 0; i < PAGE_SIZE; i++) {
+      int id = FIRST_TASK_ID + i;
+      JsonObject status = new JsonObject();
+      status.addProperty("value", "open");
+      status.addProperty("name", "Open");
+      status.add("color", JsonNull.INSTANCE);
+
+      JsonObject priority = new JsonObject();
+      priority.addProperty("value", 50);
+      priority.addProperty("name", "Normal");
+      priority.addProperty("color", "orange");
+
+      JsonObject description = new JsonObject();
+      description.addProperty(
+          "raw",
+          "Steps to reproduce:\n\n# Open change " + id + "\n# Submit it\n\nExpected: merged");
+
+      JsonObject fields = new JsonObject();
+      fields.addProperty("name", "Submitting change " + id + " fails with a conflict");
+      fields.add("description", description);
+      fields.addProperty("authorPHID", phid("USER", 17));
+      fields.addProperty("ownerPHID", phid("USER", 23));
+      fields.add("status", status);
+      fields.add("priority", priority);
+      fields.add("points", JsonNull.INSTANCE);
+      fields.addProperty("subtype", "default");
+      fields.add("closerPHID", JsonNull.INSTANCE);
+      fields.add("dateClosed", JsonNull.INSTANCE);
+      fields.add("spacePHID", JsonNull.INSTANCE);
+      fields.addProperty("dateCreated", 1700000000 + i);
+      fields.addProperty("dateModified", 1700050000 + i);
+      fields.add("policy", policy());
+
+      data.add(searchEntry(id, "TASK", fields));
+    }
+    return capsule(searchResult(data));
+  }
+
+  /** Gives a full page of a 'project.search' response */
+  static String projectSearchPage() {
+    JsonArray data = new JsonArray();
+    for (int i = 0; i < PAGE_SIZE; i++) {
+      JsonObject icon = new JsonObject();
+      icon.addProperty("key", "project");
+      icon.addProperty("name", "Project");
+      icon.addProperty("icon", "fa-briefcase");
+
+      JsonObject color = new JsonObject();
+      color.addProperty("key", "blue");
+      color.addProperty("name", "Blue");
+
+      JsonObject fields = new JsonObject();
+      fields.addProperty("name", "Project " + i);
+      fields.addProperty("slug", "project_" + i);
+      fields.add("milestone", JsonNull.INSTANCE);
+      fields.addProperty("depth", 0);
+      fields.add("parent", JsonNull.INSTANCE);
+      fields.add("icon", icon);
+      fields.add("color", color);
+      fields.add("spacePHID", JsonNull.INSTANCE);
+      fields.addProperty("dateCreated", 1600000000 + i);
+      fields.addProperty("dateModified", 1600050000 + i);
+      fields.add("policy", policy());
+      fields.addProperty("description", "Work on component " + i + " of the code base.");
+
+      data.add(searchEntry(100 + i, "PROJ", fields));
+    }
+    return capsule(searchResult(data));
+  }
+
+  /** Gives a comment of about 16KiB that uses the usual Remarkup constructs */
+  static String largeRemarkupComment() {
+    StringBuilder section = new StringBuilder();
+    section.append("= Change 12345 (patch set 7) =\n\n");
+    section.append(
+        "**Uploaded** by //Jane Doe// \u2013 see [[ https://gerrit.example.org/c/12345 ");
+    section.append(
+        "| the change ]] for details. \u00dcn\u00efc\u00f6d\u00e9 names & \"quotes\" <tags>.\n\n");
+    section.append("  - Fixes T4711\n  - Refs T4712, T4713\n  - Depends on D99\n\n");
+    section.append(
+        "```lang=java\npublic class Foo {\n  int bar() {\n    return 42;\n  }\n}\n```\n\n");
+    section.append("| File | Added | Removed |\n| ---- | ----- | ------- |\n");
+    section.append("| `src/main/java/Foo.java` | 12 | 3 |\n| `BUILD` | 1 | 0 |\n\n");
+    section.append("> Quoted review comment: ").append(Strings.repeat("lorem ipsum ", 20));
+    section.append("\n\n");
+    return Strings.repeat(section.toString(), 16 * 1024 / section.length() + 1);
+  }
+
+  private static JsonObject searchEntry(int id, String type, JsonObject fields) {
+    JsonObject entry = new JsonObject();
+    entry.addProperty("id", id);
+    entry.addProperty("type", type);
+    entry.addProperty("phid", phid(type, id));
+    entry.add("fields", fields);
+    entry.add("attachments", new JsonObject());
+    return entry;
+  }
+
+  private static JsonObject searchResult(JsonArray data) {
+    JsonObject query = new JsonObject();
+    query.add("queryKey", JsonNull.INSTANCE);
+
+    JsonObject cursor = new JsonObject();
+    cursor.addProperty("limit", PAGE_SIZE);
+    cursor.addProperty("after", "4810");
+    cursor.add("before", JsonNull.INSTANCE);
+    cursor.add("order", JsonNull.INSTANCE);
+
+    JsonObject result = new JsonObject();
+    result.add("data", data);
+    result.add("maps", new JsonObject());
+    result.add("query", query);
+    result.add("cursor", cursor);
+    return result;
+  }
+
+  private static JsonObject policy() {
+    JsonObject policy = new JsonObject();
+    policy.addProperty("view", "users");
+    policy.addProperty("interact", "users");
+    policy.addProperty("edit", "users");
+    return policy;
+  }
+
+  private static String capsule(JsonElement result) {
+    JsonObject capsule = new JsonObject();
+    capsule.add("result", result);
+    capsule.add("error_code", JsonNull.INSTANCE);
+    capsule.add("error_info", JsonNull.INSTANCE);
+    return capsule.toString();
+  }
+
+  private static String phid(String type, int id) {
+    return "PHID-" + type + "-" + Strings.padStart(Integer.toString(id, 36), 20, 'a');
+  }
+
+  private Fixtures() {}
+}
@@ -0,0 +1,202 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.its.phabricator;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.extensions.annotations.PluginData;
+import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.server.config.ConfigUtil;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.inject.Inject;
+import com.google.inject.assistedinject.Assisted;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.Conduit;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.ProjectSearchCache;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.TaskExistenceCache;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.results.ProjectSearch;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import org.eclipse.jgit.lib.Config;
+
+/**
+ * Carries the lookup caches over plugin reloads and restarts
+ *
+ * <p>A reloaded plugin gets new caches, so without the snapshot, the first events after a reload
+ * have to look up projects and tasks through Conduit again. The snapshot holds the cached projects
+ * and the tasks that are known to exist. It gets written to the plugin's data directory every
+ * {@code cacheSnapshotInterval} and when the plugin stops, and gets loaded into the caches when the
+ * plugin starts, unless it is older than {@code cacheSnapshotMaxAge}. Writing it periodically
+ * matters, as on a reload, Gerrit starts the new plugin before it stops the old one.
+ *
+ * <p>Tasks that are known to be missing are left out, as they are only cached briefly anyway.
+ *
+ * <p>The snapshot is only enabled if {@code cacheSnapshot} is set.
+ */
+public class CacheSnapshot {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static final String GERRIT_CONFIG_SNAPSHOT = "cacheSnapshot";
+  private static final String GERRIT_CONFIG_INTERVAL = "cacheSnapshotInterval";
+  private static final String GERRIT_CONFIG_MAX_AGE = "cacheSnapshotMaxAge";
+
+  static final String FILE_NAME = "caches";
+
+  public interface Factory {
+    CacheSnapshot create(Conduit conduit, @Nullable String server);
+  }
+
+  /** The snapshot as it is written to disk */
+  private static class Snapshot {
+    long created;
+    Map<String, ProjectSearch> projects;
+    Set<Integer> tasks;
+  }
+
+  private final Conduit conduit;
+  private final boolean enabled;
+  private final Path file;
+  private final long intervalMillis;
+  private final long maxAgeMillis;
+  private final String threadName;
+  private final Gson gson = new Gson();
+
+  private ScheduledThreadPoolExecutor executor;
+
+  @Inject
+  CacheSnapshot(
+      @PluginName String pluginName,
+      @GerritServerConfig Config cfg,
+      @PluginData Path pluginData,
+      @Assisted Conduit conduit,
+      @Assisted @Nullable String server) {
+    this.conduit = conduit;
+    this.enabled = cfg.getBoolean(pluginName, null, GERRIT_CONFIG_SNAPSHOT, false);
+    this.file =
+        pluginData.resolve((server == null ? FILE_NAME : FILE_NAME + "-" + server) + ".json");
+    this.intervalMillis =
+        ConfigUtil.getTimeUnit(
+            cfg, pluginName, null, GERRIT_CONFIG_INTERVAL, 5 * 60 * 1000, MILLISECONDS);
+    this.maxAgeMillis =
+        ConfigUtil.getTimeUnit(
+            cfg, pluginName, null, GERRIT_CONFIG_MAX_AGE, 60 * 60 * 1000, MILLISECONDS);
+    this.threadName = pluginName + "-cache-snapshot-%d";
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Loads the snapshot into the caches, and starts writing it periodically */
+  public synchronized void start() {
+    if (!enabled || executor != null) {
+      return;
+    }
+    load();
+    executor =
+        new ScheduledThreadPoolExecutor(
+            1, new ThreadFactoryBuilder().setNameFormat(threadName).setDaemon(true).build());
+    executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    if (intervalMillis > 0) {
+      executor.scheduleWithFixedDelay(this::save, intervalMillis, intervalMillis, MILLISECONDS);
+    }
+  }
+
+  /** Stops writing the snapshot periodically, and writes it a last time */
+  public synchronized void stop() {
+    if (executor == null) {
+      return;
+    }
+    executor.shutdownNow();
+    executor = null;
+    save();
+  }
+
+  /** Loads the snapshot into the caches */
+  void load() {
+    Snapshot snapshot;
+    try (Reader reader = Files.newBufferedReader(file, UTF_8)) {
+      snapshot = gson.fromJson(reader, Snapshot.class);
+    } catch (NoSuchFileException e) {
+      return;
+    } catch (IOException | JsonParseException e) {
+      logger.atWarning().withCause(e).log("Could not read the cache snapshot %s", file);
+      return;
+    }
+    if (snapshot == null) {
+      return;
+    }
+    long age = System.currentTimeMillis() - snapshot.created;
+    if (age > maxAgeMillis) {
+      logger.atInfo().log("Ignoring the cache snapshot %s, as it is %d ms old", file, age);
+      return;
+    }
+
+    ProjectSearchCache projectSearchCache = conduit.getProjectSearchCache();
+    if (snapshot.projects != null) {
+      for (Map.Entry<String, ProjectSearch> entry : snapshot.projects.entrySet()) {
+        projectSearchCache.put(entry.getKey(), entry.getValue());
+      }
+    }
+    TaskExistenceCache taskExistenceCache = conduit.getTaskExistenceCache();
+    if (snapshot.tasks != null) {
+      for (Integer taskId : snapshot.tasks) {
+        taskExistenceCache.put(taskId, true);
+      }
+    }
+    logger.atInfo().log(
+        "Loaded %d project name(s) and %d task(s) from the cache snapshot",
+        snapshot.projects != null ? snapshot.projects.size() : 0,
+        snapshot.tasks != null ? snapshot.tasks.size() : 0);
+  }
+
+  /** Writes the snapshot of the caches */
+  void save() {
+    Snapshot snapshot = new Snapshot();
+    snapshot.created = System.currentTimeMillis();
+    snapshot.projects = conduit.getProjectSearchCache().asMap();
+    snapshot.tasks = conduit.getTaskExistenceCache().getExisting();
+
+    // Written next to the snapshot and moved over it, so a reader never sees a partial snapshot.
+    try {
+      Files.createDirectories(file.getParent());
+      Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+      try (Writer writer = Files.newBufferedWriter(tmp, UTF_8)) {
+        gson.toJson(snapshot, writer);
+      }
+      try {
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } catch (IOException | RuntimeException e) {
+      logger.atWarning().withCause(e).log("Could not write the cache snapshot %s", file);
+    }
+  }
+}
@@ -0,0 +1,116 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.its.phabricator;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.inject.Inject;
+import com.google.inject.assistedinject.Assisted;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.Conduit;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.ConduitException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.eclipse.jgit.lib.Config;
+
+/**
+ * Opens connections to Phabricator in the background when the plugin starts
+ *
+ * <p>A started or reloaded plugin has an empty connection pool, so the first calls have to set up
+ * TCP and TLS connections. The warmer pings Phabricator through 'conduit.ping' on {@code
+ * connectionWarmup} threads at once. As the pings run concurrently, each of them opens a
+ * connection, which stays in the pool for later calls.
+ *
+ * <p>The warmer is only enabled if {@code connectionWarmup} is greater than 0.
+ */
+public class ConnectionWarmer {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static final String GERRIT_CONFIG_WARMUP = "connectionWarmup";
+
+  public interface Factory {
+    ConnectionWarmer create(Conduit conduit);
+  }
+
+  private final Conduit conduit;
+  private final int connections;
+  private final String threadName;
+
+  private ExecutorService executor;
+
+  @Inject
+  ConnectionWarmer(
+      @PluginName String pluginName, @GerritServerConfig Config cfg, @Assisted Conduit conduit) {
+    this.conduit = conduit;
+    this.connections = Math.max(0, cfg.getInt(pluginName, null, GERRIT_CONFIG_WARMUP, 0));
+    this.threadName = pluginName + "-connection-warmer-%d";
+  }
+
+  public boolean isEnabled() {
+    return connections > 0;
+  }
+
+  /** Starts opening connections in the background */
+  public synchronized void start() {
+    if (!isEnabled() || executor != null) {
+      return;
+    }
+    executor =
+        Executors.newFixedThreadPool(
+            connections,
+            new ThreadFactoryBuilder().setNameFormat(threadName).setDaemon(true).build());
+    long start = System.nanoTime();
+    CountDownLatch ready = new CountDownLatch(connections);
+    CountDownLatch done = new CountDownLatch(connections);
+    AtomicInteger opened = new AtomicInteger();
+    for (int i = 0; i < connections; i++) {
+      executor.execute(
+          () -> {
+            try {
+              // Waits for the other pings, so none of them reuses a connection of another.
+              ready.countDown();
+              ready.await();
+              conduit.conduitPing();
+              opened.incrementAndGet();
+            } catch (ConduitException | RuntimeException e) {
+              logger.atWarning().withCause(e).log("Could not open a connection to Phabricator");
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            } finally {
+              done.countDown();
+              if (done.getCount() == 0) {
+                logger.atInfo().log(
+                    "Opened %d connection(s) to Phabricator in %d ms",
+                    opened.get(), NANOSECONDS.toMillis(System.nanoTime() - start));
+              }
+            }
+          });
+    }
+    executor.shutdown();
+  }
+
+  /** Stops opening connections. Pings that are running get interrupted. */
+  public synchronized void stop() {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+}
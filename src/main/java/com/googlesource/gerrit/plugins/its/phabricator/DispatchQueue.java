@@ -0,0 +1,284 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.its.phabricator;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.metrics.Counter0;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.metrics.Timer0;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import org.eclipse.jgit.lib.Config;
+
+/**
+ * Bounded queue to run Conduit calls off the caller's thread
+ *
+ * <p>The queue is only enabled if {@code async} is set. Calls are striped by task id across {@code
+ * asyncThreads} lanes, so calls for the same task run in the order they got queued, while calls for
+ * different tasks run in parallel. What happens if a lane's queue is full is determined by {@code
+ * asyncOverflowPolicy}.
+ *
+ * <p>With {@code asyncThreadMode} set to {@code VIRTUAL}, lanes run on virtual threads, if the JVM
+ * offers them (Java 21 and later). Blocked Conduit calls then hardly cost memory, so many more
+ * lanes can be afforded. Conduit calls do not block while holding a monitor, so they do not pin the
+ * carrier threads of virtual threads.
+ */
+public class DispatchQueue {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static final String GERRIT_CONFIG_ASYNC = "async";
+  private static final String GERRIT_CONFIG_ASYNC_THREADS = "asyncThreads";
+  private static final String GERRIT_CONFIG_ASYNC_QUEUE_SIZE = "asyncQueueSize";
+  private static final String GERRIT_CONFIG_ASYNC_OVERFLOW_POLICY = "asyncOverflowPolicy";
+  private static final String GERRIT_CONFIG_ASYNC_THREAD_MODE = "asyncThreadMode";
+
+  /** What to do with work that does not fit into the queue any longer */
+  public enum OverflowPolicy {
+    /** Wait on the caller's thread until there is space in the queue */
+    BLOCK,
+
+    /** Drop the oldest queued work to make space */
+    DROP_OLDEST,
+
+    /** Reject the new work */
+    REJECT
+  }
+
+  /** The kind of threads that run the queued work */
+  public enum ThreadMode {
+    /** A fixed number of platform threads */
+    PLATFORM,
+
+    /** Virtual threads, if available. Falls back to platform threads otherwise. */
+    VIRTUAL
+  }
+
+  @Singleton
+  static class Metrics {
+    private final Set<DispatchQueue> queues = ConcurrentHashMap.newKeySet();
+    private final Timer0 waitTime;
+    private final Counter0 rejected;
+    private final Counter0 dropped;
+
+    @Inject
+    Metrics(MetricMaker metricMaker) {
+      metricMaker.newCallbackMetric(
+          "dispatch/queue_depth",
+          Integer.class,
+          new Description("Number of Conduit calls waiting in the dispatch queue")
+              .setGauge()
+              .setUnit("calls"),
+          () -> queues.stream().mapToInt(DispatchQueue::getQueueDepth).sum());
+      waitTime =
+          metricMaker.newTimer(
+              "dispatch/wait_time",
+              new Description("Time Conduit calls waited in the dispatch queue")
+                  .setCumulative()
+                  .setUnit(Description.Units.MILLISECONDS));
+      rejected =
+          metricMaker.newCounter(
+              "dispatch/rejected_count",
+              new Description("Conduit calls rejected because the dispatch queue was full")
+                  .setRate()
+                  .setUnit("calls"));
+      dropped =
+          metricMaker.newCounter(
+              "dispatch/dropped_count",
+              new Description("Queued Conduit calls dropped because the dispatch queue was full")
+                  .setRate()
+                  .setUnit("calls"));
+    }
+  }
+
+  private final Metrics metrics;
+  private final OverflowPolicy overflowPolicy;
+  private final ThreadMode threadMode;
+  private final StripedExecutor executor;
+
+  @Inject
+  DispatchQueue(@PluginName String pluginName, @GerritServerConfig Config cfg, Metrics metrics) {
+    this.metrics = metrics;
+    this.overflowPolicy =
+        cfg.getEnum(pluginName, null, GERRIT_CONFIG_ASYNC_OVERFLOW_POLICY, OverflowPolicy.BLOCK);
+    String threadName = pluginName + "-dispatch-";
+    ThreadFactory virtualThreadFactory = null;
+    if (cfg.getEnum(pluginName, null, GERRIT_CONFIG_ASYNC_THREAD_MODE, ThreadMode.PLATFORM)
+        == ThreadMode.VIRTUAL) {
+      virtualThreadFactory = newVirtualThreadFactory(threadName);
+    }
+    this.threadMode = virtualThreadFactory != null ? ThreadMode.VIRTUAL : ThreadMode.PLATFORM;
+    if (cfg.getBoolean(pluginName, null, GERRIT_CONFIG_ASYNC, false)) {
+      int threads =
+          Math.max(
+              1,
+              cfg.getInt(
+                  pluginName,
+                  null,
+                  GERRIT_CONFIG_ASYNC_THREADS,
+                  threadMode == ThreadMode.VIRTUAL ? 256 : 4));
+      int queueSize =
+          Math.max(1, cfg.getInt(pluginName, null, GERRIT_CONFIG_ASYNC_QUEUE_SIZE, 1000));
+      executor =
+          new StripedExecutor(
+              threads,
+              Math.max(1, queueSize / threads),
+              virtualThreadFactory != null
+                  ? virtualThreadFactory
+                  : new ThreadFactoryBuilder()
+                      .setNameFormat(threadName + "%d")
+                      .setDaemon(true)
+                      .build(),
+              new OverflowHandler());
+      metrics.queues.add(this);
+    } else {
+      executor = null;
+    }
+  }
+
+  /**
+   * Creates a factory for virtual threads
+   *
+   * <p>The factory is looked up reflectively, as virtual threads are only available from Java 21
+   * on.
+   *
+   * @param prefix The prefix of the threads' names
+   * @return The factory, or null if the JVM does not offer virtual threads
+   */
+  private static ThreadFactory newVirtualThreadFactory(String prefix) {
+    try {
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      builder =
+          builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+      return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      logger.atWarning().log(
+          "Virtual threads are not available in Java %s. Using platform threads instead",
+          Runtime.version().feature());
+      return null;
+    }
+  }
+
+  public boolean isEnabled() {
+    return executor != null;
+  }
+
+  /** Gives the kind of threads the queued work runs on */
+  public ThreadMode getThreadMode() {
+    return threadMode;
+  }
+
+  /**
+   * Queues work for asynchronous execution
+   *
+   * <p>Work for the same task runs in the order it got queued.
+   *
+   * @param taskId The id of the task the work is for
+   * @param work The work to run
+   * @throws RejectedExecutionException if the work could not get queued
+   */
+  public void execute(int taskId, Runnable work) {
+    executor.execute(taskId, new QueuedWork(work));
+  }
+
+  /** Gives the number of queued, but not yet started calls */
+  public int getQueueDepth() {
+    return executor == null ? 0 : executor.getQueueDepth();
+  }
+
+  /** Stops the queue after running all queued work */
+  public void stop() {
+    if (executor != null) {
+      executor.shutdown();
+      try {
+        if (!executor.awaitTermination(1, MINUTES)) {
+          logger.atWarning().log(
+              "Dropping %d queued Conduit call(s) on shutdown", executor.shutdownNow().size());
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      metrics.queues.remove(this);
+    }
+  }
+
+  private class QueuedWork implements Runnable {
+    private final Runnable work;
+    private final long queuedAt;
+
+    QueuedWork(Runnable work) {
+      this.work = work;
+      this.queuedAt = System.nanoTime();
+    }
+
+    @Override
+    public void run() {
+      metrics.waitTime.record(System.nanoTime() - queuedAt, NANOSECONDS);
+      work.run();
+    }
+  }
+
+  private class OverflowHandler implements RejectedExecutionHandler {
+    @Override
+    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+      if (executor.isShutdown()) {
+        throw new RejectedExecutionException("Dispatch queue is shut down");
+      }
+      switch (overflowPolicy) {
+        case BLOCK:
+          try {
+            executor.getQueue().put(r);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            metrics.rejected.increment();
+            throw new RejectedExecutionException("Interrupted while waiting for queue space", e);
+          }
+          // The queue may have been shut down while waiting. Its threads may then already be gone,
+          // so the work would never run. Unless a thread picked it up in the meantime, take it
+          // back out and reject it.
+          if (executor.isShutdown() && executor.getQueue().remove(r)) {
+            metrics.rejected.increment();
+            throw new RejectedExecutionException("Dispatch queue is shut down");
+          }
+          break;
+        case DROP_OLDEST:
+          Runnable dropped = executor.getQueue().poll();
+          if (dropped != null) {
+            metrics.dropped.increment();
+            logger.atWarning().log("Dispatch queue full. Dropping oldest queued Conduit call");
+          }
+          executor.execute(r);
+          break;
+        case REJECT:
+        default:
+          metrics.rejected.increment();
+          throw new RejectedExecutionException("Dispatch queue is full");
+      }
+    }
+  }
+}
@@ -0,0 +1,275 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.its.phabricator;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.server.config.ConfigUtil;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.inject.Inject;
+import com.google.inject.assistedinject.Assisted;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.Conduit;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.ConduitErrorException;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.ConduitException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import org.eclipse.jgit.lib.Config;
+
+/**
+ * Probes Phabricator's health in the background
+ *
+ * <p>Every {@code healthCheckInterval}, Phabricator gets pinged through 'conduit.ping', and the API
+ * token gets checked through 'user.whoami'. The outcome is kept as {@link Health}, along with
+ * percentiles of the latencies of the most recent {@code healthCheckWindow} pings. So health
+ * queries are answered from memory and do not cause Conduit calls.
+ *
+ * <p>The prober is only enabled if {@code healthCheck} is set.
+ */
+public class HealthProber {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static final String GERRIT_CONFIG_HEALTH_CHECK = "healthCheck";
+  private static final String GERRIT_CONFIG_INTERVAL = "healthCheckInterval";
+  private static final String GERRIT_CONFIG_WINDOW = "healthCheckWindow";
+
+  public interface Factory {
+    HealthProber create(Conduit conduit);
+  }
+
+  /** Outcome of the most recent probe. Fields that are not known are null. */
+  public static class Health {
+    static final String STATUS_OK = "ok";
+    static final String STATUS_UNREACHABLE = "unreachable";
+    static final String STATUS_UNAUTHENTICATED = "unauthenticated";
+    static final String STATUS_UNKNOWN = "unknown";
+
+    private static final Health UNKNOWN = new Health();
+
+    private final String status;
+    private final Boolean reachable;
+    private final Boolean authenticated;
+    private final String hostname;
+    private final Long latencyMillis;
+    private final Long p50Millis;
+    private final Long p99Millis;
+    private final Integer samples;
+    private final String lastCheck;
+    private final String error;
+
+    private Health() {
+      this(null, null, null, null, null, 0, null, null);
+    }
+
+    private Health(
+        Boolean reachable,
+        Boolean authenticated,
+        String hostname,
+        Long latencyMillis,
+        long[] sortedLatencyMillis,
+        int samples,
+        Instant lastCheck,
+        String error) {
+      if (reachable == null) {
+        this.status = STATUS_UNKNOWN;
+      } else if (!reachable) {
+        this.status = STATUS_UNREACHABLE;
+      } else if (Boolean.FALSE.equals(authenticated)) {
+        this.status = STATUS_UNAUTHENTICATED;
+      } else {
+        this.status = STATUS_OK;
+      }
+      this.reachable = reachable;
+      this.authenticated = authenticated;
+      this.hostname = hostname;
+      this.latencyMillis = latencyMillis;
+      this.p50Millis = samples > 0 ? percentile(sortedLatencyMillis, samples, 50) : null;
+      this.p99Millis = samples > 0 ? percentile(sortedLatencyMillis, samples, 99) : null;
+      this.samples = samples > 0 ? samples : null;
+      this.lastCheck = lastCheck != null ? lastCheck.toString() : null;
+      this.error = error;
+    }
+
+    /** Gives a percentile by the nearest-rank method */
+    private static long percentile(long[] sorted, int samples, int percent) {
+      int rank = (int) Math.ceil(percent / 100.0 * samples);
+      return sorted[Math.max(0, rank - 1)];
+    }
+
+    /** Gives "ok", "unreachable", "unauthenticated", or "unknown" if nothing was probed yet */
+    public String getStatus() {
+      return status;
+    }
+
+    public Boolean isReachable() {
+      return reachable;
+    }
+
+    public Boolean isAuthenticated() {
+      return authenticated;
+    }
+
+    public String getHostname() {
+      return hostname;
+    }
+
+    /** Gives the latency of the most recent successful ping */
+    public Long getLatencyMillis() {
+      return latencyMillis;
+    }
+
+    public Long getP50Millis() {
+      return p50Millis;
+    }
+
+    public Long getP99Millis() {
+      return p99Millis;
+    }
+
+    /** Gives the number of pings the percentiles are based on */
+    public Integer getSamples() {
+      return samples;
+    }
+
+    /** Gives the time of the most recent probe in ISO-8601 format */
+    public String getLastCheck() {
+      return lastCheck;
+    }
+
+    /** Gives the failure of the most recent probe */
+    public String getError() {
+      return error;
+    }
+  }
+
+  private final Conduit conduit;
+  private final boolean enabled;
+  private final long intervalMillis;
+  private final String threadName;
+
+  // Ring buffer with the latencies of the most recent successful pings. Only used by the probing
+  // thread.
+  private final long[] latencies;
+  private int next;
+  private int samples;
+
+  private volatile Health health = Health.UNKNOWN;
+  private ScheduledThreadPoolExecutor executor;
+
+  @Inject
+  HealthProber(
+      @PluginName String pluginName, @GerritServerConfig Config cfg, @Assisted Conduit conduit) {
+    this.conduit = conduit;
+    this.enabled = cfg.getBoolean(pluginName, null, GERRIT_CONFIG_HEALTH_CHECK, false);
+    this.intervalMillis =
+        Math.max(
+            1,
+            ConfigUtil.getTimeUnit(
+                cfg, pluginName, null, GERRIT_CONFIG_INTERVAL, 30000, MILLISECONDS));
+    this.latencies = new long[Math.max(1, cfg.getInt(pluginName, null, GERRIT_CONFIG_WINDOW, 100))];
+    this.threadName = pluginName + "-health-prober-%d";
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Starts probing in the background */
+  public synchronized void start() {
+    if (!enabled || executor != null) {
+      return;
+    }
+    executor =
+        new ScheduledThreadPoolExecutor(
+            1, new ThreadFactoryBuilder().setNameFormat(threadName).setDaemon(true).build());
+    executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    executor.scheduleWithFixedDelay(this::probe, 0, intervalMillis, MILLISECONDS);
+  }
+
+  /** Stops probing. A probe that is running gets interrupted. */
+  public synchronized void stop() {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+
+  /** Gives the outcome of the most recent probe, without contacting Phabricator */
+  public Health getHealth() {
+    return health;
+  }
+
+  /** Probes Phabricator once */
+  void probe() {
+    boolean reachable;
+    Boolean authenticated = null;
+    String hostname = null;
+    Long latencyMillis = null;
+    String error = null;
+
+    long start = System.nanoTime();
+    try {
+      hostname = conduit.conduitPing().getHostname();
+      reachable = true;
+    } catch (ConduitErrorException e) {
+      // Phabricator answered, so it is reachable.
+      reachable = true;
+      error = e.getMessage();
+    } catch (ConduitException | RuntimeException e) {
+      reachable = false;
+      error = e.getMessage();
+    }
+    if (reachable) {
+      latencyMillis = NANOSECONDS.toMillis(System.nanoTime() - start);
+      latencies[next] = latencyMillis;
+      next = (next + 1) % latencies.length;
+      samples = Math.min(samples + 1, latencies.length);
+
+      try {
+        authenticated = conduit.isAuthenticated();
+        if (!authenticated) {
+          error = "Phabricator rejected the API token";
+        }
+      } catch (ConduitException | RuntimeException e) {
+        error = e.getMessage();
+      }
+    }
+
+    long[] sorted = Arrays.copyOf(latencies, samples);
+    Arrays.sort(sorted);
+    Health previous = health;
+    health =
+        new Health(
+            reachable,
+            authenticated,
+            hostname,
+            latencyMillis,
+            sorted,
+            samples,
+            Instant.now(),
+            error);
+    if (!health.getStatus().equals(previous.getStatus())) {
+      if (Health.STATUS_OK.equals(health.getStatus())) {
+        logger.atInfo().log("Phabricator is healthy");
+      } else {
+        logger.atWarning().log("Phabricator is %s: %s", health.getStatus(), error);
+      }
+    }
+  }
+}
@@ -0,0 +1,419 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.its.phabricator;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.extensions.annotations.PluginData;
+import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.server.config.ConfigUtil;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.inject.Inject;
+import com.google.inject.assistedinject.Assisted;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.Conduit;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.ConduitErrorException;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.ConduitException;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.ManiphestTransaction;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.UnknownProjectException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.eclipse.jgit.lib.Config;
+
+/**
+ * Durable queue of edits that still need to reach Phabricator
+ *
+ * <p>Edits are recorded in an {@link OutboxJournal} in the plugin's data directory before {@link
+ * #add} returns, and get sent from there by a background thread in the order they were added.
+ * Consecutive edits for the same task get sent as a single 'maniphest.edit' call. If Phabricator
+ * cannot be reached, sending pauses for {@code outboxRetryInterval} and then resumes with the same
+ * edit. Edits that cannot succeed (i.e.: Phabricator rejects them with a Conduit error, they refer
+ * to an unknown project, or sending them fails unexpectedly) get logged and dropped, so they do not
+ * block the edits behind them. Edits that were not confirmed by Phabricator before Gerrit stopped
+ * get sent again when the outbox starts. So an edit may reach Phabricator twice, but does not get
+ * lost.
+ *
+ * <p>Each Phabricator server has a journal of its own, so edits for a server that cannot be reached
+ * do not hold up the edits for the other servers.
+ *
+ * <p>Only one outbox at a time can use a journal. When the plugin gets reloaded, the new outbox
+ * takes the journal over once the old one stopped.
+ *
+ * <p>The outbox is only enabled if {@code outbox} is set.
+ */
+public class Outbox {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static final String GERRIT_CONFIG_OUTBOX = "outbox";
+  private static final String GERRIT_CONFIG_RETRY_INTERVAL = "outboxRetryInterval";
+  private static final String GERRIT_CONFIG_SEGMENT_SIZE = "outboxSegmentSize";
+  private static final String GERRIT_CONFIG_LOCK_TIMEOUT = "outboxLockTimeout";
+
+  static final String DIRECTORY = "outbox";
+
+  /** Maximum number of edits that get read from the journal, or merged into one call, at once */
+  private static final int BATCH_SIZE = Conduit.SEARCH_PAGE_SIZE;
+
+  /** Time to wait before trying again to open a journal that is in use */
+  private static final long LOCK_RETRY_MILLIS = 100;
+
+  public interface Factory {
+    Outbox create(Conduit conduit, @Nullable String server);
+  }
+
+  /**
+   * An edit as it is recorded in the journal
+   *
+   * <p>Records that cannot be decoded are kept as edits without transactions, so they get
+   * acknowledged in order, after the edits in front of them.
+   */
+  private static class Edit {
+    int taskId;
+    List<ManiphestTransaction> transactions;
+    transient long sequence;
+  }
+
+  private final Conduit conduit;
+  private final boolean enabled;
+  private final Path directory;
+  private final long segmentSize;
+  private final long retryIntervalMillis;
+  private final long lockTimeoutMillis;
+  private final String threadName;
+  private final Gson gson = new Gson();
+  private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+  private volatile OutboxJournal journal;
+  private volatile CountDownLatch opened;
+  private volatile boolean pausing;
+  private volatile ScheduledThreadPoolExecutor executor;
+
+  /** The executor of the previous start, which may still be finishing a call */
+  private ScheduledThreadPoolExecutor stoppedExecutor;
+
+  /** Edits read from the journal but not sent yet. Only used on the executor's thread. */
+  private final Deque<Edit> unsent = new ArrayDeque<>();
+
+  @Inject
+  Outbox(
+      @PluginName String pluginName,
+      @GerritServerConfig Config cfg,
+      @PluginData Path pluginData,
+      @Assisted Conduit conduit,
+      @Assisted @Nullable String server) {
+    this.conduit = conduit;
+    this.enabled = cfg.getBoolean(pluginName, null, GERRIT_CONFIG_OUTBOX, false);
+    this.directory = pluginData.resolve(server == null ? DIRECTORY : DIRECTORY + "-" + server);
+    this.segmentSize =
+        Math.max(1, cfg.getLong(pluginName, null, GERRIT_CONFIG_SEGMENT_SIZE, 16 * 1024 * 1024));
+    this.retryIntervalMillis =
+        ConfigUtil.getTimeUnit(
+            cfg, pluginName, null, GERRIT_CONFIG_RETRY_INTERVAL, 30000, MILLISECONDS);
+    this.lockTimeoutMillis =
+        ConfigUtil.getTimeUnit(
+            cfg, pluginName, null, GERRIT_CONFIG_LOCK_TIMEOUT, 60000, MILLISECONDS);
+    this.threadName = pluginName + "-outbox-%d";
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Starts opening the journal in the background, and sending the edits that are left in it
+   *
+   * <p>On a plugin reload, the new instance starts before the old one stops, so the journal may
+   * still be in use. Opening it is then retried until the old instance hands it over by stopping,
+   * for at most {@code outboxLockTimeout}. Meanwhile, {@link #add} waits for the journal. If the
+   * journal cannot be opened, edits cannot get added and {@link #add} fails.
+   */
+  public synchronized void start() {
+    if (!enabled || executor != null) {
+      return;
+    }
+    if (stoppedExecutor != null && !stoppedExecutor.isTerminated()) {
+      logger.atSevere().log("Could not start the outbox, as it is still stopping");
+      return;
+    }
+    executor =
+        new ScheduledThreadPoolExecutor(
+            1, new ThreadFactoryBuilder().setNameFormat(threadName).setDaemon(true).build()) {
+          @Override
+          protected void terminated() {
+            super.terminated();
+            closeJournal();
+          }
+        };
+    // Edits that are left get sent again on the next start.
+    executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    opened = new CountDownLatch(1);
+    long deadline = System.nanoTime() + MILLISECONDS.toNanos(lockTimeoutMillis);
+    executor.execute(() -> open(deadline));
+  }
+
+  /**
+   * Stops sending edits. Edits that have not been sent stay in the journal.
+   *
+   * <p>The journal gets closed once the call that is currently running finished. If that takes
+   * longer than a minute, the journal gets closed later in the background.
+   */
+  public synchronized void stop() {
+    if (executor == null) {
+      return;
+    }
+    // Sending stops after the current call, as drain() checks for the executor.
+    stoppedExecutor = executor;
+    executor = null;
+    stoppedExecutor.shutdown();
+    opened.countDown();
+    try {
+      if (!stoppedExecutor.awaitTermination(1, MINUTES)) {
+        logger.atWarning().log(
+            "The outbox is still sending. It gets closed once the call finished");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** Closes the journal, once the executor terminated and no drain uses it anymore */
+  private void closeJournal() {
+    // The journal still holds these edits, so they get read again on the next start.
+    unsent.clear();
+    pausing = false;
+    OutboxJournal journal = this.journal;
+    this.journal = null;
+    if (journal != null) {
+      try {
+        journal.close();
+      } catch (IOException e) {
+        logger.atWarning().withCause(e).log("Could not close the outbox");
+      }
+    }
+  }
+
+  /**
+   * Records an edit, to be sent in the background
+   *
+   * @param taskId The id of the task to edit
+   * @param transactions The transactions to apply
+   * @throws IOException if the edit could not be recorded
+   */
+  public void add(int taskId, List<ManiphestTransaction> transactions) throws IOException {
+    OutboxJournal journal = awaitJournal();
+    if (journal == null) {
+      throw new IOException("The outbox is not open");
+    }
+    Edit edit = new Edit();
+    edit.taskId = taskId;
+    edit.transactions = transactions;
+    journal.append(gson.toJson(edit).getBytes(UTF_8));
+    scheduleDrain();
+  }
+
+  /** Gives the number of edits that have not been confirmed by Phabricator yet */
+  long getPending() {
+    OutboxJournal journal = this.journal;
+    return journal == null ? 0 : journal.getPending();
+  }
+
+  /** Waits until the journal is open, or opening it gave up */
+  private OutboxJournal awaitJournal() throws IOException {
+    CountDownLatch opened = this.opened;
+    if (opened == null) {
+      return null;
+    }
+    try {
+      opened.await(lockTimeoutMillis, MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for the outbox to open", e);
+    }
+    return journal;
+  }
+
+  /** Opens the journal, retrying while another instance still uses it */
+  private void open(long deadline) {
+    try {
+      journal = new OutboxJournal(directory, segmentSize);
+    } catch (IOException e) {
+      if (e instanceof OutboxJournal.LockedException && System.nanoTime() < deadline) {
+        ScheduledThreadPoolExecutor executor = this.executor;
+        try {
+          if (executor != null) {
+            executor.schedule(() -> open(deadline), LOCK_RETRY_MILLIS, MILLISECONDS);
+          }
+        } catch (RejectedExecutionException re) {
+          // The outbox is stopping.
+        }
+        return;
+      }
+      logger.atSevere().withCause(e).log("Could not open the outbox in %s", directory);
+      opened.countDown();
+      return;
+    }
+    opened.countDown();
+    long pending = journal.getPending();
+    if (pending > 0) {
+      logger.atInfo().log("Replaying %d edit(s) from the outbox", pending);
+    }
+    scheduleDrain();
+  }
+
+  private void scheduleDrain() {
+    ScheduledThreadPoolExecutor executor = this.executor;
+    if (executor != null && !pausing && drainScheduled.compareAndSet(false, true)) {
+      try {
+        executor.execute(this::drain);
+      } catch (RejectedExecutionException e) {
+        // The outbox is stopping. The edits get sent on the next start.
+        drainScheduled.set(false);
+      }
+    }
+  }
+
+  /** Sends edits until the journal is empty, or Phabricator cannot be reached */
+  private void drain() {
+    drainScheduled.set(false);
+    try {
+      while (executor != null) {
+        if (unsent.isEmpty()) {
+          for (OutboxJournal.Record record : journal.readNext(BATCH_SIZE)) {
+            Edit edit = decode(record);
+            if (edit == null) {
+              // Acknowledging it right away would also acknowledge the unsent edits in front of it.
+              edit = new Edit();
+              edit.sequence = record.getSequence();
+            }
+            unsent.add(edit);
+          }
+          if (unsent.isEmpty()) {
+            return;
+          }
+        }
+        if (!sendNext()) {
+          pause();
+          return;
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      logger.atSevere().withCause(e).log("Could not process the outbox");
+      pause();
+    }
+  }
+
+  /**
+   * Sends the next edits that are for the same task in a single call
+   *
+   * @return false if Phabricator could not be reached, true otherwise
+   */
+  private boolean sendNext() throws IOException {
+    Edit first = unsent.peek();
+    if (first.transactions == null) {
+      // A record that could not be decoded. All edits in front of it are done by now.
+      journal.acknowledge(first.sequence);
+      unsent.remove();
+      return true;
+    }
+
+    List<ManiphestTransaction> transactions = new ArrayList<>();
+    int edits = 0;
+    long sequence = first.sequence;
+    for (Edit edit : unsent) {
+      if (edit.transactions == null
+          || edit.taskId != first.taskId
+          || (edits > 0 && transactions.size() + edit.transactions.size() > BATCH_SIZE)) {
+        break;
+      }
+      transactions.addAll(edit.transactions);
+      sequence = edit.sequence;
+      edits++;
+    }
+
+    try {
+      conduit.maniphestEdit(first.taskId, transactions);
+      logger.atFine().log("Sent %d edit(s) for task %d from the outbox", edits, first.taskId);
+    } catch (ConduitErrorException | UnknownProjectException e) {
+      logger.atSevere().withCause(e).log(
+          "Phabricator rejected transactions %s for task %d. Dropping them from the outbox",
+          transactions, first.taskId);
+    } catch (RuntimeException e) {
+      // Sending the same edits again would fail the same way, and block the edits behind them.
+      logger.atSevere().withCause(e).log(
+          "Could not send transactions %s for task %d. Dropping them from the outbox",
+          transactions, first.taskId);
+    } catch (ConduitException e) {
+      logger.atWarning().withCause(e).log(
+          "Could not send edits for task %d from the outbox. Retrying in %d ms",
+          first.taskId, retryIntervalMillis);
+      return false;
+    }
+
+    journal.acknowledge(sequence);
+    for (int i = 0; i < edits; i++) {
+      unsent.remove();
+    }
+    return true;
+  }
+
+  /** Waits for the retry interval before sending again */
+  private void pause() {
+    ScheduledThreadPoolExecutor executor = this.executor;
+    if (executor == null) {
+      // The outbox is stopping. The edits get sent on the next start.
+      return;
+    }
+    pausing = true;
+    try {
+      executor.schedule(
+          () -> {
+            pausing = false;
+            drain();
+          },
+          retryIntervalMillis,
+          MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      // The outbox is stopping. The edits get sent on the next start.
+    }
+  }
+
+  private Edit decode(OutboxJournal.Record record) {
+    try {
+      Edit edit = gson.fromJson(new String(record.getPayload(), UTF_8), Edit.class);
+      if (edit != null && edit.transactions != null && !edit.transactions.isEmpty()) {
+        edit.sequence = record.getSequence();
+        return edit;
+      }
+      logger.atSevere().log("Dropping empty outbox record %d", record.getSequence());
+    } catch (JsonParseException e) {
+      logger.atSevere().withCause(e).log("Dropping invalid outbox record %d", record.getSequence());
+    }
+    return null;
+  }
+}
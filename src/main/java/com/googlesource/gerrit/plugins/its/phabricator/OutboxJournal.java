@@ -0,0 +1,503 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.its.phabricator;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import com.google.common.flogger.FluentLogger;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of records, split into segment files
+ *
+ * <p>Each record gets a sequence number, in the order it got appended. Records are written
+ * sequentially to the newest segment, and {@link #append} only returns once the record is on disk.
+ * Appenders that arrive while a sync is running get synced together by the next one, so concurrent
+ * appends share the cost of syncing.
+ *
+ * <p>Records stay in the journal until they get acknowledged. Segments that only hold acknowledged
+ * records get deleted. A record that got torn by a crash while it was being written is detected by
+ * its checksum, and the journal gets truncated in front of it when it is opened again.
+ *
+ * <p>On disk, a segment is named after the sequence number of its first record. Each record
+ * consists of the payload's length, the payload's CRC32, and the payload. The sequence number of
+ * the last acknowledged record is kept in a separate file.
+ *
+ * <p>Only one journal at a time can be open on a directory. While a journal is open, it holds an
+ * exclusive lock on a lock file in the directory, and opening the directory again fails with a
+ * {@link LockedException}.
+ */
+class OutboxJournal implements AutoCloseable {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static final String SEGMENT_SUFFIX = ".seg";
+  private static final String ACKNOWLEDGED_FILE = "acknowledged";
+  private static final String LOCK_FILE = "lock";
+  private static final int HEADER_SIZE = 8;
+
+  /** A record read from the journal */
+  static class Record {
+    private final long sequence;
+    private final byte[] payload;
+
+    Record(long sequence, byte[] payload) {
+      this.sequence = sequence;
+      this.payload = payload;
+    }
+
+    long getSequence() {
+      return sequence;
+    }
+
+    byte[] getPayload() {
+      return payload;
+    }
+  }
+
+  /** Exception thrown if the journal's directory is in use by another journal */
+  static class LockedException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    LockedException(Path directory) {
+      super("The outbox in " + directory + " is in use");
+    }
+  }
+
+  private final Path directory;
+  private final long maxSegmentSize;
+  private final FileChannel lockChannel;
+
+  /** Segments by the sequence number of their first record. Guarded by this. */
+  private final TreeMap<Long, Path> segments = new TreeMap<>();
+
+  // Guarded by this.
+  private FileChannel active;
+  private long activeSize;
+  private long nextSequence;
+  private long acknowledged;
+
+  // Records up to this sequence number got synced when their segment got rolled. Guarded by this.
+  private long rolled;
+  private boolean closed;
+
+  // Position of the next record to read. Guarded by this.
+  private long readSequence;
+  private long readSegment;
+  private long readOffset;
+
+  // Records up to this sequence number are on disk. Only written while holding syncLock.
+  private final Object syncLock = new Object();
+  private volatile long synced;
+
+  /**
+   * Opens a journal, and recovers the records that have not been acknowledged yet
+   *
+   * @param directory The directory to keep the journal in. It gets created if needed.
+   * @param maxSegmentSize The size from which on a new segment gets started
+   * @throws LockedException if another journal is open on the directory
+   * @throws IOException if the journal could not be opened
+   */
+  OutboxJournal(Path directory, long maxSegmentSize) throws IOException {
+    this.directory = directory;
+    this.maxSegmentSize = maxSegmentSize;
+    Files.createDirectories(directory);
+    lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), CREATE, WRITE);
+    FileLock lock;
+    try {
+      lock = lockChannel.tryLock();
+    } catch (OverlappingFileLockException e) {
+      // Another journal in this JVM holds the lock, e.g. the old instance during a plugin reload.
+      lock = null;
+    } catch (IOException e) {
+      lockChannel.close();
+      throw e;
+    }
+    if (lock == null) {
+      lockChannel.close();
+      throw new LockedException(directory);
+    }
+    try {
+      load();
+    } catch (IOException e) {
+      close();
+      throw e;
+    }
+  }
+
+  /** Reads the journal's state from disk, and truncates torn records */
+  private synchronized void load() throws IOException {
+    acknowledged = readAcknowledged();
+
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        try {
+          segments.put(
+              Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())), file);
+        } catch (NumberFormatException e) {
+          logger.atWarning().log("Ignoring unexpected file %s in outbox", file);
+        }
+      }
+    }
+
+    nextSequence = acknowledged + 1;
+    if (!segments.isEmpty()) {
+      Map.Entry<Long, Path> last = segments.lastEntry();
+      long count = recover(last.getValue());
+      nextSequence = Math.max(nextSequence, last.getKey() + count);
+      active = FileChannel.open(last.getValue(), WRITE, APPEND);
+      activeSize = active.size();
+    }
+    synced = nextSequence - 1;
+
+    readSequence = acknowledged + 1;
+    Map.Entry<Long, Path> first = segments.floorEntry(readSequence);
+    if (first == null) {
+      first = segments.firstEntry();
+    }
+    if (first != null) {
+      readSegment = first.getKey();
+      readOffset = 0;
+      skipTo(readSequence);
+    }
+    deleteAcknowledgedSegments();
+  }
+
+  /**
+   * Appends a record, and waits until it is on disk
+   *
+   * @param payload The record's content
+   * @return The record's sequence number
+   * @throws IOException if the record could not be written
+   */
+  long append(byte[] payload) throws IOException {
+    long sequence;
+    synchronized (this) {
+      if (closed) {
+        throw new ClosedChannelException();
+      }
+      reopenActive();
+      if (active == null || activeSize >= maxSegmentSize) {
+        rollSegment();
+      }
+      ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+      buffer.putInt(payload.length).putInt(checksum(payload)).put(payload).flip();
+      try {
+        while (buffer.hasRemaining()) {
+          active.write(buffer);
+        }
+      } catch (IOException e) {
+        // Drop the partial record, so later records do not end up behind a torn one. If an
+        // interrupt
+        // closed the segment, the record gets dropped when it is opened again.
+        if (active.isOpen()) {
+          active.truncate(activeSize);
+        }
+        throw e;
+      }
+      activeSize += HEADER_SIZE + payload.length;
+      sequence = nextSequence++;
+    }
+    sync(sequence);
+    return sequence;
+  }
+
+  /**
+   * Reads the next records that have not been read yet
+   *
+   * <p>Only records that are on disk already are read, so a record cannot get acted upon before its
+   * append succeeded.
+   *
+   * @param max The maximum number of records to read
+   * @return The records, which may be empty if all records have been read
+   * @throws IOException if the records could not be read
+   */
+  synchronized List<Record> readNext(int max) throws IOException {
+    List<Record> records = new ArrayList<>();
+    long last = synced;
+    while (records.size() < max && readSequence <= last) {
+      Path segment = segments.get(readSegment);
+      try (FileChannel channel = FileChannel.open(segment, READ)) {
+        channel.position(readOffset);
+        while (records.size() < max && readSequence <= last) {
+          byte[] payload = readRecord(channel);
+          if (payload == null) {
+            break;
+          }
+          records.add(new Record(readSequence++, payload));
+          readOffset = channel.position();
+        }
+      }
+      if (readSequence <= last && records.size() < max) {
+        Long next = segments.higherKey(readSegment);
+        if (next == null) {
+          throw new IOException("Outbox record " + readSequence + " is missing");
+        }
+        readSegment = next;
+        readOffset = 0;
+      }
+    }
+    return records;
+  }
+
+  /**
+   * Marks all records up to a sequence number as done
+   *
+   * <p>Segments that only hold acknowledged records get deleted.
+   *
+   * @param sequence The sequence number of the last record that is done
+   * @throws IOException if the acknowledgement could not be written
+   */
+  synchronized void acknowledge(long sequence) throws IOException {
+    if (sequence <= acknowledged) {
+      return;
+    }
+    Path tmp = directory.resolve(ACKNOWLEDGED_FILE + ".tmp");
+    try (FileChannel channel = FileChannel.open(tmp, CREATE, WRITE)) {
+      channel.truncate(0);
+      channel.write(ByteBuffer.wrap(Long.toString(sequence).getBytes(UTF_8)));
+      channel.force(true);
+    }
+    Files.move(tmp, directory.resolve(ACKNOWLEDGED_FILE), ATOMIC_MOVE, REPLACE_EXISTING);
+    acknowledged = sequence;
+    deleteAcknowledgedSegments();
+  }
+
+  /** Gives the number of records that have not been acknowledged yet */
+  synchronized long getPending() {
+    return nextSequence - 1 - acknowledged;
+  }
+
+  /** Gives the number of segment files */
+  synchronized int getSegmentCount() {
+    return segments.size();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    closed = true;
+    try {
+      if (active != null && active.isOpen()) {
+        active.force(false);
+        active.close();
+        active = null;
+      }
+    } finally {
+      // Closing the channel releases the lock.
+      lockChannel.close();
+    }
+  }
+
+  /** Waits until the record with the given sequence number is on disk */
+  private void sync(long sequence) throws IOException {
+    synchronized (syncLock) {
+      if (synced >= sequence) {
+        // Another appender synced this record along with its own.
+        return;
+      }
+      FileChannel channel;
+      long target;
+      synchronized (this) {
+        if (rolled >= sequence) {
+          // The segment got rolled, which synced it already. Records in the new segment still need
+          // a sync of their own.
+          synced = Math.max(synced, rolled);
+          return;
+        }
+        target = nextSequence - 1;
+        if (!closed) {
+          reopenActive();
+        }
+        channel = active;
+        if (channel == null) {
+          // Closing the journal synced it, and deleted segments only hold acknowledged records.
+          synced = Math.max(synced, target);
+          return;
+        }
+      }
+      try {
+        channel.force(false);
+      } catch (ClosedChannelException e) {
+        synchronized (this) {
+          if (rolled < target && !closed) {
+            // Closed by an interrupt, so nothing got synced.
+            throw e;
+          }
+        }
+        // The segment got rolled or the journal closed meanwhile, which synced it before closing
+        // it.
+      }
+      synced = Math.max(synced, target);
+    }
+  }
+
+  /**
+   * Opens the active segment again, if it got closed by an interrupt
+   *
+   * <p>A thread that gets interrupted during I/O closes the channel it uses. As the active segment
+   * is shared, later appends would fail otherwise.
+   */
+  private void reopenActive() throws IOException {
+    if (active != null && !active.isOpen()) {
+      active = FileChannel.open(segments.lastEntry().getValue(), WRITE, APPEND);
+      // Drops a record that got torn by the interrupt.
+      active.truncate(activeSize);
+    }
+  }
+
+  private void rollSegment() throws IOException {
+    if (active != null) {
+      active.force(false);
+      active.close();
+      rolled = nextSequence - 1;
+    }
+    Path segment = directory.resolve(String.format("%020d%s", nextSequence, SEGMENT_SUFFIX));
+    active = FileChannel.open(segment, CREATE, WRITE, APPEND);
+    activeSize = active.size();
+    segments.put(nextSequence, segment);
+    if (readSequence == nextSequence) {
+      readSegment = nextSequence;
+      readOffset = 0;
+    }
+  }
+
+  private void deleteAcknowledgedSegments() throws IOException {
+    while (!segments.isEmpty()) {
+      Map.Entry<Long, Path> first = segments.firstEntry();
+      Long next = segments.higherKey(first.getKey());
+      if (next == null) {
+        // The active segment only gets dropped once it is big enough, so a journal that keeps up
+        // does not churn through files.
+        if (nextSequence - 1 > acknowledged || activeSize < maxSegmentSize) {
+          break;
+        }
+        if (active != null) {
+          active.close();
+          active = null;
+        }
+      } else if (next - 1 > acknowledged) {
+        break;
+      }
+      Files.deleteIfExists(first.getValue());
+      segments.remove(first.getKey());
+    }
+  }
+
+  /** Moves the read position forward until the given sequence number */
+  private void skipTo(long sequence) throws IOException {
+    long current = readSegment;
+    try (FileChannel channel = FileChannel.open(segments.get(readSegment), READ)) {
+      while (current < sequence && readRecord(channel) != null) {
+        current++;
+      }
+      readOffset = channel.position();
+    }
+    readSequence = current;
+  }
+
+  /**
+   * Truncates a segment after its last intact record
+   *
+   * @return The number of intact records
+   */
+  private long recover(Path segment) throws IOException {
+    try (FileChannel channel = FileChannel.open(segment, READ, WRITE)) {
+      long count = 0;
+      long end = 0;
+      while (readRecord(channel) != null) {
+        count++;
+        end = channel.position();
+      }
+      if (end < channel.size()) {
+        logger.atWarning().log(
+            "Truncating torn record at offset %d of outbox segment %s", end, segment);
+        channel.truncate(end);
+        channel.force(true);
+      }
+      return count;
+    }
+  }
+
+  /** Reads the record at the channel's position, or gives null if there is no intact record */
+  private static byte[] readRecord(FileChannel channel) throws IOException {
+    long start = channel.position();
+    try {
+      ByteBuffer header = readFully(channel, HEADER_SIZE);
+      int length = header.getInt();
+      int checksum = header.getInt();
+      if (length < 0 || length > channel.size() - channel.position()) {
+        throw new EOFException();
+      }
+      byte[] payload = readFully(channel, length).array();
+      if (checksum(payload) != checksum) {
+        throw new EOFException();
+      }
+      return payload;
+    } catch (EOFException e) {
+      channel.position(start);
+      return null;
+    }
+  }
+
+  private static ByteBuffer readFully(FileChannel channel, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer) < 0) {
+        throw new EOFException();
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private static int checksum(byte[] payload) {
+    CRC32 crc = new CRC32();
+    crc.update(payload, 0, payload.length);
+    return (int) crc.getValue();
+  }
+
+  private long readAcknowledged() throws IOException {
+    Path file = directory.resolve(ACKNOWLEDGED_FILE);
+    if (!Files.exists(file)) {
+      return 0;
+    }
+    String content = new String(Files.readAllBytes(file), UTF_8).trim();
+    try {
+      return Long.parseLong(content);
+    } catch (NumberFormatException e) {
+      throw new IOException("Invalid outbox acknowledgement " + content + " in " + file, e);
+    }
+  }
+}
@@ -15,43 +15,111 @@
 package com.googlesource.gerrit.plugins.its.phabricator;
 
 import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.common.Nullable;
 import com.google.gerrit.extensions.annotations.PluginName;
 import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
 import com.google.inject.Inject;
+import com.google.inject.assistedinject.Assisted;
 import com.googlesource.gerrit.plugins.its.base.its.ItsFacade;
 import com.googlesource.gerrit.plugins.its.phabricator.conduit.Conduit;
 import com.googlesource.gerrit.plugins.its.phabricator.conduit.ConduitException;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.ManiphestTransaction;
 import java.io.IOException;
 import java.net.URL;
+import java.util.Collections;
+import java.util.concurrent.RejectedExecutionException;
 import org.eclipse.jgit.lib.Config;
 
+/**
+ * Facade to a Phabricator server
+ *
+ * <p>Each server gets a facade of its own, with its own connections, rate limits, dispatch queue
+ * and outbox, so a slow server does not hold up the others. The default server is configured
+ * directly in the plugin's section, further servers in subsections of it. See {@link
+ * PhabricatorServers}.
+ */
 public class PhabricatorItsFacade implements ItsFacade {
   private static final FluentLogger logger = FluentLogger.forEnclosingClass();
 
-  private static final String GERRIT_CONFIG_URL = "url";
+  static final String GERRIT_CONFIG_URL = "url";
   private static final String GERRIT_CONFIG_TOKEN = "token";
 
+  public interface Factory {
+    PhabricatorItsFacade create(@Nullable String server);
+  }
+
   private final Conduit conduit;
+  private final TransactionCoalescer coalescer;
+  private final DispatchQueue dispatchQueue;
+  private final TaskExistenceBatcher existenceBatcher;
+  private final Outbox outbox;
+  private final ProjectPreloader projectPreloader;
+  private final HealthProber healthProber;
+  private final CacheSnapshot cacheSnapshot;
+  private final ConnectionWarmer connectionWarmer;
+  private final Gson gson = new Gson();
 
   @Inject
   public PhabricatorItsFacade(
       @PluginName String pluginName,
       @GerritServerConfig Config cfg,
-      Conduit.Factory conduitFactory) {
-    String url = cfg.getString(pluginName, null, GERRIT_CONFIG_URL);
-    String token = cfg.getString(pluginName, null, GERRIT_CONFIG_TOKEN);
+      Conduit.Factory conduitFactory,
+      TransactionCoalescer.Factory coalescerFactory,
+      DispatchQueue dispatchQueue,
+      TaskExistenceBatcher.Factory existenceBatcherFactory,
+      Outbox.Factory outboxFactory,
+      ProjectPreloader.Factory projectPreloaderFactory,
+      HealthProber.Factory healthProberFactory,
+      CacheSnapshot.Factory cacheSnapshotFactory,
+      ConnectionWarmer.Factory connectionWarmerFactory,
+      @Assisted @Nullable String server) {
+    String url = cfg.getString(pluginName, server, GERRIT_CONFIG_URL);
+    String token = cfg.getString(pluginName, server, GERRIT_CONFIG_TOKEN);
+
+    this.conduit = conduitFactory.create(server, url, token);
+    this.dispatchQueue = dispatchQueue;
+    this.coalescer = coalescerFactory.create(conduit, dispatchQueue);
+    this.existenceBatcher = existenceBatcherFactory.create(conduit);
+    this.outbox = outboxFactory.create(conduit, server);
+    this.projectPreloader = projectPreloaderFactory.create(conduit);
+    this.healthProber = healthProberFactory.create(conduit);
+    this.cacheSnapshot = cacheSnapshotFactory.create(conduit, server);
+    this.connectionWarmer = connectionWarmerFactory.create(conduit);
+  }
 
-    this.conduit = conduitFactory.create(url, token);
+  /** Starts the background work, like sending the edits that are left in the outbox */
+  public void start() {
+    // Restores the caches before anything else looks things up.
+    cacheSnapshot.start();
+    connectionWarmer.start();
+    projectPreloader.start();
+    healthProber.start();
+    outbox.start();
+  }
+
+  /** Sends out pending work and releases the facade's resources */
+  public void stop() {
+    // The coalescer flushes into the dispatch queue, so it has to stop first.
+    coalescer.stop();
+    dispatchQueue.stop();
+    outbox.stop();
+    projectPreloader.stop();
+    healthProber.stop();
+    connectionWarmer.stop();
+    cacheSnapshot.stop();
+    conduit.close();
   }
 
   @Override
   public void addComment(final String bugId, final String comment) throws IOException {
     int task_id = Integer.parseInt(bugId);
-    try {
-      conduit.maniphestEdit(task_id, comment, null, null);
-    } catch (ConduitException e) {
-      throw new IOException("Could not add comment for task " + task_id, e);
-    }
+    edit(
+        task_id,
+        ManiphestTransaction.comment(comment),
+        () -> conduit.maniphestEdit(task_id, comment, null, null),
+        "Could not add comment for task " + task_id);
     logger.atFine().log("Added comment %s to bug %s", comment, task_id);
   }
 
@@ -67,7 +135,11 @@ public class PhabricatorItsFacade implements ItsFacade {
     Boolean ret = false;
     int task_id = Integer.parseInt(bugId);
     try {
-      ret = (conduit.maniphestSearch(task_id) != null);
+      if (existenceBatcher.isEnabled()) {
+        ret = existenceBatcher.exists(task_id);
+      } else {
+        ret = conduit.taskExists(task_id);
+      }
     } catch (ConduitException e) {
       throw new IOException("Could not check existence of task " + task_id, e);
     }
@@ -81,27 +153,84 @@ public class PhabricatorItsFacade implements ItsFacade {
     String chopped[] = actionString.split(" ");
     if (chopped.length >= 1) {
       String action = chopped[0];
-      try {
-        switch (action) {
-          case "add-project":
-            assertParameters(action, chopped, 1);
-            conduit.maniphestEdit(taskId, null, chopped[1], null);
-            break;
-          case "remove-project":
-            assertParameters(action, chopped, 1);
-            conduit.maniphestEdit(taskId, null, null, chopped[1]);
-            break;
-          default:
-            throw new IOException("Unknown action " + action);
-        }
-      } catch (ConduitException e) {
-        throw new IOException("Could not perform action " + action, e);
+      switch (action) {
+        case "add-project":
+          assertParameters(action, chopped, 1);
+          edit(
+              taskId,
+              ManiphestTransaction.addProject(chopped[1]),
+              () -> conduit.maniphestEdit(taskId, null, chopped[1], null),
+              "Could not perform action " + action);
+          break;
+        case "remove-project":
+          assertParameters(action, chopped, 1);
+          edit(
+              taskId,
+              ManiphestTransaction.removeProject(chopped[1]),
+              () -> conduit.maniphestEdit(taskId, null, null, chopped[1]),
+              "Could not perform action " + action);
+          break;
+        default:
+          throw new IOException("Unknown action " + action);
       }
     } else {
       throw new IOException("Could not parse action " + actionString);
     }
   }
 
+  /** A Conduit call that edits a task */
+  @FunctionalInterface
+  private interface TaskEdit {
+    void apply() throws ConduitException;
+  }
+
+  /**
+   * Applies an edit to a task
+   *
+   * <p>Depending on the configuration, the edit gets recorded in the outbox, coalesced with other
+   * edits for the same task, queued for asynchronous dispatch, or sent right away. Only edits that
+   * are sent right away can report Conduit failures to the caller.
+   *
+   * @param taskId The id of the task to edit
+   * @param transaction The edit as transaction, in case it gets coalesced
+   * @param edit The edit as Conduit call, in case it does not get coalesced
+   * @param errorMessage The message to report if the edit fails
+   * @throws IOException if the edit fails or could not get queued
+   */
+  private void edit(
+      int taskId, ManiphestTransaction transaction, TaskEdit edit, String errorMessage)
+      throws IOException {
+    if (outbox.isEnabled()) {
+      try {
+        outbox.add(taskId, Collections.singletonList(transaction));
+      } catch (IOException e) {
+        throw new IOException(errorMessage, e);
+      }
+    } else if (coalescer.isEnabled()) {
+      coalescer.add(taskId, transaction);
+    } else if (dispatchQueue.isEnabled()) {
+      try {
+        dispatchQueue.execute(
+            taskId,
+            () -> {
+              try {
+                edit.apply();
+              } catch (ConduitException | RuntimeException e) {
+                logger.atSevere().withCause(e).log("%s", errorMessage);
+              }
+            });
+      } catch (RejectedExecutionException e) {
+        throw new IOException(errorMessage, e);
+      }
+    } else {
+      try {
+        edit.apply();
+      } catch (ConduitException e) {
+        throw new IOException(errorMessage, e);
+      }
+    }
+  }
+
   private void assertParameters(String action, String[] params, int length) throws IOException {
     if (params.length - 1 != length) {
       throw new IOException(
@@ -111,10 +240,30 @@ public class PhabricatorItsFacade implements ItsFacade {
     }
   }
 
+  /**
+   * Reports the outcome of the most recent health probe as JSON
+   *
+   * <p>The answer comes from memory, so it does not cause Conduit calls. {@code ACCESS} only
+   * reports the status, reachability and validity of the API token. {@code SYSINFO} also reports
+   * the ping latencies. Without the {@link HealthProber} enabled, the answer is the plain string
+   * "unknown", as nothing gets probed.
+   */
   @Override
   public String healthCheck(final Check check) throws IOException {
-    // This method is not used, so there is no need to implement it.
-    return "unknown";
+    if (!healthProber.isEnabled()) {
+      return "unknown";
+    }
+    JsonObject health = gson.toJsonTree(healthProber.getHealth()).getAsJsonObject();
+    if (check == Check.ACCESS) {
+      JsonObject access = new JsonObject();
+      for (String field : new String[] {"status", "reachable", "authenticated", "error"}) {
+        if (health.has(field)) {
+          access.add(field, health.get(field));
+        }
+      }
+      return gson.toJson(access);
+    }
+    return gson.toJson(health);
   }
 
   @Override
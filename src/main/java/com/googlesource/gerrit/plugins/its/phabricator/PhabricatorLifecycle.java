@@ -0,0 +1,40 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.its.phabricator;
+
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/** Starts and stops sending pending Phabricator work along with the plugin */
+@Singleton
+public class PhabricatorLifecycle implements LifecycleListener {
+  private final PhabricatorServers servers;
+
+  @Inject
+  PhabricatorLifecycle(PhabricatorServers servers) {
+    this.servers = servers;
+  }
+
+  @Override
+  public void start() {
+    servers.start();
+  }
+
+  @Override
+  public void stop() {
+    servers.stop();
+  }
+}
@@ -17,16 +17,17 @@ package com.googlesource.gerrit.plugins.its.phabricator;
 import com.google.common.flogger.FluentLogger;
 import com.google.gerrit.extensions.annotations.PluginName;
 import com.google.gerrit.extensions.config.FactoryModule;
+import com.google.gerrit.lifecycle.LifecycleModule;
 import com.google.gerrit.server.config.GerritServerConfig;
 import com.google.gerrit.server.config.PluginConfigFactory;
 import com.google.inject.Inject;
-import com.google.inject.Scopes;
 import com.googlesource.gerrit.plugins.its.base.ItsHookModule;
-import com.googlesource.gerrit.plugins.its.base.its.ItsFacade;
 import com.googlesource.gerrit.plugins.its.base.its.ItsFacadeFactory;
-import com.googlesource.gerrit.plugins.its.base.its.SingleItsServer;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.CommentDeduplicator;
 import com.googlesource.gerrit.plugins.its.phabricator.conduit.Conduit;
 import com.googlesource.gerrit.plugins.its.phabricator.conduit.ConduitConnection;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.ProjectSearchCache;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.TaskExistenceCache;
 import org.eclipse.jgit.lib.Config;
 
 public class PhabricatorModule extends FactoryModule {
@@ -49,12 +50,30 @@ public class PhabricatorModule extends FactoryModule {
 
   @Override
   protected void configure() {
-    if (gerritConfig.getString(pluginName, null, "url") != null) {
+    if (PhabricatorServers.isConfigured(gerritConfig, pluginName)) {
       logger.atInfo().log("Phabricator is configured as ITS");
       factory(ConduitConnection.Factory.class);
       factory(Conduit.Factory.class);
-      bind(ItsFacade.class).to(PhabricatorItsFacade.class).in(Scopes.SINGLETON);
-      bind(ItsFacadeFactory.class).to(SingleItsServer.class);
+      install(ProjectSearchCache.module());
+      install(TaskExistenceCache.module());
+      install(CommentDeduplicator.module());
+      factory(TransactionCoalescer.Factory.class);
+      factory(TaskExistenceBatcher.Factory.class);
+      factory(Outbox.Factory.class);
+      factory(ProjectPreloader.Factory.class);
+      factory(HealthProber.Factory.class);
+      factory(CacheSnapshot.Factory.class);
+      factory(ConnectionWarmer.Factory.class);
+      factory(PhabricatorItsFacade.Factory.class);
+      bind(ItsFacadeFactory.class).to(PhabricatorServers.class);
+
+      install(
+          new LifecycleModule() {
+            @Override
+            protected void configure() {
+              listener().to(PhabricatorLifecycle.class);
+            }
+          });
 
       install(new ItsHookModule(pluginName, pluginCfgFactory));
     }
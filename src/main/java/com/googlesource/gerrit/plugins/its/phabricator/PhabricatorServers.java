@@ -0,0 +1,154 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.its.phabricator;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.gerrit.server.config.PluginConfigFactory;
+import com.google.gerrit.server.project.NoSuchProjectException;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.googlesource.gerrit.plugins.its.base.its.ItsFacade;
+import com.googlesource.gerrit.plugins.its.base.its.ItsFacadeFactory;
+import java.util.Collection;
+import org.eclipse.jgit.lib.Config;
+
+/**
+ * Selects the Phabricator server for a project
+ *
+ * <p>The default server is configured by {@code url} and {@code token} in the plugin's section of
+ * {@code gerrit.config}. Further servers are configured the same way in subsections, like {@code
+ * [its-phabricator "other"]}. Projects use the default server, unless they select another one by
+ * its name through {@code server} in the plugin's section of their {@code project.config}. The
+ * selection is inherited from parent projects.
+ *
+ * <p>Each server gets a {@link PhabricatorItsFacade} of its own, which is created on construction.
+ */
+@Singleton
+public class PhabricatorServers implements ItsFacadeFactory {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  static final String PROJECT_CONFIG_SERVER = "server";
+
+  /** Checks whether at least one server is configured */
+  static boolean isConfigured(Config cfg, String pluginName) {
+    if (cfg.getString(pluginName, null, PhabricatorItsFacade.GERRIT_CONFIG_URL) != null) {
+      return true;
+    }
+    for (String server : cfg.getSubsections(pluginName)) {
+      if (cfg.getString(pluginName, server, PhabricatorItsFacade.GERRIT_CONFIG_URL) != null) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private final String pluginName;
+  private final PluginConfigFactory pluginCfgFactory;
+  private final PhabricatorItsFacade defaultFacade;
+  private final ImmutableMap<String, PhabricatorItsFacade> facades;
+
+  @Inject
+  PhabricatorServers(
+      @PluginName String pluginName,
+      @GerritServerConfig Config cfg,
+      PluginConfigFactory pluginCfgFactory,
+      PhabricatorItsFacade.Factory facadeFactory) {
+    this.pluginName = pluginName;
+    this.pluginCfgFactory = pluginCfgFactory;
+    this.defaultFacade =
+        cfg.getString(pluginName, null, PhabricatorItsFacade.GERRIT_CONFIG_URL) != null
+            ? facadeFactory.create(null)
+            : null;
+    ImmutableMap.Builder<String, PhabricatorItsFacade> facades = ImmutableMap.builder();
+    for (String server : cfg.getSubsections(pluginName)) {
+      if (cfg.getString(pluginName, server, PhabricatorItsFacade.GERRIT_CONFIG_URL) != null) {
+        facades.put(server, facadeFactory.create(server));
+      } else {
+        logger.atWarning().log("Phabricator server %s has no url and gets ignored", server);
+      }
+    }
+    this.facades = facades.build();
+  }
+
+  /** Starts the background work of all servers */
+  public void start() {
+    for (PhabricatorItsFacade facade : getFacades()) {
+      facade.start();
+    }
+  }
+
+  /** Stops the background work of all servers */
+  public void stop() {
+    for (PhabricatorItsFacade facade : getFacades()) {
+      facade.stop();
+    }
+  }
+
+  /**
+   * Gives the facade to the server a project selects
+   *
+   * @throws IllegalStateException if the project selects a server that is not configured, or if it
+   *     does not select a server and no default server is configured
+   */
+  @Override
+  public ItsFacade getFacade(Project.NameKey projectName) {
+    String server = getServer(projectName);
+    if (server == null) {
+      if (defaultFacade == null) {
+        throw new IllegalStateException(
+            String.format(
+                "Project %s does not select a Phabricator server, and no default server is"
+                    + " configured",
+                projectName.get()));
+      }
+      return defaultFacade;
+    }
+    PhabricatorItsFacade facade = facades.get(server);
+    if (facade == null) {
+      throw new IllegalStateException(
+          String.format(
+              "Project %s selects Phabricator server %s, which is not configured",
+              projectName.get(), server));
+    }
+    return facade;
+  }
+
+  private String getServer(Project.NameKey projectName) {
+    try {
+      return Strings.emptyToNull(
+          pluginCfgFactory
+              .getFromProjectConfigWithInheritance(projectName, pluginName)
+              .getString(PROJECT_CONFIG_SERVER));
+    } catch (NoSuchProjectException e) {
+      logger.atWarning().withCause(e).log(
+          "Could not read the Phabricator server of project %s", projectName.get());
+      return null;
+    }
+  }
+
+  private Collection<PhabricatorItsFacade> getFacades() {
+    ImmutableList.Builder<PhabricatorItsFacade> all = ImmutableList.builder();
+    if (defaultFacade != null) {
+      all.add(defaultFacade);
+    }
+    return all.addAll(facades.values()).build();
+  }
+}
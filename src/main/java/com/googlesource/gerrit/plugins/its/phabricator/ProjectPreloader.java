@@ -0,0 +1,131 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.its.phabricator;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.server.config.ConfigUtil;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.inject.Inject;
+import com.google.inject.assistedinject.Assisted;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.Conduit;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.ConduitException;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.ProjectSearchCache;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import org.eclipse.jgit.lib.Config;
+
+/**
+ * Loads Phabricator projects into the project cache in the background
+ *
+ * <p>Without preloading, the first edit that involves a project has to look the project up with a
+ * 'project.search' call. When the plugin starts, the preloader fetches all projects (or those with
+ * the slugs given in {@code projectPreloadSlug}) in pages, and fetches them again every {@code
+ * projectPreloadInterval}, so lookups get served from the cache from the first event on. A warning
+ * gets logged if the project cache is too small to hold all preloaded projects.
+ *
+ * <p>The preloader is only enabled if {@code projectPreload} is set.
+ */
+public class ProjectPreloader {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static final String GERRIT_CONFIG_PRELOAD = "projectPreload";
+  private static final String GERRIT_CONFIG_PRELOAD_SLUG = "projectPreloadSlug";
+  private static final String GERRIT_CONFIG_PRELOAD_INTERVAL = "projectPreloadInterval";
+
+  public interface Factory {
+    ProjectPreloader create(Conduit conduit);
+  }
+
+  private final Conduit conduit;
+  private final boolean enabled;
+  private final List<String> slugs;
+  private final long intervalMillis;
+  private final long cacheLimit;
+  private final String threadName;
+
+  private ScheduledThreadPoolExecutor executor;
+
+  @Inject
+  ProjectPreloader(
+      @PluginName String pluginName, @GerritServerConfig Config cfg, @Assisted Conduit conduit) {
+    this.conduit = conduit;
+    this.enabled = cfg.getBoolean(pluginName, null, GERRIT_CONFIG_PRELOAD, false);
+    this.slugs =
+        ImmutableList.copyOf(
+            Arrays.asList(cfg.getStringList(pluginName, null, GERRIT_CONFIG_PRELOAD_SLUG)));
+    this.intervalMillis =
+        ConfigUtil.getTimeUnit(
+            cfg, pluginName, null, GERRIT_CONFIG_PRELOAD_INTERVAL, 30 * 60 * 1000, MILLISECONDS);
+    this.cacheLimit = ProjectSearchCache.getMemoryLimit(cfg);
+    this.threadName = pluginName + "-project-preloader-%d";
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Starts loading projects in the background */
+  public synchronized void start() {
+    if (!enabled || executor != null) {
+      return;
+    }
+    executor =
+        new ScheduledThreadPoolExecutor(
+            1, new ThreadFactoryBuilder().setNameFormat(threadName).setDaemon(true).build());
+    executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    if (intervalMillis > 0) {
+      executor.scheduleWithFixedDelay(this::load, 0, intervalMillis, MILLISECONDS);
+    } else {
+      executor.execute(this::load);
+    }
+  }
+
+  /** Stops loading projects. A load that is running gets interrupted. */
+  public synchronized void stop() {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+
+  /** Loads the projects once */
+  void load() {
+    long start = System.nanoTime();
+    try {
+      int count = conduit.loadProjects(slugs);
+      logger.atInfo().log(
+          "Preloaded %d Phabricator project(s) in %d ms",
+          count, NANOSECONDS.toMillis(System.nanoTime() - start));
+      // Each project is cached by name and by slug. If the cache is too small, preloaded projects
+      // evict each other, and lookups fall back to 'project.search' calls.
+      if (2L * count > cacheLimit) {
+        logger.atWarning().log(
+            "Preloaded %d Phabricator project(s), but the project cache holds only %d entries."
+                + " Raise cache.phabricator_projects.memoryLimit to at least %d.",
+            count, cacheLimit, 2L * count);
+      }
+    } catch (ConduitException | RuntimeException e) {
+      // Lookups fall back to 'project.search' calls until the next load.
+      logger.atWarning().withCause(e).log("Could not preload Phabricator projects");
+    }
+  }
+}
@@ -0,0 +1,107 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.its.phabricator;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor that runs work for the same key in order, and work for different keys in parallel
+ *
+ * <p>Work is spread by key across a fixed number of lanes. Each lane has a single thread and a
+ * bounded queue of its own. So all work for a key runs in the order it got submitted, while work
+ * for keys on different lanes runs concurrently.
+ */
+class StripedExecutor {
+  private final ThreadPoolExecutor[] lanes;
+
+  /**
+   * @param laneCount The number of lanes
+   * @param laneQueueSize The number of waiting tasks each lane can hold
+   * @param threadFactory The factory for the lanes' threads
+   * @param overflowHandler The handler for work that does not fit into its lane's queue
+   */
+  StripedExecutor(
+      int laneCount,
+      int laneQueueSize,
+      ThreadFactory threadFactory,
+      RejectedExecutionHandler overflowHandler) {
+    lanes = new ThreadPoolExecutor[laneCount];
+    for (int i = 0; i < laneCount; i++) {
+      lanes[i] =
+          new ThreadPoolExecutor(
+              1,
+              1,
+              0,
+              MINUTES,
+              new ArrayBlockingQueue<>(laneQueueSize),
+              threadFactory,
+              overflowHandler);
+    }
+  }
+
+  /**
+   * Queues work on the lane for a key
+   *
+   * @param key The key to order the work by
+   * @param work The work to run
+   * @throws RejectedExecutionException if the work could not get queued
+   */
+  void execute(int key, Runnable work) {
+    lanes[Math.floorMod(key, lanes.length)].execute(work);
+  }
+
+  /** Gives the number of queued, but not yet started tasks across all lanes */
+  int getQueueDepth() {
+    int depth = 0;
+    for (ThreadPoolExecutor lane : lanes) {
+      depth += lane.getQueue().size();
+    }
+    return depth;
+  }
+
+  void shutdown() {
+    for (ThreadPoolExecutor lane : lanes) {
+      lane.shutdown();
+    }
+  }
+
+  List<Runnable> shutdownNow() {
+    List<Runnable> pending = new ArrayList<>();
+    for (ThreadPoolExecutor lane : lanes) {
+      pending.addAll(lane.shutdownNow());
+    }
+    return pending;
+  }
+
+  boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    for (ThreadPoolExecutor lane : lanes) {
+      if (!lane.awaitTermination(deadline - System.nanoTime(), NANOSECONDS)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
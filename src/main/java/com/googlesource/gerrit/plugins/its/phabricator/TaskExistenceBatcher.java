@@ -0,0 +1,148 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.its.phabricator;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.server.config.ConfigUtil;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.inject.Inject;
+import com.google.inject.assistedinject.Assisted;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.Conduit;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.ConduitException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import org.eclipse.jgit.lib.Config;
+
+/**
+ * Gathers concurrent existence checks into a single 'maniphest.search' call
+ *
+ * <p>The first check opens a window of {@code existsBatchWindow}. All checks that arrive within the
+ * window are answered by a single call, that the first check's thread makes once the window closes
+ * or a full page of tasks has been gathered. The other threads wait for that call's result. Tasks
+ * whose existence is cached get answered right away, without waiting for a window. A window of 0
+ * (the default) disables batching.
+ */
+public class TaskExistenceBatcher {
+  private static final String GERRIT_CONFIG_BATCH_WINDOW = "existsBatchWindow";
+
+  public interface Factory {
+    TaskExistenceBatcher create(Conduit conduit);
+  }
+
+  private final Conduit conduit;
+  private final long windowMillis;
+
+  private Batch current;
+
+  @Inject
+  TaskExistenceBatcher(
+      @PluginName String pluginName, @GerritServerConfig Config cfg, @Assisted Conduit conduit) {
+    this.conduit = conduit;
+    this.windowMillis =
+        ConfigUtil.getTimeUnit(cfg, pluginName, null, GERRIT_CONFIG_BATCH_WINDOW, 0, MILLISECONDS);
+  }
+
+  public boolean isEnabled() {
+    return windowMillis > 0;
+  }
+
+  /**
+   * Checks whether a task exists
+   *
+   * <p>Unless the task's existence is cached, blocks until the batch the check ended up in has been
+   * answered.
+   *
+   * @param taskId The id of the task to check
+   * @return True if the task exists, false otherwise
+   * @throws ConduitException if the batch's call failed
+   */
+  public boolean exists(int taskId) throws ConduitException {
+    Boolean cached = conduit.getTaskExistenceCache().get(taskId);
+    if (cached != null) {
+      return cached;
+    }
+
+    Batch batch;
+    boolean leader;
+    CompletableFuture<Boolean> result;
+    synchronized (this) {
+      leader = current == null;
+      if (leader) {
+        current = new Batch();
+      }
+      batch = current;
+      result = batch.add(taskId);
+      if (batch.isFull()) {
+        // Later checks have to go into a new batch.
+        current = null;
+        batch.full.countDown();
+      }
+    }
+
+    if (leader) {
+      try {
+        batch.full.await(windowMillis, MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      synchronized (this) {
+        if (current == batch) {
+          current = null;
+        }
+      }
+      batch.run();
+    }
+
+    try {
+      return result.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ConduitException("Interrupted while checking existence of task " + taskId, e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof ConduitException) {
+        throw (ConduitException) e.getCause();
+      }
+      throw new ConduitException("Could not check existence of task " + taskId, e.getCause());
+    }
+  }
+
+  /** Checks gathered within the same window. Guarded by the batcher's lock until it gets run. */
+  private class Batch {
+    private final Map<Integer, CompletableFuture<Boolean>> checks = new HashMap<>();
+    private final CountDownLatch full = new CountDownLatch(1);
+
+    CompletableFuture<Boolean> add(int taskId) {
+      return checks.computeIfAbsent(taskId, id -> new CompletableFuture<>());
+    }
+
+    boolean isFull() {
+      return checks.size() >= Conduit.SEARCH_PAGE_SIZE;
+    }
+
+    void run() {
+      try {
+        Map<Integer, Boolean> exists = conduit.taskExists(checks.keySet());
+        checks.forEach((taskId, result) -> result.complete(exists.getOrDefault(taskId, false)));
+      } catch (ConduitException | RuntimeException e) {
+        checks.values().forEach(result -> result.completeExceptionally(e));
+      }
+    }
+  }
+}
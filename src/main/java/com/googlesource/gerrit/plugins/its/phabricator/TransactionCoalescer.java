@@ -0,0 +1,201 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.its.phabricator;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.server.config.ConfigUtil;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.inject.Inject;
+import com.google.inject.assistedinject.Assisted;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.Conduit;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.ConduitException;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.ManiphestTransaction;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.UnknownProjectException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import org.eclipse.jgit.lib.Config;
+
+/**
+ * Merges transactions for the same task into a single 'maniphest.edit' call
+ *
+ * <p>The first transaction for a task opens a window of {@code coalesceWindow}. All transactions
+ * for that task that arrive within the window get sent together, in the order they arrived. A
+ * window of 0 (the default) disables coalescing.
+ *
+ * <p>If asynchronous dispatch is enabled, the merged transactions get sent through the {@link
+ * DispatchQueue}. As transactions get sent in the background, failures cannot be reported back to
+ * the caller and are only logged. Transactions for a project that does not exist get dropped, so
+ * they do not take the other transactions of the same window down with them.
+ */
+public class TransactionCoalescer {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static final String GERRIT_CONFIG_COALESCE_WINDOW = "coalesceWindow";
+
+  public interface Factory {
+    TransactionCoalescer create(Conduit conduit, DispatchQueue dispatchQueue);
+  }
+
+  private final Conduit conduit;
+  private final DispatchQueue dispatchQueue;
+  private final long windowMillis;
+  private final ScheduledThreadPoolExecutor executor;
+  private final Map<Integer, List<ManiphestTransaction>> pending = new LinkedHashMap<>();
+
+  @Inject
+  TransactionCoalescer(
+      @PluginName String pluginName,
+      @GerritServerConfig Config cfg,
+      @Assisted Conduit conduit,
+      @Assisted DispatchQueue dispatchQueue) {
+    this.conduit = conduit;
+    this.dispatchQueue = dispatchQueue;
+    this.windowMillis =
+        ConfigUtil.getTimeUnit(
+            cfg, pluginName, null, GERRIT_CONFIG_COALESCE_WINDOW, 0, MILLISECONDS);
+    if (isEnabled()) {
+      executor =
+          new ScheduledThreadPoolExecutor(
+              1,
+              new ThreadFactoryBuilder()
+                  .setNameFormat(pluginName + "-coalescer-%d")
+                  .setDaemon(true)
+                  .build());
+      // Open windows get flushed by stop() instead.
+      executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    } else {
+      executor = null;
+    }
+  }
+
+  public boolean isEnabled() {
+    return windowMillis > 0;
+  }
+
+  /**
+   * Queues a transaction for a task
+   *
+   * @param taskId The id of the task to edit
+   * @param transaction The transaction to apply once the task's window closes
+   */
+  public void add(int taskId, ManiphestTransaction transaction) {
+    boolean opensWindow;
+    synchronized (pending) {
+      List<ManiphestTransaction> transactions = pending.get(taskId);
+      opensWindow = (transactions == null);
+      if (opensWindow) {
+        transactions = new ArrayList<>();
+        pending.put(taskId, transactions);
+      }
+      transactions.add(transaction);
+    }
+    if (opensWindow) {
+      try {
+        executor.schedule(() -> flush(taskId), windowMillis, MILLISECONDS);
+      } catch (RejectedExecutionException e) {
+        // The coalescer is stopped, so the window would never close.
+        List<ManiphestTransaction> transactions;
+        synchronized (pending) {
+          transactions = pending.remove(taskId);
+        }
+        if (transactions != null) {
+          send(taskId, transactions);
+        }
+      }
+    }
+  }
+
+  /** Sends the pending transactions of a task right away */
+  void flush(int taskId) {
+    List<ManiphestTransaction> transactions;
+    synchronized (pending) {
+      transactions = pending.remove(taskId);
+    }
+    if (transactions != null) {
+      if (dispatchQueue.isEnabled()) {
+        try {
+          dispatchQueue.execute(taskId, () -> send(taskId, transactions));
+        } catch (RejectedExecutionException e) {
+          logger.atSevere().withCause(e).log(
+              "Could not queue transactions %s for task %s", transactions, taskId);
+        }
+      } else {
+        send(taskId, transactions);
+      }
+    }
+  }
+
+  /** Sends the pending transactions of all tasks right away */
+  void flushAll() {
+    List<Integer> taskIds;
+    synchronized (pending) {
+      taskIds = new ArrayList<>(pending.keySet());
+    }
+    for (int taskId : taskIds) {
+      flush(taskId);
+    }
+  }
+
+  /** Stops the coalescer after sending all pending transactions */
+  public void stop() {
+    if (executor != null) {
+      executor.shutdown();
+      try {
+        // Wait for a flush that is currently sending.
+        executor.awaitTermination(1, MINUTES);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      flushAll();
+    }
+  }
+
+  private void send(int taskId, List<ManiphestTransaction> transactions) {
+    List<ManiphestTransaction> remaining = new ArrayList<>(transactions);
+    while (!remaining.isEmpty()) {
+      try {
+        conduit.maniphestEdit(taskId, remaining);
+        logger.atFine().log(
+            "Applied %d coalesced transaction(s) to task %s", remaining.size(), taskId);
+        return;
+      } catch (UnknownProjectException e) {
+        // Projects get resolved before anything is sent, so only the transactions for the unknown
+        // project are dropped, and the others from the same window are sent without them.
+        logger.atSevere().withCause(e).log(
+            "Dropping transactions for unknown project '%s' from the edit of task %s",
+            e.getProject(), taskId);
+        List<ManiphestTransaction> others = new ArrayList<>(remaining);
+        if (!others.removeIf(
+            t -> t.isProjectTransaction() && e.getProject().equals(t.getValue()))) {
+          return;
+        }
+        remaining = others;
+      } catch (ConduitException | RuntimeException e) {
+        logger.atSevere().withCause(e).log(
+            "Could not apply transactions %s to task %s", remaining, taskId);
+        return;
+      }
+    }
+  }
+}
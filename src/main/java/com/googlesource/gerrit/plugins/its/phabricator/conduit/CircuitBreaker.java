@@ -0,0 +1,324 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.its.phabricator.conduit;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import com.google.common.base.Ticker;
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.metrics.Counter1;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Field;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.server.config.ConfigUtil;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import org.eclipse.jgit.lib.Config;
+
+/**
+ * Circuit breaker for the calls to a Phabricator instance
+ *
+ * <p>The breaker tracks the outcome of the most recent calls. If too many of them failed or were
+ * too slow, it opens and lets calls fail right away, instead of having each of them run into
+ * timeouts. After a while, a single caller probes Phabricator with 'conduit.ping'. If the probe
+ * succeeds, the breaker closes again. Otherwise, it stays open for another while.
+ *
+ * <p>The breaker is only enabled if {@code circuitBreaker} is set.
+ */
+class CircuitBreaker {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static final String GERRIT_CONFIG_ENABLED = "circuitBreaker";
+  private static final String GERRIT_CONFIG_WINDOW = "circuitBreakerWindow";
+  private static final String GERRIT_CONFIG_MINIMUM_CALLS = "circuitBreakerMinimumCalls";
+  private static final String GERRIT_CONFIG_FAILURE_RATE = "circuitBreakerFailureRate";
+  private static final String GERRIT_CONFIG_SLOW_CALL_DURATION = "circuitBreakerSlowCallDuration";
+  private static final String GERRIT_CONFIG_SLOW_CALL_RATE = "circuitBreakerSlowCallRate";
+  private static final String GERRIT_CONFIG_OPEN_DURATION = "circuitBreakerOpenDuration";
+
+  enum State {
+    /** Calls pass */
+    CLOSED,
+
+    /** Calls fail right away */
+    OPEN,
+
+    /** A probe is checking whether Phabricator is back */
+    HALF_OPEN
+  }
+
+  /** A call that checks whether Phabricator is available */
+  @FunctionalInterface
+  interface Probe {
+    void run() throws ConduitException;
+  }
+
+  /** An asynchronous call that checks whether Phabricator is available */
+  @FunctionalInterface
+  interface AsyncProbe {
+    CompletableFuture<?> run();
+  }
+
+  @Singleton
+  static class Metrics {
+    private final Set<CircuitBreaker> breakers = ConcurrentHashMap.newKeySet();
+    private final Counter1<State> transitions;
+
+    @Inject
+    Metrics(MetricMaker metricMaker) {
+      metricMaker.newCallbackMetric(
+          "circuit_breaker/open",
+          Integer.class,
+          new Description("Number of circuit breakers that currently block Conduit calls")
+              .setGauge()
+              .setUnit("breakers"),
+          () -> (int) breakers.stream().filter(b -> b.getState() != State.CLOSED).count());
+      transitions =
+          metricMaker.newCounter(
+              "circuit_breaker/transition_count",
+              new Description("Circuit breaker state changes").setRate().setUnit("transitions"),
+              Field.ofEnum(State.class, "state", Field.ignoreMetadata())
+                  .description("The state the circuit breaker changed to")
+                  .build());
+    }
+  }
+
+  private final Metrics metrics;
+  private final Ticker ticker;
+  private final boolean enabled;
+  private final int minimumCalls;
+  private final int failureRatePercent;
+  private final long slowCallNanos;
+  private final int slowCallRatePercent;
+  private final long openNanos;
+
+  // Ring buffer with the outcomes of the most recent calls.
+  private final boolean[] failed;
+  private final boolean[] slow;
+  private int next;
+  private int calls;
+  private int failedCalls;
+  private int slowCalls;
+
+  private State state = State.CLOSED;
+  private long openUntil;
+
+  CircuitBreaker(String pluginName, Config cfg, Metrics metrics, Ticker ticker) {
+    this.metrics = metrics;
+    this.ticker = ticker;
+    this.enabled = cfg.getBoolean(pluginName, null, GERRIT_CONFIG_ENABLED, false);
+    int window = Math.max(1, cfg.getInt(pluginName, null, GERRIT_CONFIG_WINDOW, 20));
+    this.minimumCalls =
+        Math.min(
+            window, Math.max(1, cfg.getInt(pluginName, null, GERRIT_CONFIG_MINIMUM_CALLS, 10)));
+    this.failureRatePercent = cfg.getInt(pluginName, null, GERRIT_CONFIG_FAILURE_RATE, 50);
+    this.slowCallNanos =
+        MILLISECONDS.toNanos(
+            ConfigUtil.getTimeUnit(
+                cfg, pluginName, null, GERRIT_CONFIG_SLOW_CALL_DURATION, 10000, MILLISECONDS));
+    this.slowCallRatePercent = cfg.getInt(pluginName, null, GERRIT_CONFIG_SLOW_CALL_RATE, 80);
+    this.openNanos =
+        MILLISECONDS.toNanos(
+            ConfigUtil.getTimeUnit(
+                cfg, pluginName, null, GERRIT_CONFIG_OPEN_DURATION, 30000, MILLISECONDS));
+    this.failed = new boolean[window];
+    this.slow = new boolean[window];
+    if (enabled) {
+      metrics.breakers.add(this);
+    }
+  }
+
+  synchronized State getState() {
+    return state;
+  }
+
+  /**
+   * Checks whether a call may pass
+   *
+   * <p>If the breaker has been open for long enough, the probe is run on the caller's thread to
+   * decide whether the breaker can close again.
+   *
+   * @param probe The probe to run, if Phabricator's availability needs to be checked
+   * @throws CircuitBreakerOpenException if the call must not pass
+   */
+  void beforeCall(Probe probe) throws CircuitBreakerOpenException {
+    if (!enabled || !startProbe()) {
+      return;
+    }
+
+    // The probe runs without holding the lock, so other callers can fail fast meanwhile.
+    Throwable error = null;
+    try {
+      probe.run();
+    } catch (ConduitException | RuntimeException e) {
+      error = e;
+    }
+    finishProbe(error);
+  }
+
+  /**
+   * Checks whether a call may pass, without blocking
+   *
+   * <p>Like {@link #beforeCall}, but the probe gets started asynchronously, and the returned future
+   * completes once it answered.
+   *
+   * @param probe The probe to start, if Phabricator's availability needs to be checked
+   * @return A future that completes once the call may pass, or completes exceptionally with a
+   *     {@link CircuitBreakerOpenException} if it must not pass
+   */
+  CompletableFuture<Void> beforeCallAsync(AsyncProbe probe) {
+    if (!enabled) {
+      return CompletableFuture.completedFuture(null);
+    }
+    try {
+      if (!startProbe()) {
+        return CompletableFuture.completedFuture(null);
+      }
+    } catch (CircuitBreakerOpenException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+
+    CompletableFuture<?> probing;
+    try {
+      probing = probe.run();
+    } catch (RuntimeException e) {
+      probing = CompletableFuture.failedFuture(e);
+    }
+    return probing.handle(
+        (value, error) -> {
+          if (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+          }
+          try {
+            finishProbe(error);
+          } catch (CircuitBreakerOpenException e) {
+            throw new CompletionException(e);
+          }
+          return null;
+        });
+  }
+
+  /**
+   * Decides whether a call may pass right away, or needs to probe first
+   *
+   * @return true, if the caller has to probe Phabricator before its call may pass
+   * @throws CircuitBreakerOpenException if the call must not pass
+   */
+  private synchronized boolean startProbe() throws CircuitBreakerOpenException {
+    switch (state) {
+      case CLOSED:
+        return false;
+      case OPEN:
+        if (ticker.read() - openUntil < 0) {
+          throw new CircuitBreakerOpenException();
+        }
+        transitionTo(State.HALF_OPEN);
+        return true;
+      case HALF_OPEN:
+      default:
+        // Another caller is already probing.
+        throw new CircuitBreakerOpenException();
+    }
+  }
+
+  /**
+   * Closes or opens the breaker again, depending on the probe's outcome
+   *
+   * @param error The error the probe failed with, or null if it succeeded
+   * @throws CircuitBreakerOpenException if the probe showed that Phabricator is not available
+   */
+  private void finishProbe(Throwable error) throws CircuitBreakerOpenException {
+    // A Conduit error means that Phabricator answered, so it is available.
+    boolean available = error == null || error instanceof ConduitErrorException;
+    if (!available) {
+      logger.atFine().withCause(error).log("Phabricator probe failed");
+    }
+
+    synchronized (this) {
+      if (available) {
+        resetWindow();
+        transitionTo(State.CLOSED);
+      } else {
+        open();
+        throw new CircuitBreakerOpenException();
+      }
+    }
+  }
+
+  /**
+   * Records the outcome of a call
+   *
+   * @param failure Whether the call failed because Phabricator was not available
+   * @param durationNanos The time the call took
+   */
+  void record(boolean failure, long durationNanos) {
+    if (!enabled) {
+      return;
+    }
+    synchronized (this) {
+      if (state != State.CLOSED) {
+        return;
+      }
+      if (calls == failed.length) {
+        failedCalls -= failed[next] ? 1 : 0;
+        slowCalls -= slow[next] ? 1 : 0;
+      } else {
+        calls++;
+      }
+      failed[next] = failure;
+      slow[next] = durationNanos >= slowCallNanos;
+      failedCalls += failed[next] ? 1 : 0;
+      slowCalls += slow[next] ? 1 : 0;
+      next = (next + 1) % failed.length;
+
+      if (calls >= minimumCalls
+          && (failedCalls * 100 >= failureRatePercent * calls
+              || slowCalls * 100 >= slowCallRatePercent * calls)) {
+        logger.atWarning().log(
+            "Opening circuit breaker for Phabricator after %d failed and %d slow of %d calls",
+            failedCalls, slowCalls, calls);
+        open();
+      }
+    }
+  }
+
+  void stop() {
+    metrics.breakers.remove(this);
+  }
+
+  private void open() {
+    openUntil = ticker.read() + openNanos;
+    transitionTo(State.OPEN);
+  }
+
+  private void resetWindow() {
+    next = 0;
+    calls = 0;
+    failedCalls = 0;
+    slowCalls = 0;
+  }
+
+  private void transitionTo(State newState) {
+    if (state != newState) {
+      logger.atInfo().log("Circuit breaker for Phabricator changes from %s to %s", state, newState);
+      state = newState;
+      metrics.transitions.increment(newState);
+    }
+  }
+}
@@ -0,0 +1,172 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.its.phabricator.conduit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.hash.Hashing;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.metrics.Counter0;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.server.cache.CacheModule;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.inject.Inject;
+import com.google.inject.Module;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import org.eclipse.jgit.lib.Config;
+
+/**
+ * Suppresses comments that have recently been posted to the same task
+ *
+ * <p>Retries, rules that fire again, and events that get replayed may post the same comment to a
+ * task several times. Comments are remembered by a hash of the Phabricator server, the task id, and
+ * the comment's text. Size and age of the remembered comments can be configured through the {@code
+ * cache.phabricator_recent_comments} section of {@code gerrit.config}.
+ *
+ * <p>As a comment may also get posted twice on purpose, suppression is only enabled if {@code
+ * commentDedup} is set. Otherwise, all comments get sent.
+ *
+ * <p>Only comments get suppressed. Project transactions are idempotent in Phabricator anyway, and
+ * suppressing them could drop an {@code add-project} that follows a {@code remove-project} of the
+ * same project.
+ */
+@Singleton
+public class CommentDeduplicator {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  static final String CACHE_NAME = "phabricator_recent_comments";
+
+  private static final String GERRIT_CONFIG_COMMENT_DEDUP = "commentDedup";
+
+  public static Module module() {
+    return new CacheModule() {
+      @Override
+      protected void configure() {
+        cache(CACHE_NAME, String.class, Boolean.class)
+            .maximumWeight(4096)
+            .expireAfterWrite(Duration.ofMinutes(10));
+      }
+    };
+  }
+
+  private final boolean enabled;
+  private final Cache<String, Boolean> recentComments;
+  private final Counter0 suppressed;
+  private final String server;
+
+  @Inject
+  CommentDeduplicator(
+      @PluginName String pluginName,
+      @GerritServerConfig Config cfg,
+      @Named(CACHE_NAME) Cache<String, Boolean> recentComments,
+      MetricMaker metricMaker) {
+    this(
+        cfg.getBoolean(pluginName, null, GERRIT_CONFIG_COMMENT_DEDUP, false),
+        recentComments,
+        metricMaker.newCounter(
+            "conduit/suppressed_duplicate_count",
+            new Description("Comments not posted because they were posted to the task recently")
+                .setRate()
+                .setUnit("comments")),
+        null);
+  }
+
+  private CommentDeduplicator(
+      boolean enabled, Cache<String, Boolean> recentComments, Counter0 suppressed, String server) {
+    this.enabled = enabled;
+    this.recentComments = recentComments;
+    this.suppressed = suppressed;
+    this.server = Strings.nullToEmpty(server);
+  }
+
+  /**
+   * Gives a deduplicator for comments on tasks of a Phabricator server
+   *
+   * @param server The name of the server, or null for the default server
+   * @return The deduplicator, which shares the remembered comments but does not suppress comments
+   *     that were posted to other servers
+   */
+  public CommentDeduplicator forServer(@Nullable String server) {
+    return new CommentDeduplicator(enabled, recentComments, suppressed, server);
+  }
+
+  /**
+   * Claims the comments among transactions for a task
+   *
+   * <p>Comments that have been claimed recently get removed. The other comments get claimed, so
+   * concurrent edits with the same comment do not both post it.
+   *
+   * @param taskId The id of the task to edit
+   * @param transactions The transactions to apply
+   * @return The transactions that should get sent
+   */
+  List<ManiphestTransaction> claim(int taskId, List<ManiphestTransaction> transactions) {
+    if (!enabled) {
+      return transactions;
+    }
+    List<ManiphestTransaction> claimed = new ArrayList<>(transactions.size());
+    for (ManiphestTransaction transaction : transactions) {
+      if (isComment(transaction)
+          && recentComments.asMap().putIfAbsent(key(taskId, transaction), true) != null) {
+        logger.atFine().log("Suppressing duplicate comment for task %d", taskId);
+        suppressed.increment();
+      } else {
+        claimed.add(transaction);
+      }
+    }
+    return claimed;
+  }
+
+  /**
+   * Releases claimed comments, so they can get posted again
+   *
+   * @param taskId The id of the task the comments were for
+   * @param transactions The transactions as returned by {@link #claim}
+   */
+  void release(int taskId, List<ManiphestTransaction> transactions) {
+    if (!enabled) {
+      return;
+    }
+    for (ManiphestTransaction transaction : transactions) {
+      if (isComment(transaction)) {
+        recentComments.invalidate(key(taskId, transaction));
+      }
+    }
+  }
+
+  private static boolean isComment(ManiphestTransaction transaction) {
+    return Conduit.ACTION_COMMENT.equals(transaction.getType()) && transaction.getValue() != null;
+  }
+
+  private String key(int taskId, ManiphestTransaction transaction) {
+    return Hashing.sha256()
+        .newHasher()
+        .putString(server, UTF_8)
+        .putByte((byte) 0)
+        .putInt(taskId)
+        .putString(transaction.getValue(), UTF_8)
+        .hash()
+        .toString();
+  }
+}
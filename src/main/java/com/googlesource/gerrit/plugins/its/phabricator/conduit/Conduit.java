@@ -17,6 +17,10 @@ package com.googlesource.gerrit.plugins.its.phabricator.conduit;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Streams;
+import com.google.gerrit.common.Nullable;
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
@@ -26,19 +30,30 @@ import com.googlesource.gerrit.plugins.its.phabricator.conduit.results.ConduitPi
 import com.googlesource.gerrit.plugins.its.phabricator.conduit.results.ManiphestEdit;
 import com.googlesource.gerrit.plugins.its.phabricator.conduit.results.ManiphestSearch;
 import com.googlesource.gerrit.plugins.its.phabricator.conduit.results.ProjectSearch;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Bindings for Phabricator's Conduit API
  *
- * <p>This class is not thread-safe.
+ * <p>This class is thread-safe.
  */
 public class Conduit {
   public interface Factory {
-    Conduit create(@Assisted("baseUrl") String baseUrl, @Assisted("token") String token);
+    Conduit create(
+        @Assisted("server") @Nullable String server,
+        @Assisted("baseUrl") String baseUrl,
+        @Assisted("token") String token);
   }
 
   public static final String ACTION_COMMENT = "comment";
@@ -49,7 +64,17 @@ public class Conduit {
 
   public static final int CONDUIT_VERSION = 7;
 
+  private static final String ERROR_INVALID_AUTH = "ERR-INVALID-AUTH";
+
+  private static final String ERROR_INVALID_SESSION = "ERR-INVALID-SESSION";
+
+  /** Maximum number of results the API's search methods return per call */
+  public static final int SEARCH_PAGE_SIZE = 100;
+
   private final SearchUtils searchUtils;
+  private final ProjectSearchCache projectSearchCache;
+  private final TaskExistenceCache taskExistenceCache;
+  private final CommentDeduplicator commentDeduplicator;
   private final ConduitConnection conduitConnection;
   private final Gson gson;
   private final String token;
@@ -58,14 +83,36 @@ public class Conduit {
   public Conduit(
       ConduitConnection.Factory conduitConnectionFactory,
       SearchUtils searchUtils,
+      ProjectSearchCache projectSearchCache,
+      TaskExistenceCache taskExistenceCache,
+      CommentDeduplicator commentDeduplicator,
+      @Assisted("server") @Nullable String server,
       @Assisted("baseUrl") String baseUrl,
       @Assisted("token") String token) {
     this.searchUtils = searchUtils;
+    this.projectSearchCache = projectSearchCache.forServer(server);
+    this.taskExistenceCache = taskExistenceCache.forServer(server);
+    this.commentDeduplicator = commentDeduplicator.forServer(server);
     this.conduitConnection = conduitConnectionFactory.create(baseUrl);
     this.token = token;
     this.gson = new Gson();
   }
 
+  /** Gives the view of the project cache for this Conduit's server */
+  public ProjectSearchCache getProjectSearchCache() {
+    return projectSearchCache;
+  }
+
+  /** Gives the view of the task existence cache for this Conduit's server */
+  public TaskExistenceCache getTaskExistenceCache() {
+    return taskExistenceCache;
+  }
+
+  /** Closes the connections to Conduit */
+  public void close() {
+    conduitConnection.close();
+  }
+
   /** Runs the API's 'conduit.ping' method */
   public ConduitPing conduitPing() throws ConduitException {
     Map<String, Object> params = new HashMap<>();
@@ -76,63 +123,467 @@ public class Conduit {
     return result;
   }
 
+  /**
+   * Checks whether the API token is accepted
+   *
+   * <p>Runs the API's 'user.whoami' method, which unlike 'conduit.ping' requires authentication.
+   *
+   * @return true if the token is valid, false if Phabricator rejected it
+   * @throws ConduitException if Phabricator could not be asked
+   */
+  public boolean isAuthenticated() throws ConduitException {
+    try {
+      conduitConnection.call(
+          "user.whoami",
+          new HashMap<>(),
+          token,
+          reader -> {
+            reader.skipValue();
+            return null;
+          });
+      return true;
+    } catch (ConduitErrorException e) {
+      if (ERROR_INVALID_AUTH.equals(e.getErrorCode())
+          || ERROR_INVALID_SESSION.equals(e.getErrorCode())) {
+        return false;
+      }
+      throw e;
+    }
+  }
+
   /** Runs the API's 'maniphest.search' method */
   public ManiphestSearch maniphestSearch(int taskId) throws ConduitException {
     HashMap<String, Object> params = new HashMap<>();
     params.put("constraints", ImmutableMap.of("ids", ImmutableList.of(taskId)));
 
-    JsonElement callResult = conduitConnection.call("maniphest.search", params, token);
-    return searchUtils.stream(callResult, ManiphestSearch.class).findFirst().orElse(null);
+    return conduitConnection.call(
+        "maniphest.search", params, token, firstSearchResult(ManiphestSearch.class));
+  }
+
+  /**
+   * Runs the API's 'maniphest.search' method without blocking
+   *
+   * @param taskId The id of the task to look up
+   * @return The found task, or null if the task does not exist
+   */
+  public CompletableFuture<ManiphestSearch> maniphestSearchAsync(int taskId) {
+    HashMap<String, Object> params = new HashMap<>();
+    params.put("constraints", ImmutableMap.of("ids", ImmutableList.of(taskId)));
+
+    return conduitConnection.callAsync(
+        "maniphest.search", params, token, firstSearchResult(ManiphestSearch.class));
+  }
+
+  /**
+   * Runs the API's 'maniphest.search' method for several tasks at once
+   *
+   * <p>Tasks are looked up in pages of {@value #SEARCH_PAGE_SIZE} ids per call.
+   *
+   * @param taskIds The ids of the tasks to look up
+   * @return The found tasks by their id. Tasks that do not exist are missing from the map.
+   * @throws ConduitException
+   */
+  public Map<Integer, ManiphestSearch> maniphestSearch(Collection<Integer> taskIds)
+      throws ConduitException {
+    Map<Integer, ManiphestSearch> result = new HashMap<>();
+    for (List<Integer> page : Iterables.partition(ImmutableSet.copyOf(taskIds), SEARCH_PAGE_SIZE)) {
+      HashMap<String, Object> params = new HashMap<>();
+      params.put("constraints", ImmutableMap.of("ids", page));
+
+      result.putAll(
+          conduitConnection.call(
+              "maniphest.search",
+              params,
+              token,
+              searchResult(
+                  ManiphestSearch.class,
+                  stream ->
+                      stream.collect(
+                          Collectors.toMap(
+                              ManiphestSearch::getId, Function.identity(), (a, b) -> a)))));
+    }
+    return result;
+  }
+
+  /**
+   * Streams all results of one of the API's search methods
+   *
+   * <p>Pages are fetched following the search's cursor, only when the stream reaches their results.
+   * So only one page (or two, when prefetching) is held in memory at a time.
+   *
+   * <p>The stream has to get closed. Failing calls surface as {@link UncheckedConduitException}.
+   *
+   * @param method The search method to run, e.g.: 'maniphest.search'
+   * @param constraints The search's constraints
+   * @param classOfT The class to decode the results into
+   * @param pageSize The number of results to fetch per call, at most {@value #SEARCH_PAGE_SIZE}
+   * @param prefetchExecutor Fetches the next page in the background while the current page gets
+   *     consumed, or null to not prefetch
+   * @return The stream of results
+   */
+  public <T> Stream<T> search(
+      String method,
+      Map<String, Object> constraints,
+      Class<T> classOfT,
+      int pageSize,
+      Executor prefetchExecutor) {
+    int limit = Math.max(1, Math.min(pageSize, SEARCH_PAGE_SIZE));
+    PagedSearch<T> pagedSearch =
+        new PagedSearch<>(
+            after -> {
+              HashMap<String, Object> params = new HashMap<>();
+              params.put("constraints", constraints);
+              params.put("limit", limit);
+              if (after != null) {
+                params.put("after", after);
+              }
+              return conduitConnection.call(
+                  method, params, token, reader -> searchUtils.readPage(reader, classOfT));
+            },
+            prefetchExecutor);
+    return Streams.stream(pagedSearch).onClose(pagedSearch::close);
+  }
+
+  /**
+   * Checks whether a task exists
+   *
+   * <p>The answer is cached. If the task is not cached yet, the API's 'maniphest.search' method is
+   * run.
+   */
+  public boolean taskExists(int taskId) throws ConduitException {
+    Boolean exists = taskExistenceCache.get(taskId);
+    if (exists == null) {
+      exists = maniphestSearch(taskId) != null;
+      taskExistenceCache.put(taskId, exists);
+    }
+    return exists;
+  }
+
+  /**
+   * Checks whether tasks exist
+   *
+   * <p>Answers are cached. Tasks that are not cached yet are looked up together through the API's
+   * 'maniphest.search' method.
+   *
+   * @param taskIds The ids of the tasks to check
+   * @return Whether the tasks exist, by their id
+   * @throws ConduitException
+   */
+  public Map<Integer, Boolean> taskExists(Collection<Integer> taskIds) throws ConduitException {
+    Map<Integer, Boolean> result = new HashMap<>();
+    List<Integer> uncached = new ArrayList<>();
+    for (int taskId : taskIds) {
+      Boolean exists = taskExistenceCache.get(taskId);
+      if (exists == null) {
+        uncached.add(taskId);
+      } else {
+        result.put(taskId, exists);
+      }
+    }
+    if (!uncached.isEmpty()) {
+      Map<Integer, ManiphestSearch> found = maniphestSearch(uncached);
+      for (int taskId : uncached) {
+        boolean exists = found.containsKey(taskId);
+        taskExistenceCache.put(taskId, exists);
+        result.put(taskId, exists);
+      }
+    }
+    return result;
   }
 
   /** Runs the API's 'maniphest.edit' method */
   public ManiphestEdit maniphestEdit(
       int taskId, String comment, String projectNameToAdd, String projectNameToRemove)
       throws ConduitException {
-    ManiphestEdit result = null;
-    List<Object> transactions = new ArrayList<>();
+    List<ManiphestTransaction> transactions = new ArrayList<>();
 
     if (!Strings.isNullOrEmpty(comment)) {
-      HashMap<String, Object> transaction = new HashMap<>();
-      transaction.put("type", ACTION_COMMENT);
-      transaction.put("value", comment);
-
-      transactions.add(transaction);
+      transactions.add(ManiphestTransaction.comment(comment));
     }
 
     if (!Strings.isNullOrEmpty(projectNameToAdd)) {
-      HashMap<String, Object> transaction = new HashMap<>();
-      transaction.put("type", ACTION_PROJECT_ADD);
-      transaction.put("value", ImmutableList.of(projectSearch(projectNameToAdd).getPhid()));
-
-      transactions.add(transaction);
+      transactions.add(ManiphestTransaction.addProject(projectNameToAdd));
     }
 
     if (!Strings.isNullOrEmpty(projectNameToRemove)) {
-      HashMap<String, Object> transaction = new HashMap<>();
-      transaction.put("type", ACTION_PROJECT_REMOVE);
-      transaction.put("value", ImmutableList.of(projectSearch(projectNameToRemove).getPhid()));
+      transactions.add(ManiphestTransaction.removeProject(projectNameToRemove));
+    }
+
+    return maniphestEdit(taskId, transactions);
+  }
+
+  /**
+   * Runs the API's 'maniphest.edit' method for a list of transactions
+   *
+   * <p>The transactions are applied in the given order. Comments that have recently been posted to
+   * the task are left out (see {@link CommentDeduplicator}).
+   *
+   * @param taskId The id of the task to edit
+   * @param transactions The transactions to apply
+   * @return The edit's result, or null if there were no transactions left to apply
+   * @throws ConduitException
+   */
+  public ManiphestEdit maniphestEdit(int taskId, List<ManiphestTransaction> transactions)
+      throws ConduitException {
+    List<ManiphestTransaction> claimed = commentDeduplicator.claim(taskId, transactions);
+    try {
+      return sendManiphestEdit(taskId, claimed);
+    } catch (ConduitException | RuntimeException e) {
+      // The comments did not make it, so they must not get suppressed when they are retried.
+      commentDeduplicator.release(taskId, claimed);
+      throw e;
+    }
+  }
 
-      transactions.add(transaction);
+  /**
+   * Runs the API's 'maniphest.edit' method for a list of transactions without blocking
+   *
+   * <p>Projects that are not cached get looked up concurrently, and the edit is sent once all of
+   * them are resolved, all without blocking the calling thread. Otherwise, this method behaves like
+   * {@link #maniphestEdit(int, List)}.
+   *
+   * @param taskId The id of the task to edit
+   * @param transactions The transactions to apply
+   * @return The edit's result, or null if there were no transactions left to apply
+   */
+  public CompletableFuture<ManiphestEdit> maniphestEditAsync(
+      int taskId, List<ManiphestTransaction> transactions) {
+    List<ManiphestTransaction> claimed = commentDeduplicator.claim(taskId, transactions);
+    if (claimed.isEmpty()) {
+      return CompletableFuture.completedFuture(null);
     }
 
-    if (!transactions.isEmpty()) {
-      HashMap<String, Object> params = new HashMap<>();
-      params.put("objectIdentifier", taskId);
-      params.put("transactions", transactions);
-      JsonElement callResult = conduitConnection.call("maniphest.edit", params, token);
-      result = gson.fromJson(callResult, ManiphestEdit.class);
+    Map<String, CompletableFuture<ProjectSearch>> projects = new HashMap<>();
+    for (ManiphestTransaction transaction : claimed) {
+      if (transaction.isProjectTransaction()) {
+        projects.computeIfAbsent(transaction.getValue(), this::projectSearchAsync);
+      }
     }
 
+    return CompletableFuture.allOf(projects.values().toArray(new CompletableFuture<?>[0]))
+        .thenCompose(
+            v -> {
+              Map<String, String> projectPhids = new HashMap<>();
+              for (Map.Entry<String, CompletableFuture<ProjectSearch>> entry :
+                  projects.entrySet()) {
+                ProjectSearch project = entry.getValue().join();
+                if (project == null) {
+                  return CompletableFuture.failedFuture(
+                      new UnknownProjectException(entry.getKey()));
+                }
+                projectPhids.put(entry.getKey(), project.getPhid());
+              }
+              return conduitConnection.callAsync(
+                  "maniphest.edit",
+                  createEditParams(taskId, claimed, projectPhids::get),
+                  token,
+                  gson.getAdapter(ManiphestEdit.class)::read);
+            })
+        .whenComplete(
+            (result, error) -> {
+              if (error == null) {
+                // Phabricator accepted the edit, so the task exists.
+                taskExistenceCache.put(taskId, true);
+                return;
+              }
+              if (unwrapCompletion(error) instanceof ConduitErrorException) {
+                invalidateProjects(claimed);
+              }
+              // The comments did not make it, so they must not get suppressed when they are
+              // retried.
+              commentDeduplicator.release(taskId, claimed);
+            });
+  }
+
+  private ManiphestEdit sendManiphestEdit(int taskId, List<ManiphestTransaction> transactions)
+      throws ConduitException {
+    if (transactions.isEmpty()) {
+      return null;
+    }
+
+    Map<String, String> projectPhids = new HashMap<>();
+    for (ManiphestTransaction transaction : transactions) {
+      if (transaction.isProjectTransaction()) {
+        String name = transaction.getValue();
+        ProjectSearch project = projectSearch(name);
+        if (project == null) {
+          throw new UnknownProjectException(name);
+        }
+        projectPhids.put(name, project.getPhid());
+      }
+    }
+
+    ManiphestEdit result;
+    try {
+      result =
+          conduitConnection.call(
+              "maniphest.edit",
+              createEditParams(taskId, transactions, projectPhids::get),
+              token,
+              gson.getAdapter(ManiphestEdit.class)::read);
+    } catch (ConduitErrorException e) {
+      invalidateProjects(transactions);
+      throw e;
+    }
+    // Phabricator accepted the edit, so the task exists.
+    taskExistenceCache.put(taskId, true);
     return result;
   }
 
-  /** Runs the API's 'project.search' method to match exactly one project name */
+  /**
+   * Builds the parameters of a 'maniphest.edit' call
+   *
+   * @param taskId The id of the task to edit
+   * @param transactions The transactions to apply
+   * @param projectPhids Gives the PHID of a project by its name
+   */
+  private static Map<String, Object> createEditParams(
+      int taskId, List<ManiphestTransaction> transactions, Function<String, String> projectPhids) {
+    List<Object> transactionParams = new ArrayList<>();
+    for (ManiphestTransaction transaction : transactions) {
+      HashMap<String, Object> transactionParam = new HashMap<>();
+      transactionParam.put("type", transaction.getType());
+      if (transaction.isProjectTransaction()) {
+        transactionParam.put("value", ImmutableList.of(projectPhids.apply(transaction.getValue())));
+      } else {
+        transactionParam.put("value", transaction.getValue());
+      }
+
+      transactionParams.add(transactionParam);
+    }
+
+    HashMap<String, Object> params = new HashMap<>();
+    params.put("objectIdentifier", taskId);
+    params.put("transactions", transactionParams);
+    return params;
+  }
+
+  /**
+   * Forces fresh lookups for the projects of failed transactions
+   *
+   * <p>An edit might have failed due to a stale project PHID.
+   */
+  private void invalidateProjects(List<ManiphestTransaction> transactions) {
+    for (ManiphestTransaction transaction : transactions) {
+      if (transaction.isProjectTransaction()) {
+        invalidateProject(transaction.getValue());
+      }
+    }
+  }
+
+  /**
+   * Looks up a project by its name or slug
+   *
+   * <p>Projects are first looked up in the cache, which matches names and slugs exactly but without
+   * regard to case. Only if the project is not cached, the API's 'project.search' method is run
+   * with a 'slugs' constraint, which Phabricator matches exactly against the normalized slugs of
+   * projects. Found projects are cached, so repeated lookups of the same name do not cause further
+   * API calls.
+   *
+   * @param name The name or slug of the project
+   * @return The project, or null if no project has that name or slug
+   * @throws ConduitException
+   */
   public ProjectSearch projectSearch(String name) throws ConduitException {
+    ProjectSearch result = projectSearchCache.get(name);
+    if (result == null) {
+      HashMap<String, Object> params = new HashMap<>();
+      params.put("constraints", ImmutableMap.of("slugs", ImmutableList.of(name)));
+
+      result =
+          conduitConnection.call(
+              "project.search", params, token, firstSearchResult(ProjectSearch.class));
+      if (result != null) {
+        projectSearchCache.put(name, result);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Looks up a project by its name or slug without blocking
+   *
+   * <p>Cached projects are returned right away. Otherwise, this method behaves like {@link
+   * #projectSearch}.
+   *
+   * @param name The name or slug of the project
+   * @return The project, or null if no project has that name or slug
+   */
+  public CompletableFuture<ProjectSearch> projectSearchAsync(String name) {
+    ProjectSearch cached = projectSearchCache.get(name);
+    if (cached != null) {
+      return CompletableFuture.completedFuture(cached);
+    }
     HashMap<String, Object> params = new HashMap<>();
-    params.put("constraints", ImmutableMap.of("query", name));
+    params.put("constraints", ImmutableMap.of("slugs", ImmutableList.of(name)));
+
+    return conduitConnection
+        .callAsync("project.search", params, token, firstSearchResult(ProjectSearch.class))
+        .thenApply(
+            result -> {
+              if (result != null) {
+                projectSearchCache.put(name, result);
+              }
+              return result;
+            });
+  }
+
+  /**
+   * Loads projects into the cache that serves {@link #projectSearch}
+   *
+   * <p>Projects are fetched through the API's 'project.search' method in pages of {@value
+   * #SEARCH_PAGE_SIZE}, and get cached by their name and by their slug.
+   *
+   * @param slugs The slugs of the projects to load, or an empty collection to load all projects
+   * @return The number of loaded projects
+   * @throws ConduitException
+   */
+  public int loadProjects(Collection<String> slugs) throws ConduitException {
+    Map<String, Object> constraints = new HashMap<>();
+    if (!slugs.isEmpty()) {
+      constraints.put("slugs", ImmutableList.copyOf(slugs));
+    }
+    int count = 0;
+    try (Stream<ProjectSearch> projects =
+        search("project.search", constraints, ProjectSearch.class, SEARCH_PAGE_SIZE, null)) {
+      for (ProjectSearch project : (Iterable<ProjectSearch>) projects::iterator) {
+        projectSearchCache.put(project);
+        count++;
+      }
+    } catch (UncheckedConduitException e) {
+      throw e.getCause();
+    }
+    return count;
+  }
+
+  /** Reads only the first entry of a search result, without decoding the others */
+  private <T> ConduitConnection.ResultReader<T> firstSearchResult(Class<T> classOfT) {
+    return searchResult(classOfT, stream -> stream.findFirst().orElse(null));
+  }
+
+  /** Reads a search result by consuming the stream of its entries */
+  private <T, R> ConduitConnection.ResultReader<R> searchResult(
+      Class<T> classOfT, Function<Stream<T>, R> consumer) {
+    return reader -> {
+      try (Stream<T> stream = searchUtils.stream(reader, classOfT)) {
+        return consumer.apply(stream);
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+    };
+  }
 
-    JsonElement callResult = conduitConnection.call("project.search", params, token);
-    return searchUtils.stream(callResult, ProjectSearch.class).findFirst().orElse(null);
+  private static Throwable unwrapCompletion(Throwable error) {
+    while (error instanceof CompletionException && error.getCause() != null) {
+      error = error.getCause();
+    }
+    return error;
+  }
+
+  /** Drops the cached project for a project name or slug */
+  public void invalidateProject(String name) {
+    if (!Strings.isNullOrEmpty(name)) {
+      projectSearchCache.invalidate(name);
+    }
   }
 }
@@ -14,63 +14,260 @@
 
 package com.googlesource.gerrit.plugins.its.phabricator.conduit;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import com.google.common.base.Ticker;
 import com.google.common.flogger.FluentLogger;
+import com.google.common.io.CountingInputStream;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.server.config.ConfigUtil;
+import com.google.gerrit.server.config.GerritServerConfig;
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
-import com.googlesource.gerrit.plugins.its.phabricator.conduit.results.CallCapsule;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import org.apache.http.HttpEntity;
 import org.apache.http.NameValuePair;
+import org.apache.http.ParseException;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.entity.ContentType;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.util.EntityUtils;
+import org.eclipse.jgit.lib.Config;
 
-/** Abstracts the connection to Conduit API */
+/**
+ * Abstracts the connection to Conduit API
+ *
+ * <p>This class is thread-safe. Calls share a pool of persistent HTTP connections, whose size and
+ * lifetime can be configured in the plugin's section of {@code gerrit.config}.
+ *
+ * <p>Asynchronous calls (see {@link #callAsync}) go through a separate, non-blocking HTTP client.
+ * Its few I/O threads ({@code asyncIoThreads}) serve all asynchronous calls in flight, so waiting
+ * for Phabricator does not hold a thread per call.
+ */
 public class ConduitConnection {
   private static final FluentLogger logger = FluentLogger.forEnclosingClass();
 
+  private static final String GERRIT_CONFIG_POOL_MAX_TOTAL = "connectionPoolMaxTotal";
+  private static final String GERRIT_CONFIG_POOL_MAX_PER_ROUTE = "connectionPoolMaxPerRoute";
+  private static final String GERRIT_CONFIG_KEEP_ALIVE = "connectionKeepAlive";
+  private static final String GERRIT_CONFIG_IDLE_TIMEOUT = "connectionIdleTimeout";
+  private static final String GERRIT_CONFIG_CONNECT_TIMEOUT = "connectTimeout";
+  private static final String GERRIT_CONFIG_SOCKET_TIMEOUT = "socketTimeout";
+  private static final String GERRIT_CONFIG_CONNECTION_REQUEST_TIMEOUT = "connectionRequestTimeout";
+  private static final String GERRIT_CONFIG_RETRIES = "retries";
+  private static final String GERRIT_CONFIG_RETRY_BACKOFF = "retryBackoff";
+  private static final String GERRIT_CONFIG_RETRY_MAX_BACKOFF = "retryMaxBackoff";
+  private static final String GERRIT_CONFIG_ASYNC_IO_THREADS = "asyncIoThreads";
+
   public interface Factory {
     ConduitConnection create(String baseUrl);
   }
 
+  /** Decodes a call's result from the response stream */
+  @FunctionalInterface
+  interface ResultReader<T> {
+    /**
+     * Reads the result
+     *
+     * <p>The reader is positioned at the result's value, which is not null. Implementations have to
+     * consume the whole value.
+     */
+    T read(JsonReader reader) throws IOException;
+  }
+
   private final String apiUrlBase;
   private final Gson gson;
+  private final int poolMaxTotal;
+  private final int poolMaxPerRoute;
+  private final long keepAliveMillis;
+  private final long idleTimeoutMillis;
+  private final RequestConfig requestConfig;
+  private final RetryPolicy retryPolicy;
+  private final CircuitBreaker circuitBreaker;
+  private final RateLimiter rateLimiter;
+  private final ConduitMetrics metrics;
+  private final int asyncIoThreads;
+  private final String asyncThreadName;
 
   private CloseableHttpClient client;
+  private HttpClient asyncClient;
+  private ExecutorService asyncExecutor;
 
   @Inject
-  ConduitConnection(@Assisted String baseUrl) {
+  ConduitConnection(
+      @PluginName String pluginName,
+      @GerritServerConfig Config cfg,
+      CircuitBreaker.Metrics circuitBreakerMetrics,
+      ConduitMetrics metrics,
+      @Assisted String baseUrl) {
     apiUrlBase = baseUrl.replaceAll("/+$", "") + "/api/";
     gson = new Gson();
+    poolMaxTotal = Math.max(1, cfg.getInt(pluginName, null, GERRIT_CONFIG_POOL_MAX_TOTAL, 20));
+    poolMaxPerRoute =
+        Math.max(1, cfg.getInt(pluginName, null, GERRIT_CONFIG_POOL_MAX_PER_ROUTE, 20));
+    keepAliveMillis =
+        ConfigUtil.getTimeUnit(
+            cfg, pluginName, null, GERRIT_CONFIG_KEEP_ALIVE, 30000, MILLISECONDS);
+    idleTimeoutMillis =
+        ConfigUtil.getTimeUnit(
+            cfg, pluginName, null, GERRIT_CONFIG_IDLE_TIMEOUT, 60000, MILLISECONDS);
+    requestConfig =
+        RequestConfig.custom()
+            .setConnectTimeout(
+                getTimeoutMillis(cfg, pluginName, GERRIT_CONFIG_CONNECT_TIMEOUT, 10000))
+            .setSocketTimeout(
+                getTimeoutMillis(cfg, pluginName, GERRIT_CONFIG_SOCKET_TIMEOUT, 30000))
+            .setConnectionRequestTimeout(
+                getTimeoutMillis(cfg, pluginName, GERRIT_CONFIG_CONNECTION_REQUEST_TIMEOUT, 10000))
+            .build();
+    retryPolicy =
+        new RetryPolicy(
+            Math.max(0, cfg.getInt(pluginName, null, GERRIT_CONFIG_RETRIES, 3)),
+            ConfigUtil.getTimeUnit(
+                cfg, pluginName, null, GERRIT_CONFIG_RETRY_BACKOFF, 500, MILLISECONDS),
+            ConfigUtil.getTimeUnit(
+                cfg, pluginName, null, GERRIT_CONFIG_RETRY_MAX_BACKOFF, 10000, MILLISECONDS));
+    circuitBreaker =
+        new CircuitBreaker(pluginName, cfg, circuitBreakerMetrics, Ticker.systemTicker());
+    rateLimiter = new RateLimiter(pluginName, cfg, Ticker.systemTicker());
+    this.metrics = metrics;
+    asyncIoThreads = Math.max(1, cfg.getInt(pluginName, null, GERRIT_CONFIG_ASYNC_IO_THREADS, 2));
+    asyncThreadName = pluginName + "-conduit-io-%d";
     client = null;
   }
 
+  private static int getTimeoutMillis(
+      Config cfg, String pluginName, String name, long defaultMillis) {
+    long timeout = ConfigUtil.getTimeUnit(cfg, pluginName, null, name, defaultMillis, MILLISECONDS);
+    return (int) Math.min(Math.max(0, timeout), Integer.MAX_VALUE);
+  }
+
   /**
    * Gives a cached HttpClient
    *
-   * <p>If no cached HttpClient exists, a new one is spawned.
+   * <p>If no cached HttpClient exists, a new one is spawned. All callers share the same client and
+   * its connection pool.
    *
    * @return the cached CloseableHttpClient
    */
-  private CloseableHttpClient getClient() {
+  private synchronized CloseableHttpClient getClient() {
     if (client == null) {
       logger.atFinest().log("Creating new client connection");
-      client = HttpClients.createDefault();
+      PoolingHttpClientConnectionManager connectionManager =
+          new PoolingHttpClientConnectionManager();
+      connectionManager.setMaxTotal(poolMaxTotal);
+      connectionManager.setDefaultMaxPerRoute(poolMaxPerRoute);
+      client =
+          HttpClients.custom()
+              .setConnectionManager(connectionManager)
+              .setKeepAliveStrategy(createKeepAliveStrategy())
+              .setDefaultRequestConfig(requestConfig)
+              // Retries are handled by the RetryPolicy, which knows about idempotency.
+              .disableAutomaticRetries()
+              .evictExpiredConnections()
+              .evictIdleConnections(idleTimeoutMillis, MILLISECONDS)
+              .build();
     }
     return client;
   }
 
+  /**
+   * Gives the cached non-blocking HttpClient for asynchronous calls
+   *
+   * <p>If no cached client exists, a new one is spawned, along with the I/O threads that complete
+   * its calls.
+   */
+  private synchronized HttpClient getAsyncClient() {
+    if (asyncClient == null) {
+      logger.atFinest().log("Creating new asynchronous client");
+      asyncExecutor =
+          Executors.newFixedThreadPool(
+              asyncIoThreads,
+              new ThreadFactoryBuilder().setNameFormat(asyncThreadName).setDaemon(true).build());
+      asyncClient =
+          HttpClient.newBuilder()
+              .connectTimeout(Duration.ofMillis(Math.max(1, requestConfig.getConnectTimeout())))
+              .executor(asyncExecutor)
+              .build();
+    }
+    return asyncClient;
+  }
+
+  /** Gives the executor that runs the continuations of asynchronous calls */
+  private synchronized Executor getAsyncExecutor() {
+    getAsyncClient();
+    return asyncExecutor;
+  }
+
+  /** Keeps connections alive as long as the server allows, but at most for the configured time */
+  private ConnectionKeepAliveStrategy createKeepAliveStrategy() {
+    return (response, context) -> {
+      long serverKeepAlive =
+          DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+      if (serverKeepAlive > 0) {
+        return Math.min(serverKeepAlive, keepAliveMillis);
+      }
+      return keepAliveMillis;
+    };
+  }
+
+  /** Closes the pooled connections */
+  public synchronized void close() {
+    circuitBreaker.stop();
+    if (client != null) {
+      try {
+        client.close();
+      } catch (IOException e) {
+        logger.atWarning().withCause(e).log("Could not close Phabricator connections");
+      }
+      client = null;
+    }
+    if (asyncExecutor != null) {
+      // Calls in flight fail, as their continuations cannot run anymore.
+      asyncExecutor.shutdownNow();
+      asyncExecutor = null;
+      asyncClient = null;
+    }
+  }
+
   /**
    * Call the given Conduit method without parameters
    *
@@ -92,10 +289,269 @@ public class ConduitConnection {
    */
   JsonElement call(String method, Map<String, Object> params, String token)
       throws ConduitException {
+    return call(method, params, token, reader -> gson.getAdapter(JsonElement.class).read(reader));
+  }
+
+  /**
+   * Calls a conduit method with some parameters, and decodes the result while it is read
+   *
+   * <p>The response is not buffered. The result reader decodes the call's result straight from the
+   * response stream.
+   *
+   * <p>Failed calls get retried, if the {@link RetryPolicy} allows to. While the {@link
+   * CircuitBreaker} is open, calls fail right away with a {@link CircuitBreakerOpenException}. Each
+   * attempt waits for its turn with the {@link RateLimiter} before it gets sent.
+   *
+   * @param method The name of the method that should get called
+   * @param params A map of parameters to pass to the call
+   * @param resultReader Decodes the call's result
+   * @return The decoded result, if there has been no error
+   * @throws ConduitException
+   */
+  <T> T call(String method, Map<String, Object> params, String token, ResultReader<T> resultReader)
+      throws ConduitException {
     String methodUrl = apiUrlBase + method;
+    HttpEntity requestEntity = createRequestEntity(method, params, token);
 
-    HttpPost httppost = new HttpPost(methodUrl);
+    RateLimiter.Budget budget = RateLimiter.getBudget(method);
+    long callStart = System.nanoTime();
+    metrics.callStarted();
+    try {
+      for (int attempt = 1; ; attempt++) {
+        circuitBreaker.beforeCall(this::ping);
+        awaitRateLimit(method, budget);
+        long start = System.nanoTime();
+        try {
+          T result = execute(method, methodUrl, requestEntity, resultReader);
+          circuitBreaker.record(false, System.nanoTime() - start);
+          return result;
+        } catch (ConduitException e) {
+          metrics.requestFailed(method, e);
+          circuitBreaker.record(isUnavailable(e), System.nanoTime() - start);
+          if (!retryPolicy.shouldRetry(method, attempt, e)) {
+            throw e;
+          }
+          long backoff = retryPolicy.getBackoffMillis(attempt);
+          logger.atWarning().withCause(e).log(
+              "Attempt %d of Phabricator method %s failed. Retrying in %d ms",
+              attempt, method, backoff);
+          try {
+            Thread.sleep(backoff);
+          } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new ConduitException("Interrupted while waiting to retry " + method, ie);
+          }
+        }
+      }
+    } finally {
+      metrics.callFinished(method, System.nanoTime() - callStart);
+    }
+  }
+
+  /**
+   * Calls a conduit method with some parameters without blocking
+   *
+   * <p>Like {@link #call(String, Map, String, ResultReader)}, failed calls get retried, and calls
+   * are subject to the {@link CircuitBreaker} and the {@link RateLimiter}. But the calling thread
+   * does not wait for the response, nor for rate limits and retry backoffs. The response is
+   * buffered and then decoded on one of the I/O threads.
+   *
+   * @param method The name of the method that should get called
+   * @param params A map of parameters to pass to the call
+   * @param resultReader Decodes the call's result
+   * @return The decoded result, if there has been no error. Otherwise, the future completes
+   *     exceptionally with a {@link ConduitException}.
+   */
+  <T> CompletableFuture<T> callAsync(
+      String method, Map<String, Object> params, String token, ResultReader<T> resultReader) {
+    HttpRequest request;
+    long requestLength;
+    try {
+      byte[] body = EntityUtils.toByteArray(createRequestEntity(method, params, token));
+      request = createAsyncRequest(method, body);
+      requestLength = body.length;
+    } catch (IOException | IllegalArgumentException e) {
+      return CompletableFuture.failedFuture(
+          new ConduitException("Could not create Phabricator API call", e));
+    }
+
+    long callStart = System.nanoTime();
+    metrics.callStarted();
+    CompletableFuture<T> result = new CompletableFuture<>();
+    attemptAsync(
+        method, request, requestLength, RateLimiter.getBudget(method), resultReader, 1, result);
+    return result.whenComplete(
+        (value, error) -> metrics.callFinished(method, System.nanoTime() - callStart));
+  }
+
+  /** Runs an attempt of an asynchronous call, and schedules a retry if it fails */
+  private <T> void attemptAsync(
+      String method,
+      HttpRequest request,
+      long requestLength,
+      RateLimiter.Budget budget,
+      ResultReader<T> resultReader,
+      int attempt,
+      CompletableFuture<T> result) {
+    Executor executor;
+    try {
+      executor = getAsyncExecutor();
+    } catch (RuntimeException e) {
+      result.completeExceptionally(
+          new ConduitException("Could not execute Phabricator API call", e));
+      return;
+    }
+
+    // Only one call probes per open period, and the call gets chained on the probe's answer.
+    circuitBreaker
+        .beforeCallAsync(this::pingAsync)
+        .thenCompose(
+            v -> {
+              if (!rateLimiter.isEnabled(budget)) {
+                return CompletableFuture.completedFuture(null);
+              }
+              long waitNanos = rateLimiter.reserve(budget);
+              metrics.rateLimitWaited(budget, waitNanos);
+              if (waitNanos <= 0) {
+                return CompletableFuture.completedFuture(null);
+              }
+              return CompletableFuture.runAsync(
+                  () -> {}, CompletableFuture.delayedExecutor(waitNanos, NANOSECONDS, executor));
+            })
+        .thenCompose(
+            v -> {
+              long start = System.nanoTime();
+              return executeAsync(method, request, requestLength, resultReader)
+                  .handle(
+                      (value, error) -> {
+                        long duration = System.nanoTime() - start;
+                        if (error == null) {
+                          circuitBreaker.record(false, duration);
+                          result.complete(value);
+                          return null;
+                        }
+                        ConduitException e = toConduitException(error);
+                        metrics.requestFailed(method, e);
+                        circuitBreaker.record(isUnavailable(e), duration);
+                        if (!retryPolicy.shouldRetry(method, attempt, e)) {
+                          result.completeExceptionally(e);
+                          return null;
+                        }
+                        long backoff = retryPolicy.getBackoffMillis(attempt);
+                        logger.atWarning().withCause(e).log(
+                            "Attempt %d of Phabricator method %s failed. Retrying in %d ms",
+                            attempt, method, backoff);
+                        CompletableFuture.delayedExecutor(backoff, MILLISECONDS, executor)
+                            .execute(
+                                () ->
+                                    attemptAsync(
+                                        method,
+                                        request,
+                                        requestLength,
+                                        budget,
+                                        resultReader,
+                                        attempt + 1,
+                                        result));
+                        return null;
+                      });
+            })
+        .exceptionally(
+            error -> {
+              // Only reached if the attempt could not get sent at all, e.g. as the circuit breaker
+              // is open, or on shutdown.
+              result.completeExceptionally(toConduitException(error));
+              return null;
+            });
+  }
+
+  /** Builds the HTTP request for an asynchronous Conduit call */
+  private HttpRequest createAsyncRequest(String method, byte[] body) {
+    return HttpRequest.newBuilder(URI.create(apiUrlBase + method))
+        .timeout(Duration.ofMillis(Math.max(1, requestConfig.getSocketTimeout())))
+        .header("Content-Type", ContentType.APPLICATION_FORM_URLENCODED.toString())
+        .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+        .build();
+  }
+
+  /** Sends a single HTTP request for a Conduit call without blocking */
+  private <T> CompletableFuture<T> executeAsync(
+      String method, HttpRequest request, long requestLength, ResultReader<T> resultReader) {
+    metrics.requestSent(method, requestLength);
+    return getAsyncClient()
+        .sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+        .handle(
+            (response, error) -> {
+              if (error != null) {
+                throw new CompletionException(
+                    new ConduitException(
+                        "Could not execute Phabricator API call", unwrapCompletion(error)));
+              }
+              logger.atFinest().log("Phabricator HTTP response status: %d", response.statusCode());
+              int statusCode = response.statusCode();
+              if (statusCode < 200 || statusCode >= 300) {
+                throw new CompletionException(new ConduitHttpException(method, statusCode, null));
+              }
+              byte[] body = response.body();
+              metrics.responseReceived(method, body.length);
+              Charset charset =
+                  response
+                      .headers()
+                      .firstValue("Content-Type")
+                      .map(ConduitConnection::getCharset)
+                      .orElse(null);
+              try {
+                return readResponse(method, new ByteArrayInputStream(body), charset, resultReader);
+              } catch (ConduitException e) {
+                throw new CompletionException(e);
+              }
+            });
+  }
+
+  private static Charset getCharset(String contentType) {
+    try {
+      return ContentType.parse(contentType).getCharset();
+    } catch (ParseException | UnsupportedCharsetException e) {
+      return null;
+    }
+  }
+
+  private static Throwable unwrapCompletion(Throwable error) {
+    while ((error instanceof CompletionException || error instanceof ExecutionException)
+        && error.getCause() != null) {
+      error = error.getCause();
+    }
+    return error;
+  }
+
+  private static ConduitException toConduitException(Throwable error) {
+    Throwable cause = unwrapCompletion(error);
+    if (cause instanceof ConduitException) {
+      return (ConduitException) cause;
+    }
+    return new ConduitException("Could not execute Phabricator API call", cause);
+  }
 
+  /** Waits until the rate limit lets a request of the call go out */
+  private void awaitRateLimit(String method, RateLimiter.Budget budget) throws ConduitException {
+    if (!rateLimiter.isEnabled(budget)) {
+      return;
+    }
+    try {
+      long waitNanos = rateLimiter.acquire(budget);
+      metrics.rateLimitWaited(budget, waitNanos);
+      if (waitNanos > 0) {
+        logger.atFinest().log(
+            "Phabricator method %s waited %d ms for the rate limit",
+            method, NANOSECONDS.toMillis(waitNanos));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ConduitException("Interrupted while waiting for the rate limit of " + method, e);
+    }
+  }
+
+  /** Encodes the parameters of a call as form data */
+  HttpEntity createRequestEntity(String method, Map<String, Object> params, String token) {
     if (token != null) {
       Map<String, Object> conduitParams = new HashMap<>();
       conduitParams.put("token", token);
@@ -108,30 +564,155 @@ public class ConduitConnection {
 
     List<NameValuePair> values = new ArrayList<NameValuePair>();
     values.add(new BasicNameValuePair("params", json));
-    httppost.setEntity(new UrlEncodedFormEntity(values, StandardCharsets.UTF_8));
+    return new UrlEncodedFormEntity(values, StandardCharsets.UTF_8);
+  }
+
+  /** Checks whether Phabricator answers, bypassing retries and the circuit breaker */
+  private void ping() throws ConduitException {
+    List<NameValuePair> values = new ArrayList<NameValuePair>();
+    values.add(new BasicNameValuePair("params", "{}"));
+    execute(
+        "conduit.ping",
+        apiUrlBase + "conduit.ping",
+        new UrlEncodedFormEntity(values, StandardCharsets.UTF_8),
+        reader -> {
+          reader.skipValue();
+          return null;
+        });
+  }
+
+  /**
+   * Checks whether Phabricator answers without blocking, bypassing retries and the circuit breaker
+   */
+  private CompletableFuture<Void> pingAsync() {
+    List<NameValuePair> values = new ArrayList<NameValuePair>();
+    values.add(new BasicNameValuePair("params", "{}"));
+    try {
+      byte[] body =
+          EntityUtils.toByteArray(new UrlEncodedFormEntity(values, StandardCharsets.UTF_8));
+      return executeAsync(
+          "conduit.ping",
+          createAsyncRequest("conduit.ping", body),
+          body.length,
+          reader -> {
+            reader.skipValue();
+            return null;
+          });
+    } catch (IOException | RuntimeException e) {
+      return CompletableFuture.failedFuture(
+          new ConduitException("Could not execute Phabricator API call", e));
+    }
+  }
+
+  /** Tells whether a failed call hints at Phabricator not being available */
+  private static boolean isUnavailable(ConduitException e) {
+    if (e instanceof ConduitErrorException) {
+      return false;
+    }
+    if (e instanceof ConduitHttpException) {
+      int statusCode = ((ConduitHttpException) e).getStatusCode();
+      return statusCode == 429 || statusCode >= 500;
+    }
+    return true;
+  }
+
+  /** Sends a single HTTP request for a Conduit call */
+  private <T> T execute(
+      String method, String methodUrl, HttpEntity requestEntity, ResultReader<T> resultReader)
+      throws ConduitException {
+    HttpPost httppost = new HttpPost(methodUrl);
+    httppost.setEntity(requestEntity);
+    metrics.requestSent(method, requestEntity.getContentLength());
 
     try (CloseableHttpResponse response = getClient().execute(httppost)) {
       logger.atFinest().log("Phabricator HTTP response status: %s", response.getStatusLine());
       HttpEntity entity = response.getEntity();
-      String entityString;
-      try {
-        entityString = EntityUtils.toString(entity);
-      } catch (IOException e) {
-        throw new ConduitException("Could not read the API response", e);
+      int statusCode = response.getStatusLine().getStatusCode();
+      if (statusCode < 200 || statusCode >= 300) {
+        EntityUtils.consumeQuietly(entity);
+        throw new ConduitHttpException(
+            method, statusCode, response.getStatusLine().getReasonPhrase());
+      }
+      if (entity == null) {
+        throw new ConduitException("Empty API response for method '" + method + "'");
       }
 
-      logger.atFinest().log("Phabricator response: %s", entityString);
-      CallCapsule callCapsule = gson.fromJson(entityString, CallCapsule.class);
-      logger.atFinest().log("callCapsule.result: %s", callCapsule.getResult());
-      logger.atFinest().log("callCapsule.error_code: %s", callCapsule.getErrorCode());
-      logger.atFinest().log("callCapsule.error_info: %s", callCapsule.getErrorInfo());
-      if (callCapsule.getErrorCode() != null || callCapsule.getErrorInfo() != null) {
-        throw new ConduitErrorException(
-            method, callCapsule.getErrorCode(), callCapsule.getErrorInfo());
+      T result;
+      // Closing the content drains what is left after the capsule, so the connection can get
+      // reused.
+      CountingInputStream content = new CountingInputStream(entity.getContent());
+      try (content) {
+        result =
+            readResponse(
+                method, content, ContentType.getOrDefault(entity).getCharset(), resultReader);
+      } finally {
+        long length = entity.getContentLength();
+        metrics.responseReceived(method, length >= 0 ? length : content.getCount());
       }
-      return callCapsule.getResult();
+      return result;
     } catch (IOException e) {
       throw new ConduitException("Could not execute Phabricator API call", e);
     }
   }
+
+  /** Decodes a call's response */
+  private <T> T readResponse(
+      String method, InputStream content, Charset charset, ResultReader<T> resultReader)
+      throws ConduitException {
+    JsonReader reader =
+        new JsonReader(
+            new InputStreamReader(content, charset != null ? charset : StandardCharsets.UTF_8));
+    try {
+      return readCallCapsule(method, reader, resultReader);
+    } catch (EOFException e) {
+      throw new ConduitException("Empty API response for method '" + method + "'", e);
+    } catch (MalformedJsonException | JsonParseException | IllegalStateException e) {
+      throw new ConduitException("Could not parse the API response", e);
+    } catch (IOException e) {
+      throw new ConduitException("Could not read the API response", e);
+    }
+  }
+
+  /**
+   * Reads the generic wrapper of a call's result from a stream
+   *
+   * <p>See {@link com.googlesource.gerrit.plugins.its.phabricator.conduit.results.CallCapsule} for
+   * the wrapper's format. Only the result is decoded into objects. Other fields are skipped without
+   * getting materialized.
+   */
+  <T> T readCallCapsule(String method, JsonReader reader, ResultReader<T> resultReader)
+      throws IOException, ConduitErrorException {
+    T result = null;
+    String errorCode = null;
+    String errorInfo = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (reader.peek() == JsonToken.NULL) {
+        reader.nextNull();
+        continue;
+      }
+      switch (name) {
+        case "result":
+          result = resultReader.read(reader);
+          break;
+        case "error_code":
+          errorCode = reader.nextString();
+          break;
+        case "error_info":
+          errorInfo = reader.nextString();
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+
+    logger.atFinest().log("callCapsule.error_code: %s", errorCode);
+    logger.atFinest().log("callCapsule.error_info: %s", errorInfo);
+    if (errorCode != null || errorInfo != null) {
+      throw new ConduitErrorException(method, errorCode, errorInfo);
+    }
+    return result;
+  }
 }
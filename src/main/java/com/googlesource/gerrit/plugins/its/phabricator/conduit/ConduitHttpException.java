@@ -0,0 +1,37 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.its.phabricator.conduit;
+
+/** Exception thrown if the HTTP response for a Conduit call has a non-success status */
+public class ConduitHttpException extends ConduitException {
+
+  private static final long serialVersionUID = 1L;
+
+  private final int statusCode;
+
+  ConduitHttpException(String method, int statusCode, String reasonPhrase) {
+    super(
+        "Method '"
+            + method
+            + "' gave HTTP status "
+            + statusCode
+            + ((reasonPhrase != null && !reasonPhrase.isEmpty()) ? (" " + reasonPhrase) : ""));
+    this.statusCode = statusCode;
+  }
+
+  public int getStatusCode() {
+    return statusCode;
+  }
+}
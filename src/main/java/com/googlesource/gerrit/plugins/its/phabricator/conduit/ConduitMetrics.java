@@ -0,0 +1,135 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.its.phabricator.conduit;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import com.google.gerrit.metrics.Counter1;
+import com.google.gerrit.metrics.Counter2;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Field;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.metrics.Timer1;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Metrics about the calls to Conduit */
+@Singleton
+public class ConduitMetrics {
+  static final String ERROR_TRANSPORT = "transport";
+
+  private final Timer1<String> latency;
+  private final Counter1<String> requestBytes;
+  private final Counter1<String> responseBytes;
+  private final Counter2<String, String> errors;
+  private final Timer1<RateLimiter.Budget> rateLimitWait;
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  @Inject
+  ConduitMetrics(MetricMaker metricMaker) {
+    Field<String> methodField =
+        Field.ofString("method", Field.ignoreMetadata())
+            .description("The called Conduit method")
+            .build();
+    latency =
+        metricMaker.newTimer(
+            "conduit/latency",
+            new Description("Time Conduit calls took, including retries")
+                .setCumulative()
+                .setUnit(Description.Units.MILLISECONDS),
+            methodField);
+    requestBytes =
+        metricMaker.newCounter(
+            "conduit/request_bytes",
+            new Description("Bytes sent in Conduit requests")
+                .setRate()
+                .setUnit(Description.Units.BYTES),
+            methodField);
+    responseBytes =
+        metricMaker.newCounter(
+            "conduit/response_bytes",
+            new Description("Bytes received in Conduit responses")
+                .setRate()
+                .setUnit(Description.Units.BYTES),
+            methodField);
+    errors =
+        metricMaker.newCounter(
+            "conduit/error_count",
+            new Description("Failed Conduit requests").setRate().setUnit("errors"),
+            methodField,
+            Field.ofString("error", Field.ignoreMetadata())
+                .description(
+                    "'transport' for connection problems, 'http_' and the status code for"
+                        + " unexpected HTTP responses, or the error_code reported by Conduit")
+                .build());
+    rateLimitWait =
+        metricMaker.newTimer(
+            "conduit/rate_limit_wait",
+            new Description("Time Conduit requests waited for the client-side rate limit")
+                .setCumulative()
+                .setUnit(Description.Units.MILLISECONDS),
+            Field.ofEnum(RateLimiter.Budget.class, "budget", Field.ignoreMetadata())
+                .description("The rate limit budget the request drew from")
+                .build());
+    metricMaker.newCallbackMetric(
+        "conduit/in_flight",
+        Integer.class,
+        new Description("Number of Conduit calls currently running").setGauge().setUnit("calls"),
+        inFlight::get);
+  }
+
+  /** Marks the start of a call, which has to be followed by {@link #callFinished} */
+  void callStarted() {
+    inFlight.incrementAndGet();
+  }
+
+  void callFinished(String method, long durationNanos) {
+    inFlight.decrementAndGet();
+    latency.record(method, durationNanos, NANOSECONDS);
+  }
+
+  void requestSent(String method, long bytes) {
+    if (bytes > 0) {
+      requestBytes.incrementBy(method, bytes);
+    }
+  }
+
+  void responseReceived(String method, long bytes) {
+    if (bytes > 0) {
+      responseBytes.incrementBy(method, bytes);
+    }
+  }
+
+  void rateLimitWaited(RateLimiter.Budget budget, long waitNanos) {
+    rateLimitWait.record(budget, waitNanos, NANOSECONDS);
+  }
+
+  void requestFailed(String method, ConduitException e) {
+    errors.increment(method, describeError(e));
+  }
+
+  /** Gives the value of the error field for a failed request */
+  static String describeError(ConduitException e) {
+    if (e instanceof ConduitErrorException) {
+      String errorCode = ((ConduitErrorException) e).getErrorCode();
+      return errorCode != null ? errorCode : "unknown";
+    }
+    if (e instanceof ConduitHttpException) {
+      return "http_" + ((ConduitHttpException) e).getStatusCode();
+    }
+    return ERROR_TRANSPORT;
+  }
+}
@@ -0,0 +1,77 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.its.phabricator.conduit;
+
+import java.util.Objects;
+
+/**
+ * A single transaction for the API's 'maniphest.edit' method
+ *
+ * <p>Projects are referenced by name. They get resolved to PHIDs only when the transaction is sent.
+ */
+public class ManiphestTransaction {
+  private final String type;
+  private final String value;
+
+  private ManiphestTransaction(String type, String value) {
+    this.type = type;
+    this.value = value;
+  }
+
+  public static ManiphestTransaction comment(String comment) {
+    return new ManiphestTransaction(Conduit.ACTION_COMMENT, comment);
+  }
+
+  public static ManiphestTransaction addProject(String projectName) {
+    return new ManiphestTransaction(Conduit.ACTION_PROJECT_ADD, projectName);
+  }
+
+  public static ManiphestTransaction removeProject(String projectName) {
+    return new ManiphestTransaction(Conduit.ACTION_PROJECT_REMOVE, projectName);
+  }
+
+  /** Gives the transaction type, e.g. {@link Conduit#ACTION_COMMENT} */
+  public String getType() {
+    return type;
+  }
+
+  /** Gives the comment text, or the project name for project transactions */
+  public String getValue() {
+    return value;
+  }
+
+  public boolean isProjectTransaction() {
+    return Conduit.ACTION_PROJECT_ADD.equals(type) || Conduit.ACTION_PROJECT_REMOVE.equals(type);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof ManiphestTransaction)) {
+      return false;
+    }
+    ManiphestTransaction other = (ManiphestTransaction) o;
+    return type.equals(other.type) && Objects.equals(value, other.value);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(type, value);
+  }
+
+  @Override
+  public String toString() {
+    return type + ": " + value;
+  }
+}
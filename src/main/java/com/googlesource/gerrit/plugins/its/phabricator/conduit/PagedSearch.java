@@ -0,0 +1,117 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.its.phabricator.conduit;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Iterates over all results of a search, fetching pages only when they are needed
+ *
+ * <p>Only the current page is held in memory. If a prefetch executor is given, the next page is
+ * fetched in the background while the current page is consumed.
+ */
+class PagedSearch<T> implements Iterator<T> {
+  /** Fetches the page after a cursor */
+  @FunctionalInterface
+  interface PageFetcher<T> {
+    /**
+     * Fetches a page
+     *
+     * @param after The cursor to fetch the page after, or null for the first page
+     */
+    SearchPage<T> fetch(String after) throws ConduitException;
+  }
+
+  private final PageFetcher<T> fetcher;
+  private final Executor prefetchExecutor;
+
+  private Iterator<T> current;
+  private String after;
+  private boolean lastPage;
+  private CompletableFuture<SearchPage<T>> next;
+
+  /**
+   * @param fetcher Fetches the pages
+   * @param prefetchExecutor Runs the fetch of the next page in the background, or null to fetch
+   *     pages only when they are needed
+   */
+  PagedSearch(PageFetcher<T> fetcher, Executor prefetchExecutor) {
+    this.fetcher = fetcher;
+    this.prefetchExecutor = prefetchExecutor;
+  }
+
+  @Override
+  public boolean hasNext() {
+    while (current == null || !current.hasNext()) {
+      if (lastPage) {
+        return false;
+      }
+      SearchPage<T> page = nextPage();
+      current = page.getData().iterator();
+      after = page.getAfter();
+      lastPage = after == null;
+      if (!lastPage && prefetchExecutor != null) {
+        String cursor = after;
+        next = CompletableFuture.supplyAsync(() -> fetchUnchecked(cursor), prefetchExecutor);
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public T next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return current.next();
+  }
+
+  /** Drops a page that is being prefetched */
+  void close() {
+    lastPage = true;
+    if (next != null) {
+      next.cancel(false);
+      next = null;
+    }
+  }
+
+  private SearchPage<T> nextPage() {
+    if (next == null) {
+      return fetchUnchecked(after);
+    }
+    CompletableFuture<SearchPage<T>> prefetched = next;
+    next = null;
+    try {
+      return prefetched.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  private SearchPage<T> fetchUnchecked(String cursor) {
+    try {
+      return fetcher.fetch(cursor);
+    } catch (ConduitException e) {
+      throw new UncheckedConduitException(e);
+    }
+  }
+}
@@ -0,0 +1,153 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.its.phabricator.conduit;
+
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.server.cache.CacheModule;
+import com.google.inject.Inject;
+import com.google.inject.Module;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.results.ProjectSearch;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import org.eclipse.jgit.lib.Config;
+
+/**
+ * Caches Phabricator projects by project name and by slug
+ *
+ * <p>Keys are matched exactly but without regard to case, so looking up "Foo", "foo", or the slug
+ * "foo" gives the same project.
+ *
+ * <p>Projects of different Phabricator servers are kept apart, see {@link #forServer}. Size and age
+ * of the cache can be configured through the {@code cache.phabricator_projects} section of {@code
+ * gerrit.config}.
+ */
+@Singleton
+public class ProjectSearchCache {
+  static final String CACHE_NAME = "phabricator_projects";
+  static final long DEFAULT_MEMORY_LIMIT = 8192;
+
+  public static Module module() {
+    return new CacheModule() {
+      @Override
+      protected void configure() {
+        cache(CACHE_NAME, String.class, ProjectSearch.class)
+            .maximumWeight(DEFAULT_MEMORY_LIMIT)
+            .expireAfterWrite(Duration.ofHours(1));
+      }
+    };
+  }
+
+  /**
+   * Gives the number of entries the cache holds at most
+   *
+   * @param cfg The server config that may override the default size
+   * @return The configured {@code cache.phabricator_projects.memoryLimit}
+   */
+  public static long getMemoryLimit(Config cfg) {
+    return cfg.getLong("cache", CACHE_NAME, "memoryLimit", DEFAULT_MEMORY_LIMIT);
+  }
+
+  private final Cache<String, ProjectSearch> cache;
+  private final String prefix;
+
+  @Inject
+  ProjectSearchCache(@Named(CACHE_NAME) Cache<String, ProjectSearch> cache) {
+    this(cache, null);
+  }
+
+  private ProjectSearchCache(Cache<String, ProjectSearch> cache, String server) {
+    this.cache = cache;
+    // The length keeps servers apart whose names are prefixes of each other (e.g.: "a" and "a/b").
+    String name = Strings.nullToEmpty(server);
+    this.prefix = name.length() + ":" + name + "/";
+  }
+
+  /**
+   * Gives a view of the cache for projects of a Phabricator server
+   *
+   * @param server The name of the server, or null for the default server
+   * @return The view, which shares the underlying cache but does not see other servers' projects
+   */
+  public ProjectSearchCache forServer(@Nullable String server) {
+    return new ProjectSearchCache(cache, server);
+  }
+
+  /**
+   * Gives the cached project for a name or slug
+   *
+   * @param name The name or slug of the project to look up
+   * @return The cached project, or null if the name is not cached
+   */
+  public ProjectSearch get(String name) {
+    return cache.getIfPresent(key(name));
+  }
+
+  /** Caches a project by its name and by its slug */
+  public void put(ProjectSearch project) {
+    if (project.getName() != null) {
+      cache.put(key(project.getName()), project);
+    }
+    if (project.getSlug() != null) {
+      cache.put(key(project.getSlug()), project);
+    }
+  }
+
+  /** Caches a project by a further name, in addition to its name and slug */
+  public void put(String name, ProjectSearch project) {
+    cache.put(key(name), project);
+    put(project);
+  }
+
+  /** Drops a project, by whichever of its name or slug is given */
+  public void invalidate(String name) {
+    String key = key(name);
+    ProjectSearch project = cache.getIfPresent(key);
+    cache.invalidate(key);
+    if (project != null) {
+      if (project.getName() != null) {
+        cache.invalidate(key(project.getName()));
+      }
+      if (project.getSlug() != null) {
+        cache.invalidate(key(project.getSlug()));
+      }
+    }
+  }
+
+  /** Gives the cached projects of this view's server, by the names they were cached under */
+  public Map<String, ProjectSearch> asMap() {
+    Map<String, ProjectSearch> projects = new HashMap<>();
+    for (Map.Entry<String, ProjectSearch> entry : cache.asMap().entrySet()) {
+      if (entry.getKey().startsWith(prefix)) {
+        projects.put(entry.getKey().substring(prefix.length()), entry.getValue());
+      }
+    }
+    return projects;
+  }
+
+  /** Drops all projects of this view's server */
+  public void invalidateAll() {
+    cache.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+  }
+
+  private String key(String name) {
+    return prefix + name.toLowerCase(Locale.ROOT);
+  }
+}
@@ -0,0 +1,147 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.its.phabricator.conduit;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.common.base.Ticker;
+import org.eclipse.jgit.lib.Config;
+
+/**
+ * Limits the rate of requests to a Phabricator instance
+ *
+ * <p>Requests of read-only methods and of methods that modify data draw from separate token
+ * buckets, so a burst of edits cannot starve existence checks (or the other way round). Each bucket
+ * refills at a sustained rate and holds up to a burst of tokens. A request that finds its bucket
+ * empty waits for its turn instead of failing. Waiting requests get served in the order they
+ * arrived.
+ *
+ * <p>A rate of 0 (the default) turns limiting off for that kind of requests.
+ */
+class RateLimiter {
+  private static final String GERRIT_CONFIG_READ_RATE = "readRateLimit";
+  private static final String GERRIT_CONFIG_READ_BURST = "readRateLimitBurst";
+  private static final String GERRIT_CONFIG_WRITE_RATE = "writeRateLimit";
+  private static final String GERRIT_CONFIG_WRITE_BURST = "writeRateLimitBurst";
+
+  /** The budgets requests draw from */
+  enum Budget {
+    /** Requests of read-only methods */
+    READ,
+
+    /** Requests of methods that modify data */
+    WRITE
+  }
+
+  private final TokenBucket reads;
+  private final TokenBucket writes;
+
+  RateLimiter(String pluginName, Config cfg, Ticker ticker) {
+    this.reads =
+        TokenBucket.create(
+            cfg.getInt(pluginName, null, GERRIT_CONFIG_READ_RATE, 0),
+            cfg.getInt(pluginName, null, GERRIT_CONFIG_READ_BURST, 0),
+            ticker);
+    this.writes =
+        TokenBucket.create(
+            cfg.getInt(pluginName, null, GERRIT_CONFIG_WRITE_RATE, 0),
+            cfg.getInt(pluginName, null, GERRIT_CONFIG_WRITE_BURST, 0),
+            ticker);
+  }
+
+  static Budget getBudget(String method) {
+    return RetryPolicy.isIdempotent(method) ? Budget.READ : Budget.WRITE;
+  }
+
+  boolean isEnabled(Budget budget) {
+    return getBucket(budget) != null;
+  }
+
+  /**
+   * Reserves a request's turn
+   *
+   * @param budget The budget the request draws from
+   * @return The time in nanoseconds the request has to wait for its turn
+   */
+  long reserve(Budget budget) {
+    TokenBucket bucket = getBucket(budget);
+    return bucket == null ? 0 : bucket.reserve();
+  }
+
+  /**
+   * Waits for a request's turn
+   *
+   * @param budget The budget the request draws from
+   * @return The time in nanoseconds the request waited
+   * @throws InterruptedException if the thread got interrupted while waiting
+   */
+  long acquire(Budget budget) throws InterruptedException {
+    long waitNanos = reserve(budget);
+    if (waitNanos > 0) {
+      NANOSECONDS.sleep(waitNanos);
+    }
+    return waitNanos;
+  }
+
+  private TokenBucket getBucket(Budget budget) {
+    return budget == Budget.READ ? reads : writes;
+  }
+
+  /** A token bucket, that lets callers queue up for tokens that are not available yet */
+  private static class TokenBucket {
+    private final Ticker ticker;
+    private final long nanosPerToken;
+    private final long burstNanos;
+
+    /**
+     * Tokens are tracked as time: the bucket holds {@code (now - nextFree) / nanosPerToken} tokens.
+     * If nextFree lies in the future, callers have taken tokens in advance and need to wait.
+     */
+    private long nextFree;
+
+    static TokenBucket create(int ratePerSecond, int burst, Ticker ticker) {
+      if (ratePerSecond <= 0) {
+        return null;
+      }
+      return new TokenBucket(ratePerSecond, burst > 0 ? burst : ratePerSecond, ticker);
+    }
+
+    private TokenBucket(int ratePerSecond, int burst, Ticker ticker) {
+      this.ticker = ticker;
+      this.nanosPerToken = Math.max(1, SECONDS.toNanos(1) / ratePerSecond);
+      this.burstNanos = nanosPerToken * burst;
+      this.nextFree = ticker.read() - burstNanos;
+    }
+
+    /**
+     * Takes a token
+     *
+     * <p>If the bucket is empty, the token is taken from the future. Later callers then queue up
+     * behind this one.
+     *
+     * @return The time in nanoseconds until the token is available
+     */
+    synchronized long reserve() {
+      long now = ticker.read();
+      // Tokens that were not used do not pile up beyond the burst.
+      if (nextFree - (now - burstNanos) < 0) {
+        nextFree = now - burstNanos;
+      }
+      nextFree += nanosPerToken;
+      return Math.max(0, nextFree - now);
+    }
+  }
+}
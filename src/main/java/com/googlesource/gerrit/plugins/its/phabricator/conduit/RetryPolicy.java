@@ -0,0 +1,113 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.its.phabricator.conduit;
+
+import com.google.common.collect.ImmutableSet;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.http.HttpConnectTimeoutException;
+import java.util.concurrent.ThreadLocalRandom;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+
+/**
+ * Decides whether and when a failed Conduit call gets retried
+ *
+ * <p>Conduit errors (i.e.: {@link ConduitErrorException}) are permanent and never get retried.
+ * Transport failures and HTTP statuses that indicate an overloaded or unavailable server are
+ * retried for read-only methods. Methods that modify data are only retried if the failure shows
+ * that the request did not reach Phabricator, so an edit cannot get applied twice.
+ *
+ * <p>Retries back off exponentially, up to a maximum, with full jitter.
+ */
+class RetryPolicy {
+  /** Statuses that hint at a transient server-side problem */
+  private static final ImmutableSet<Integer> TRANSIENT_STATUSES =
+      ImmutableSet.of(429, 502, 503, 504);
+
+  /**
+   * Statuses that guarantee that the server did not process the request
+   *
+   * <p>503 is not among them, as a proxy may answer with it after Phabricator already processed the
+   * request (e.g.: when the backend restarts while answering).
+   */
+  private static final ImmutableSet<Integer> NOT_PROCESSED_STATUSES = ImmutableSet.of(429);
+
+  private final int maxRetries;
+  private final long initialBackoffMillis;
+  private final long maxBackoffMillis;
+
+  RetryPolicy(int maxRetries, long initialBackoffMillis, long maxBackoffMillis) {
+    this.maxRetries = maxRetries;
+    this.initialBackoffMillis = initialBackoffMillis;
+    this.maxBackoffMillis = maxBackoffMillis;
+  }
+
+  /**
+   * Checks whether a failed call should be retried
+   *
+   * @param method The name of the Conduit method that failed
+   * @param attempt The number of the attempt that failed, starting at 1
+   * @param e The exception that the attempt failed with
+   * @return true, if the call should be retried
+   */
+  boolean shouldRetry(String method, int attempt, ConduitException e) {
+    if (attempt > maxRetries) {
+      return false;
+    }
+    if (e instanceof ConduitErrorException) {
+      return false;
+    }
+    boolean idempotent = isIdempotent(method);
+    if (e instanceof ConduitHttpException) {
+      int status = ((ConduitHttpException) e).getStatusCode();
+      return idempotent
+          ? TRANSIENT_STATUSES.contains(status)
+          : NOT_PROCESSED_STATUSES.contains(status);
+    }
+    Throwable cause = e.getCause();
+    if (cause instanceof IOException) {
+      return idempotent || isNotSent((IOException) cause);
+    }
+    return false;
+  }
+
+  /**
+   * Gives the time to wait before the next attempt
+   *
+   * @param attempt The number of the attempt that failed, starting at 1
+   * @return The time to wait in milliseconds
+   */
+  long getBackoffMillis(int attempt) {
+    long cap = maxBackoffMillis;
+    if (attempt - 1 < Long.numberOfLeadingZeros(initialBackoffMillis) - 1) {
+      cap = Math.min(cap, initialBackoffMillis << (attempt - 1));
+    }
+    return ThreadLocalRandom.current().nextLong(cap + 1);
+  }
+
+  /** Checks whether calling a method repeatedly has the same effect as calling it once */
+  static boolean isIdempotent(String method) {
+    return !method.endsWith(".edit");
+  }
+
+  /** Checks whether a transport failure happened before the request got sent */
+  private static boolean isNotSent(IOException e) {
+    return e instanceof ConnectException
+        || e instanceof ConnectTimeoutException
+        || e instanceof HttpConnectTimeoutException
+        || e instanceof ConnectionPoolTimeoutException;
+  }
+}
@@ -0,0 +1,37 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.its.phabricator.conduit;
+
+import java.util.List;
+
+/** A single page of results of one of the API's search methods */
+public class SearchPage<T> {
+  private final List<T> data;
+  private final String after;
+
+  SearchPage(List<T> data, String after) {
+    this.data = data;
+    this.after = after;
+  }
+
+  public List<T> getData() {
+    return data;
+  }
+
+  /** Gives the cursor to fetch the next page with, or null if this is the last page */
+  public String getAfter() {
+    return after;
+  }
+}
@@ -17,10 +17,27 @@ package com.googlesource.gerrit.plugins.its.phabricator.conduit;
 import com.google.common.collect.Streams;
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import com.google.inject.Inject;
-import com.googlesource.gerrit.plugins.its.phabricator.conduit.results.GenericSearch;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+/**
+ * Decodes the results of the API's search methods
+ *
+ * <p>See {@link com.googlesource.gerrit.plugins.its.phabricator.conduit.results.GenericSearch} for
+ * the format of search results.
+ */
 public class SearchUtils {
   private final Gson gson;
 
@@ -29,8 +46,139 @@ public class SearchUtils {
     gson = new Gson();
   }
 
+  /** Streams the entries of a search result's 'data' field */
   public <T> Stream<T> stream(JsonElement jsonResult, Class<T> classOfT) {
-    GenericSearch result = gson.fromJson(jsonResult, GenericSearch.class);
-    return Streams.stream(result.getData()).map((json) -> gson.fromJson(json, classOfT));
+    JsonElement data = null;
+    if (jsonResult != null && jsonResult.isJsonObject()) {
+      data = ((JsonObject) jsonResult).get("data");
+    }
+    if (data == null || !data.isJsonArray()) {
+      return Stream.empty();
+    }
+    return Streams.stream(data.getAsJsonArray()).map((json) -> gson.fromJson(json, classOfT));
+  }
+
+  /**
+   * Streams the entries of a search result's 'data' field while reading them
+   *
+   * <p>Entries are decoded one at a time, when the stream asks for them. So short-circuiting
+   * operations like {@code findFirst()} do not decode the rest of the entries.
+   *
+   * <p>The stream has to get closed. Closing it skips the rest of the search result, so the reader
+   * is positioned after the search result afterwards. Read failures surface as {@link
+   * UncheckedIOException}.
+   *
+   * @param reader The reader, positioned at the search result
+   * @param classOfT The class to decode the entries into
+   * @return The stream of decoded entries
+   * @throws IOException if the search result could not be read up to its 'data' field
+   */
+  public <T> Stream<T> stream(JsonReader reader, Class<T> classOfT) throws IOException {
+    reader.beginObject();
+    while (reader.hasNext()) {
+      if ("data".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+        reader.beginArray();
+        DataSpliterator<T> spliterator = new DataSpliterator<>(reader, gson.getAdapter(classOfT));
+        return StreamSupport.stream(spliterator, false).onClose(spliterator::skipRest);
+      }
+      reader.skipValue();
+    }
+    reader.endObject();
+    return Stream.empty();
+  }
+
+  /**
+   * Reads a whole page of a search result
+   *
+   * <p>Next to the entries of the 'data' field, the cursor to the next page is read.
+   *
+   * @param reader The reader, positioned at the search result
+   * @param classOfT The class to decode the entries into
+   * @return The read page
+   * @throws IOException if the search result could not be read
+   */
+  public <T> SearchPage<T> readPage(JsonReader reader, Class<T> classOfT) throws IOException {
+    TypeAdapter<T> adapter = gson.getAdapter(classOfT);
+    List<T> data = new ArrayList<>();
+    String after = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if ("data".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+        reader.beginArray();
+        while (reader.hasNext()) {
+          T entry = adapter.read(reader);
+          if (entry != null) {
+            data.add(entry);
+          }
+        }
+        reader.endArray();
+      } else if ("cursor".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+        reader.beginObject();
+        while (reader.hasNext()) {
+          if ("after".equals(reader.nextName()) && reader.peek() != JsonToken.NULL) {
+            after = reader.nextString();
+          } else {
+            reader.skipValue();
+          }
+        }
+        reader.endObject();
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return new SearchPage<>(data, after);
+  }
+
+  /** Decodes the entries of a 'data' array, and skips the remaining search result when done */
+  private static class DataSpliterator<T> extends Spliterators.AbstractSpliterator<T> {
+    private final JsonReader reader;
+    private final TypeAdapter<T> adapter;
+    private boolean dataDone;
+    private boolean resultDone;
+
+    DataSpliterator(JsonReader reader, TypeAdapter<T> adapter) {
+      super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+      this.reader = reader;
+      this.adapter = adapter;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+      try {
+        while (!dataDone && reader.hasNext()) {
+          T entry = adapter.read(reader);
+          if (entry != null) {
+            action.accept(entry);
+            return true;
+          }
+        }
+        dataDone = true;
+        return false;
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    void skipRest() {
+      if (resultDone) {
+        return;
+      }
+      resultDone = true;
+      try {
+        while (reader.hasNext()) {
+          reader.skipValue();
+        }
+        reader.endArray();
+        while (reader.hasNext()) {
+          reader.nextName();
+          reader.skipValue();
+        }
+        reader.endObject();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
   }
 }
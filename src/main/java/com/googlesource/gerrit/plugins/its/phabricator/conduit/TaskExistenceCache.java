@@ -0,0 +1,143 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.its.phabricator.conduit;
+
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.server.cache.CacheModule;
+import com.google.inject.Inject;
+import com.google.inject.Module;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Caches whether tasks exist
+ *
+ * <p>Tasks that are known to exist and tasks that are known to be missing are kept in separate
+ * caches, so they can expire at different ages. Tasks hardly ever stop existing, so existing tasks
+ * can be cached for long. Missing tasks may get created any time, so they should be cached only
+ * briefly. Tasks of different Phabricator servers are kept apart, see {@link #forServer}. Size and
+ * age of the caches can be configured through the {@code cache.phabricator_tasks} and {@code
+ * cache.phabricator_missing_tasks} sections of {@code gerrit.config}.
+ */
+@Singleton
+public class TaskExistenceCache {
+  static final String EXISTING_CACHE_NAME = "phabricator_tasks";
+  static final String MISSING_CACHE_NAME = "phabricator_missing_tasks";
+
+  public static Module module() {
+    return new CacheModule() {
+      @Override
+      protected void configure() {
+        cache(EXISTING_CACHE_NAME, String.class, Boolean.class)
+            .maximumWeight(4096)
+            .expireAfterWrite(Duration.ofDays(1));
+        cache(MISSING_CACHE_NAME, String.class, Boolean.class)
+            .maximumWeight(1024)
+            .expireAfterWrite(Duration.ofMinutes(1));
+      }
+    };
+  }
+
+  private final Cache<String, Boolean> existing;
+  private final Cache<String, Boolean> missing;
+  private final String prefix;
+
+  @Inject
+  TaskExistenceCache(
+      @Named(EXISTING_CACHE_NAME) Cache<String, Boolean> existing,
+      @Named(MISSING_CACHE_NAME) Cache<String, Boolean> missing) {
+    this(existing, missing, null);
+  }
+
+  private TaskExistenceCache(
+      Cache<String, Boolean> existing, Cache<String, Boolean> missing, String server) {
+    this.existing = existing;
+    this.missing = missing;
+    // The length keeps servers apart whose names are prefixes of each other (e.g.: "a" and "a/b").
+    String name = Strings.nullToEmpty(server);
+    this.prefix = name.length() + ":" + name + "/";
+  }
+
+  /**
+   * Gives a view of the caches for tasks of a Phabricator server
+   *
+   * @param server The name of the server, or null for the default server
+   * @return The view, which shares the underlying caches but does not see other servers' tasks
+   */
+  public TaskExistenceCache forServer(@Nullable String server) {
+    return new TaskExistenceCache(existing, missing, server);
+  }
+
+  /**
+   * Gives the cached existence of a task
+   *
+   * @param taskId The id of the task to look up
+   * @return True if the task is known to exist, false if it is known to be missing, and null if the
+   *     task is not cached
+   */
+  public Boolean get(int taskId) {
+    String key = key(taskId);
+    if (existing.getIfPresent(key) != null) {
+      return true;
+    }
+    if (missing.getIfPresent(key) != null) {
+      return false;
+    }
+    return null;
+  }
+
+  public void put(int taskId, boolean exists) {
+    String key = key(taskId);
+    if (exists) {
+      existing.put(key, true);
+      missing.invalidate(key);
+    } else {
+      missing.put(key, true);
+      existing.invalidate(key);
+    }
+  }
+
+  public void invalidate(int taskId) {
+    String key = key(taskId);
+    existing.invalidate(key);
+    missing.invalidate(key);
+  }
+
+  /** Gives the ids of the tasks of this view's server that are known to exist */
+  public Set<Integer> getExisting() {
+    Set<Integer> taskIds = new HashSet<>();
+    for (String key : existing.asMap().keySet()) {
+      if (key.startsWith(prefix)) {
+        taskIds.add(Integer.valueOf(key.substring(prefix.length())));
+      }
+    }
+    return taskIds;
+  }
+
+  /** Drops all tasks of this view's server */
+  public void invalidateAll() {
+    existing.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+    missing.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+  }
+
+  private String key(int taskId) {
+    return prefix + taskId;
+  }
+}
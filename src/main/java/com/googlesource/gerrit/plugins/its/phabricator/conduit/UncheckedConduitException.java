@@ -0,0 +1,30 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.its.phabricator.conduit;
+
+/** Wraps a {@link ConduitException} where checked exceptions cannot be thrown (e.g.: streams) */
+public class UncheckedConduitException extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  public UncheckedConduitException(ConduitException cause) {
+    super(cause);
+  }
+
+  @Override
+  public synchronized ConduitException getCause() {
+    return (ConduitException) super.getCause();
+  }
+}
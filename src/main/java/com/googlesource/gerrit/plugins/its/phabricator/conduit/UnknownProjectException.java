@@ -0,0 +1,32 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.its.phabricator.conduit;
+
+/** Exception thrown if a transaction refers to a project that Phabricator does not know */
+public class UnknownProjectException extends ConduitException {
+
+  private static final long serialVersionUID = 1L;
+
+  private final String project;
+
+  public UnknownProjectException(String project) {
+    super("Could not find project '" + project + "'");
+    this.project = project;
+  }
+
+  public String getProject() {
+    return project;
+  }
+}
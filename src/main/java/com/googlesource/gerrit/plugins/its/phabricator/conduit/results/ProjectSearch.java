@@ -57,7 +57,35 @@ package com.googlesource.gerrit.plugins.its.phabricator.conduit.results;
  * </pre>
  */
 public class ProjectSearch extends PhabObjectWithId {
+  private Fields fields;
+
   public ProjectSearch(String phid, int id) {
     super(phid, id);
   }
+
+  public ProjectSearch(String phid, int id, String name, String slug) {
+    super(phid, id);
+    this.fields = new Fields(name, slug);
+  }
+
+  /** Gives the project's name, or null if the result did not include it */
+  public String getName() {
+    return fields != null ? fields.name : null;
+  }
+
+  /** Gives the project's primary hashtag, or null if the result did not include it */
+  public String getSlug() {
+    return fields != null ? fields.slug : null;
+  }
+
+  /** The fields of the project that are used. Further fields are skipped when decoding. */
+  private static class Fields {
+    private String name;
+    private String slug;
+
+    Fields(String name, String slug) {
+      this.name = name;
+      this.slug = slug;
+    }
+  }
 }
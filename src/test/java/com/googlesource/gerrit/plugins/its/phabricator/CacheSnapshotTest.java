@@ -0,0 +1,173 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.googlesource.gerrit.plugins.its.phabricator;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.googlesource.gerrit.plugins.its.base.testutil.LoggingMockingTestCase;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.Conduit;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.ProjectSearchCache;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.TaskExistenceCache;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.results.ProjectSearch;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.eclipse.jgit.lib.Config;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+
+public class CacheSnapshotTest extends LoggingMockingTestCase {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Config serverConfig;
+  private Path pluginData;
+  private Conduit conduit;
+  private ProjectSearchCache projectSearchCache;
+  private TaskExistenceCache taskExistenceCache;
+  private CacheSnapshot snapshot;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    serverConfig = new Config();
+    serverConfig.setBoolean("its-phabricator", null, "cacheSnapshot", true);
+    pluginData = temporaryFolder.newFolder().toPath();
+    conduit = mockConduit();
+    projectSearchCache = conduit.getProjectSearchCache();
+    taskExistenceCache = conduit.getTaskExistenceCache();
+  }
+
+  @After
+  public void stopSnapshot() {
+    if (snapshot != null) {
+      snapshot.stop();
+    }
+  }
+
+  @Test
+  public void testDisabledByDefault() throws Exception {
+    snapshot = new CacheSnapshot("its-phabricator", new Config(), pluginData, conduit, null);
+    snapshot.start();
+    snapshot.stop();
+
+    assertThat(snapshot.isEnabled()).isFalse();
+    verifyNoInteractions(projectSearchCache, taskExistenceCache);
+    assertThat(Files.exists(pluginData.resolve("caches.json"))).isFalse();
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    ProjectSearch project = new ProjectSearch("PHID-PROJ-foo", 2, "Foo Bar", "foo_bar");
+    when(projectSearchCache.asMap()).thenReturn(ImmutableMap.of("foo bar", project));
+    when(taskExistenceCache.getExisting()).thenReturn(ImmutableSet.of(4711, 4712));
+    createSnapshot(conduit, null).save();
+
+    Conduit restarted = mockConduit();
+    createSnapshot(restarted, null).load();
+
+    ArgumentCaptor<ProjectSearch> loaded = ArgumentCaptor.forClass(ProjectSearch.class);
+    verify(restarted.getProjectSearchCache()).put(eq("foo bar"), loaded.capture());
+    assertThat(loaded.getValue().getPhid()).isEqualTo("PHID-PROJ-foo");
+    assertThat(loaded.getValue().getName()).isEqualTo("Foo Bar");
+    assertThat(loaded.getValue().getSlug()).isEqualTo("foo_bar");
+    verify(restarted.getTaskExistenceCache()).put(4711, true);
+    verify(restarted.getTaskExistenceCache()).put(4712, true);
+    assertLogMessageContains("Loaded 1 project name(s) and 2 task(s)");
+  }
+
+  @Test
+  public void testSnapshotPerServer() throws Exception {
+    when(taskExistenceCache.getExisting()).thenReturn(ImmutableSet.of(4711));
+    createSnapshot(conduit, "other").save();
+
+    Conduit restarted = mockConduit();
+    createSnapshot(restarted, null).load();
+
+    assertThat(Files.exists(pluginData.resolve("caches-other.json"))).isTrue();
+    verify(restarted.getTaskExistenceCache(), never()).put(anyInt(), eq(true));
+  }
+
+  @Test
+  public void testStaleSnapshotIgnored() throws Exception {
+    serverConfig.setString("its-phabricator", null, "cacheSnapshotMaxAge", "1h");
+    Files.write(
+        pluginData.resolve("caches.json"), "{\"created\":1,\"tasks\":[4711]}".getBytes(UTF_8));
+
+    createSnapshot(conduit, null).load();
+
+    verify(taskExistenceCache, never()).put(anyInt(), eq(true));
+    assertLogMessageContains("Ignoring the cache snapshot");
+  }
+
+  @Test
+  public void testCorruptSnapshotIgnored() throws Exception {
+    Files.write(pluginData.resolve("caches.json"), "{\"created\":".getBytes(UTF_8));
+
+    createSnapshot(conduit, null).load();
+
+    verify(projectSearchCache, never()).put(anyString(), any());
+    assertLogMessageContains("Could not read the cache snapshot");
+  }
+
+  @Test
+  public void testMissingSnapshotIgnored() throws Exception {
+    createSnapshot(conduit, null).load();
+
+    verify(projectSearchCache, never()).put(anyString(), any());
+    verify(taskExistenceCache, never()).put(anyInt(), eq(true));
+  }
+
+  @Test
+  public void testWrittenPeriodicallyAndOnStop() throws Exception {
+    serverConfig.setString("its-phabricator", null, "cacheSnapshotInterval", "10ms");
+    when(taskExistenceCache.getExisting()).thenReturn(ImmutableSet.of(4711));
+    snapshot = createSnapshot(conduit, null);
+    snapshot.start();
+
+    verify(taskExistenceCache, timeout(5000).atLeast(2)).getExisting();
+    snapshot.stop();
+    snapshot = null;
+
+    assertThat(new String(Files.readAllBytes(pluginData.resolve("caches.json")), UTF_8))
+        .contains("4711");
+  }
+
+  private CacheSnapshot createSnapshot(Conduit conduit, String server) {
+    return new CacheSnapshot("its-phabricator", serverConfig, pluginData, conduit, server);
+  }
+
+  private static Conduit mockConduit() {
+    Conduit conduit = mock(Conduit.class);
+    ProjectSearchCache projectSearchCache = mock(ProjectSearchCache.class);
+    TaskExistenceCache taskExistenceCache = mock(TaskExistenceCache.class);
+    when(conduit.getProjectSearchCache()).thenReturn(projectSearchCache);
+    when(conduit.getTaskExistenceCache()).thenReturn(taskExistenceCache);
+    return conduit;
+  }
+}
@@ -0,0 +1,107 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.googlesource.gerrit.plugins.its.phabricator;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import com.googlesource.gerrit.plugins.its.base.testutil.LoggingMockingTestCase;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.Conduit;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.ConduitException;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.results.ConduitPing;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.lib.Config;
+import org.junit.After;
+import org.junit.Test;
+
+public class ConnectionWarmerTest extends LoggingMockingTestCase {
+  private Conduit conduit;
+  private Config serverConfig;
+  private ConnectionWarmer warmer;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    conduit = mock(Conduit.class);
+    serverConfig = new Config();
+    serverConfig.setInt("its-phabricator", null, "connectionWarmup", 3);
+  }
+
+  @After
+  public void stopWarmer() {
+    if (warmer != null) {
+      warmer.stop();
+    }
+  }
+
+  @Test
+  public void testDisabledByDefault() throws Exception {
+    warmer = new ConnectionWarmer("its-phabricator", new Config(), conduit);
+    warmer.start();
+
+    assertThat(warmer.isEnabled()).isFalse();
+    verifyNoInteractions(conduit);
+  }
+
+  @Test
+  public void testPingsConcurrently() throws Exception {
+    CountDownLatch running = new CountDownLatch(3);
+    when(conduit.conduitPing())
+        .thenAnswer(
+            invocation -> {
+              // Only returns once all pings are running at the same time.
+              running.countDown();
+              running.await(5, TimeUnit.SECONDS);
+              return mock(ConduitPing.class);
+            });
+    warmer = createWarmer();
+    warmer.start();
+
+    verify(conduit, timeout(5000).times(3)).conduitPing();
+    assertThat(running.await(5, TimeUnit.SECONDS)).isTrue();
+    waitForLogMessage("Opened 3 connection(s)");
+  }
+
+  @Test
+  public void testFailureLogged() throws Exception {
+    when(conduit.conduitPing()).thenThrow(new ConduitException("Connection refused"));
+    warmer = createWarmer();
+    warmer.start();
+
+    verify(conduit, timeout(5000).times(3)).conduitPing();
+    waitForLogMessage("Opened 0 connection(s)");
+    assertLogMessageContains("Could not open a connection to Phabricator");
+  }
+
+  private ConnectionWarmer createWarmer() {
+    return new ConnectionWarmer("its-phabricator", serverConfig, conduit);
+  }
+
+  private void waitForLogMessage(String needle) throws InterruptedException {
+    for (int i = 0; i < 500; i++) {
+      try {
+        assertLogMessageContains(needle);
+        return;
+      } catch (AssertionError e) {
+        Thread.sleep(10);
+      }
+    }
+    assertLogMessageContains(needle);
+  }
+}
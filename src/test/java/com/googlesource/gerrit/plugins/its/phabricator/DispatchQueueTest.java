@@ -0,0 +1,209 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.googlesource.gerrit.plugins.its.phabricator;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.gerrit.testing.GerritJUnit.assertThrows;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.googlesource.gerrit.plugins.its.base.testutil.LoggingMockingTestCase;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import org.eclipse.jgit.lib.Config;
+import org.junit.After;
+import org.junit.Test;
+
+public class DispatchQueueTest extends LoggingMockingTestCase {
+  private Config serverConfig;
+  private CountDownLatch release;
+  private List<String> ran;
+  private DispatchQueue queue;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    serverConfig = new Config();
+    serverConfig.setBoolean("its-phabricator", null, "async", true);
+    serverConfig.setInt("its-phabricator", null, "asyncThreads", 1);
+    serverConfig.setInt("its-phabricator", null, "asyncQueueSize", 1);
+    release = new CountDownLatch(1);
+    ran = new CopyOnWriteArrayList<>();
+  }
+
+  @After
+  public void stopQueue() {
+    release.countDown();
+    if (queue != null) {
+      queue.stop();
+    }
+  }
+
+  @Test
+  public void testDisabledByDefault() throws Exception {
+    queue = new DispatchQueue("its-phabricator", new Config(), createMetrics());
+
+    assertThat(queue.isEnabled()).isFalse();
+  }
+
+  @Test
+  public void testRunsInOrder() throws Exception {
+    queue = createQueue("block");
+
+    queue.execute(4711, () -> ran.add("first"));
+    queue.execute(4711, () -> ran.add("second"));
+    queue.execute(4711, () -> ran.add("third"));
+    queue.stop();
+
+    assertThat(ran).containsExactly("first", "second", "third").inOrder();
+  }
+
+  @Test
+  public void testDifferentTasksRunInParallel() throws Exception {
+    serverConfig.setInt("its-phabricator", null, "asyncThreads", 2);
+    queue = createQueue("reject");
+    blockWorker();
+
+    CountDownLatch otherTaskRan = new CountDownLatch(1);
+    queue.execute(4712, otherTaskRan::countDown);
+
+    assertThat(otherTaskRan.await(5, SECONDS)).isTrue();
+  }
+
+  @Test
+  public void testReject() throws Exception {
+    queue = createQueue("reject");
+    CountDownLatch started = blockWorker();
+    queue.execute(4711, () -> ran.add("queued"));
+
+    assertThrows(
+        RejectedExecutionException.class, () -> queue.execute(4711, () -> ran.add("rejected")));
+
+    release.countDown();
+    queue.stop();
+    assertThat(started.getCount()).isEqualTo(0);
+    assertThat(ran).containsExactly("blocker", "queued").inOrder();
+  }
+
+  @Test
+  public void testDropOldest() throws Exception {
+    queue = createQueue("drop_oldest");
+    blockWorker();
+    queue.execute(4711, () -> ran.add("dropped"));
+    queue.execute(4711, () -> ran.add("kept"));
+
+    release.countDown();
+    queue.stop();
+    assertThat(ran).containsExactly("blocker", "kept").inOrder();
+  }
+
+  @Test
+  public void testBlockedWorkNotLostOnStop() throws Exception {
+    queue = createQueue("block");
+    blockWorker();
+    queue.execute(4711, () -> ran.add("queued"));
+    CompletableFuture<Void> late = new CompletableFuture<>();
+    Thread caller =
+        new Thread(
+            () -> {
+              try {
+                queue.execute(4711, () -> ran.add("late"));
+                late.complete(null);
+              } catch (RejectedExecutionException e) {
+                late.completeExceptionally(e);
+              }
+            });
+    caller.start();
+    Thread stopper = new Thread(queue::stop);
+    stopper.start();
+
+    release.countDown();
+    stopper.join(5000);
+    caller.join(5000);
+
+    // The blocked work either got rejected, or it ran before the queue stopped.
+    assertThat(late.isDone()).isTrue();
+    assertThat(late.isCompletedExceptionally() || ran.contains("late")).isTrue();
+  }
+
+  @Test
+  public void testQueueDepth() throws Exception {
+    queue = createQueue("reject");
+    blockWorker();
+    queue.execute(4711, () -> ran.add("queued"));
+
+    assertThat(queue.getQueueDepth()).isEqualTo(1);
+  }
+
+  @Test
+  public void testPlatformThreadsByDefault() throws Exception {
+    queue = createQueue("block");
+
+    assertThat(queue.getThreadMode()).isEqualTo(DispatchQueue.ThreadMode.PLATFORM);
+    assertThat(runOnQueue().getName()).startsWith("its-phabricator-dispatch-");
+  }
+
+  @Test
+  public void testVirtualThreadMode() throws Exception {
+    serverConfig.setString("its-phabricator", null, "asyncThreadMode", "virtual");
+    queue = createQueue("block");
+
+    Thread thread = runOnQueue();
+    assertThat(thread.getName()).startsWith("its-phabricator-dispatch-");
+    if (Runtime.version().feature() >= 21) {
+      assertThat(queue.getThreadMode()).isEqualTo(DispatchQueue.ThreadMode.VIRTUAL);
+      assertThat(Thread.class.getMethod("isVirtual").invoke(thread)).isEqualTo(true);
+    } else {
+      // Falls back to platform threads.
+      assertThat(queue.getThreadMode()).isEqualTo(DispatchQueue.ThreadMode.PLATFORM);
+      assertLogMessageContains("Virtual threads are not available");
+    }
+  }
+
+  /** Gives the thread that queued work runs on */
+  private Thread runOnQueue() throws Exception {
+    CompletableFuture<Thread> thread = new CompletableFuture<>();
+    queue.execute(4711, () -> thread.complete(Thread.currentThread()));
+    return thread.get(5, SECONDS);
+  }
+
+  private CountDownLatch blockWorker() throws InterruptedException {
+    CountDownLatch started = new CountDownLatch(1);
+    queue.execute(
+        4711,
+        () -> {
+          started.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          ran.add("blocker");
+        });
+    assertThat(started.await(5, SECONDS)).isTrue();
+    return started;
+  }
+
+  private DispatchQueue createQueue(String overflowPolicy) {
+    serverConfig.setString("its-phabricator", null, "asyncOverflowPolicy", overflowPolicy);
+    return new DispatchQueue("its-phabricator", serverConfig, createMetrics());
+  }
+
+  private DispatchQueue.Metrics createMetrics() {
+    return new DispatchQueue.Metrics(new DisabledMetricMaker());
+  }
+}
@@ -0,0 +1,161 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.googlesource.gerrit.plugins.its.phabricator;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import com.googlesource.gerrit.plugins.its.base.testutil.LoggingMockingTestCase;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.Conduit;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.ConduitException;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.results.ConduitPing;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.eclipse.jgit.lib.Config;
+import org.junit.After;
+import org.junit.Test;
+
+public class HealthProberTest extends LoggingMockingTestCase {
+  private Conduit conduit;
+  private ConduitPing ping;
+  private Config serverConfig;
+  private HealthProber prober;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    conduit = mock(Conduit.class);
+    ping = mock(ConduitPing.class);
+    when(ping.getHostname()).thenReturn("phab.example.org");
+    serverConfig = new Config();
+    serverConfig.setBoolean("its-phabricator", null, "healthCheck", true);
+  }
+
+  @After
+  public void stopProber() {
+    if (prober != null) {
+      prober.stop();
+    }
+  }
+
+  @Test
+  public void testDisabledByDefault() throws Exception {
+    prober = new HealthProber("its-phabricator", new Config(), conduit);
+    prober.start();
+
+    assertThat(prober.isEnabled()).isFalse();
+    assertThat(prober.getHealth().getStatus()).isEqualTo("unknown");
+    assertThat(prober.getHealth().isReachable()).isNull();
+    verifyNoInteractions(conduit);
+  }
+
+  @Test
+  public void testHealthy() throws Exception {
+    when(conduit.conduitPing()).thenReturn(ping);
+    when(conduit.isAuthenticated()).thenReturn(true);
+    prober = createProber();
+
+    prober.probe();
+
+    HealthProber.Health health = prober.getHealth();
+    assertThat(health.getStatus()).isEqualTo("ok");
+    assertThat(health.isReachable()).isTrue();
+    assertThat(health.isAuthenticated()).isTrue();
+    assertThat(health.getHostname()).isEqualTo("phab.example.org");
+    assertThat(health.getLatencyMillis()).isNotNull();
+    assertThat(health.getSamples()).isEqualTo(1);
+    assertThat(health.getLastCheck()).isNotNull();
+    assertThat(health.getError()).isNull();
+    assertLogMessageContains("healthy");
+  }
+
+  @Test
+  public void testUnreachable() throws Exception {
+    when(conduit.conduitPing()).thenThrow(new ConduitException("Connection refused"));
+    prober = createProber();
+
+    prober.probe();
+
+    HealthProber.Health health = prober.getHealth();
+    assertThat(health.getStatus()).isEqualTo("unreachable");
+    assertThat(health.isReachable()).isFalse();
+    assertThat(health.isAuthenticated()).isNull();
+    assertThat(health.getLatencyMillis()).isNull();
+    assertThat(health.getP50Millis()).isNull();
+    assertThat(health.getError()).isEqualTo("Connection refused");
+    verify(conduit, never()).isAuthenticated();
+    assertLogMessageContains("unreachable");
+  }
+
+  @Test
+  public void testUnauthenticated() throws Exception {
+    when(conduit.conduitPing()).thenReturn(ping);
+    when(conduit.isAuthenticated()).thenReturn(false);
+    prober = createProber();
+
+    prober.probe();
+
+    HealthProber.Health health = prober.getHealth();
+    assertThat(health.getStatus()).isEqualTo("unauthenticated");
+    assertThat(health.isReachable()).isTrue();
+    assertThat(health.isAuthenticated()).isFalse();
+    assertLogMessageContains("unauthenticated");
+  }
+
+  @Test
+  public void testPercentilesOverWindow() throws Exception {
+    serverConfig.setInt("its-phabricator", null, "healthCheckWindow", 50);
+    AtomicInteger pings = new AtomicInteger();
+    when(conduit.conduitPing())
+        .thenAnswer(
+            invocation -> {
+              // Every 25th ping is slow.
+              if (pings.incrementAndGet() % 25 == 0) {
+                Thread.sleep(100);
+              }
+              return ping;
+            });
+    when(conduit.isAuthenticated()).thenReturn(true);
+    prober = createProber();
+
+    for (int i = 0; i < 60; i++) {
+      prober.probe();
+    }
+
+    HealthProber.Health health = prober.getHealth();
+    assertThat(health.getSamples()).isEqualTo(50);
+    assertThat(health.getP50Millis()).isLessThan(100L);
+    assertThat(health.getP99Millis()).isAtLeast(100L);
+    assertLogMessageContains("healthy");
+  }
+
+  @Test
+  public void testProbesInBackground() throws Exception {
+    serverConfig.setString("its-phabricator", null, "healthCheckInterval", "10ms");
+    when(conduit.conduitPing()).thenReturn(ping);
+    when(conduit.isAuthenticated()).thenReturn(true);
+    prober = createProber();
+    prober.start();
+
+    verify(conduit, timeout(5000).atLeast(3)).conduitPing();
+  }
+
+  private HealthProber createProber() {
+    return new HealthProber("its-phabricator", serverConfig, conduit);
+  }
+}
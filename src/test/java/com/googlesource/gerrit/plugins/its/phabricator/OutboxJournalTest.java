@@ -0,0 +1,262 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.googlesource.gerrit.plugins.its.phabricator;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.gerrit.testing.GerritJUnit.assertThrows;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.APPEND;
+
+import com.googlesource.gerrit.plugins.its.base.testutil.LoggingMockingTestCase;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class OutboxJournalTest extends LoggingMockingTestCase {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void testAppendAndRead() throws Exception {
+    Path directory = temporaryFolder.newFolder().toPath();
+    try (OutboxJournal journal = new OutboxJournal(directory, 1024)) {
+      assertThat(journal.append(bytes("foo"))).isEqualTo(1);
+      assertThat(journal.append(bytes("bar"))).isEqualTo(2);
+      assertThat(journal.append(bytes("baz"))).isEqualTo(3);
+
+      assertThat(read(journal, 2)).containsExactly("1:foo", "2:bar").inOrder();
+      assertThat(read(journal, 10)).containsExactly("3:baz");
+      assertThat(read(journal, 10)).isEmpty();
+      assertThat(journal.getPending()).isEqualTo(3);
+    }
+  }
+
+  @Test
+  public void testSecondOpenFails() throws Exception {
+    Path directory = temporaryFolder.newFolder().toPath();
+    try (OutboxJournal journal = new OutboxJournal(directory, 1024)) {
+      journal.append(bytes("foo"));
+
+      assertThrows(OutboxJournal.LockedException.class, () -> new OutboxJournal(directory, 1024));
+    }
+    try (OutboxJournal journal = new OutboxJournal(directory, 1024)) {
+      assertThat(read(journal, 10)).containsExactly("1:foo");
+    }
+  }
+
+  @Test
+  public void testReplayAfterReopen() throws Exception {
+    Path directory = temporaryFolder.newFolder().toPath();
+    try (OutboxJournal journal = new OutboxJournal(directory, 1024)) {
+      journal.append(bytes("foo"));
+      journal.append(bytes("bar"));
+      journal.append(bytes("baz"));
+      read(journal, 10);
+      journal.acknowledge(1);
+    }
+
+    try (OutboxJournal journal = new OutboxJournal(directory, 1024)) {
+      assertThat(journal.getPending()).isEqualTo(2);
+      assertThat(read(journal, 10)).containsExactly("2:bar", "3:baz").inOrder();
+
+      assertThat(journal.append(bytes("qux"))).isEqualTo(4);
+      assertThat(read(journal, 10)).containsExactly("4:qux");
+    }
+  }
+
+  @Test
+  public void testRecordsSpanSegments() throws Exception {
+    Path directory = temporaryFolder.newFolder().toPath();
+    try (OutboxJournal journal = new OutboxJournal(directory, 20)) {
+      for (int i = 1; i <= 10; i++) {
+        journal.append(bytes("record" + i));
+      }
+
+      // Each segment fills up after two records.
+      assertThat(journal.getSegmentCount()).isEqualTo(5);
+      assertThat(read(journal, 3)).containsExactly("1:record1", "2:record2", "3:record3");
+      assertThat(read(journal, 100)).hasSize(7);
+    }
+  }
+
+  @Test
+  public void testAcknowledgedSegmentsDeleted() throws Exception {
+    Path directory = temporaryFolder.newFolder().toPath();
+    try (OutboxJournal journal = new OutboxJournal(directory, 20)) {
+      for (int i = 1; i <= 6; i++) {
+        journal.append(bytes("record" + i));
+      }
+      read(journal, 100);
+
+      journal.acknowledge(3);
+
+      assertThat(journal.getSegmentCount()).isEqualTo(2);
+      assertThat(segmentFiles(directory)).hasSize(2);
+
+      journal.acknowledge(6);
+
+      assertThat(journal.getSegmentCount()).isEqualTo(0);
+      assertThat(segmentFiles(directory)).isEmpty();
+      assertThat(journal.append(bytes("record7"))).isEqualTo(7);
+      assertThat(read(journal, 100)).containsExactly("7:record7");
+    }
+  }
+
+  @Test
+  public void testActiveSegmentKeptUntilFull() throws Exception {
+    Path directory = temporaryFolder.newFolder().toPath();
+    try (OutboxJournal journal = new OutboxJournal(directory, 1024)) {
+      journal.append(bytes("foo"));
+      read(journal, 100);
+
+      journal.acknowledge(1);
+
+      assertThat(journal.getPending()).isEqualTo(0);
+      assertThat(journal.getSegmentCount()).isEqualTo(1);
+    }
+
+    try (OutboxJournal journal = new OutboxJournal(directory, 1024)) {
+      assertThat(read(journal, 100)).isEmpty();
+      assertThat(journal.append(bytes("bar"))).isEqualTo(2);
+      assertThat(read(journal, 100)).containsExactly("2:bar");
+    }
+  }
+
+  @Test
+  public void testTornRecordTruncated() throws Exception {
+    Path directory = temporaryFolder.newFolder().toPath();
+    try (OutboxJournal journal = new OutboxJournal(directory, 1024)) {
+      journal.append(bytes("foo"));
+      journal.append(bytes("bar"));
+    }
+    Path segment = segmentFiles(directory).get(0);
+    long intactSize = Files.size(segment);
+    // A record header announcing more bytes than got written
+    Files.write(segment, new byte[] {0, 0, 0, 42, 1, 2, 3, 4, 'x'}, APPEND);
+
+    try (OutboxJournal journal = new OutboxJournal(directory, 1024)) {
+      assertThat(Files.size(segment)).isEqualTo(intactSize);
+      assertThat(read(journal, 100)).containsExactly("1:foo", "2:bar").inOrder();
+      assertThat(journal.append(bytes("baz"))).isEqualTo(3);
+      assertThat(read(journal, 100)).containsExactly("3:baz");
+    }
+  }
+
+  @Test
+  public void testCorruptRecordTruncated() throws Exception {
+    Path directory = temporaryFolder.newFolder().toPath();
+    try (OutboxJournal journal = new OutboxJournal(directory, 1024)) {
+      journal.append(bytes("foo"));
+      journal.append(bytes("bar"));
+    }
+    Path segment = segmentFiles(directory).get(0);
+    byte[] content = Files.readAllBytes(segment);
+    content[content.length - 1] ^= 1;
+    Files.write(segment, content);
+
+    try (OutboxJournal journal = new OutboxJournal(directory, 1024)) {
+      assertThat(read(journal, 100)).containsExactly("1:foo");
+      assertThat(journal.append(bytes("baz"))).isEqualTo(2);
+    }
+  }
+
+  @Test
+  public void testAppendsWorkAfterInterrupt() throws Exception {
+    Path directory = temporaryFolder.newFolder().toPath();
+    try (OutboxJournal journal = new OutboxJournal(directory, 1024)) {
+      journal.append(bytes("foo"));
+
+      Thread.currentThread().interrupt();
+      try {
+        assertThrows(ClosedByInterruptException.class, () -> journal.append(bytes("bar")));
+      } finally {
+        Thread.interrupted();
+      }
+
+      assertThat(journal.append(bytes("baz"))).isEqualTo(2);
+      assertThat(read(journal, 10)).containsExactly("1:foo", "2:baz").inOrder();
+    }
+  }
+
+  @Test
+  public void testConcurrentAppends() throws Exception {
+    Path directory = temporaryFolder.newFolder().toPath();
+    int threads = 8;
+    int appendsPerThread = 50;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try (OutboxJournal journal = new OutboxJournal(directory, 4096)) {
+      List<Future<?>> appends = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        int thread = t;
+        appends.add(
+            executor.submit(
+                () -> {
+                  for (int i = 0; i < appendsPerThread; i++) {
+                    journal.append(bytes(thread + "-" + i));
+                  }
+                  return null;
+                }));
+      }
+      for (Future<?> append : appends) {
+        append.get();
+      }
+
+      List<String> records = read(journal, threads * appendsPerThread + 1);
+      assertThat(records).hasSize(threads * appendsPerThread);
+      for (int t = 0; t < threads; t++) {
+        String prefix = ":" + t + "-";
+        List<String> ofThread =
+            records.stream()
+                .filter(r -> r.contains(prefix))
+                .map(r -> r.substring(r.indexOf(prefix) + 1))
+                .collect(Collectors.toList());
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < appendsPerThread; i++) {
+          expected.add(t + "-" + i);
+        }
+        assertThat(ofThread).containsExactlyElementsIn(expected).inOrder();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static byte[] bytes(String payload) {
+    return payload.getBytes(UTF_8);
+  }
+
+  private static List<String> read(OutboxJournal journal, int max) throws Exception {
+    return journal.readNext(max).stream()
+        .map(r -> r.getSequence() + ":" + new String(r.getPayload(), UTF_8))
+        .collect(Collectors.toList());
+  }
+
+  private static List<Path> segmentFiles(Path directory) throws Exception {
+    List<Path> files = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.seg")) {
+      stream.forEach(files::add);
+    }
+    files.sort(null);
+    return files;
+  }
+}
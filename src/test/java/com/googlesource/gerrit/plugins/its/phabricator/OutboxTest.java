@@ -0,0 +1,340 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.googlesource.gerrit.plugins.its.phabricator;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.gerrit.testing.GerritJUnit.assertThrows;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import com.googlesource.gerrit.plugins.its.base.testutil.LoggingMockingTestCase;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.Conduit;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.ConduitErrorException;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.ConduitException;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.ManiphestTransaction;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.UnknownProjectException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import org.eclipse.jgit.lib.Config;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.InOrder;
+
+public class OutboxTest extends LoggingMockingTestCase {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Conduit conduit;
+  private Config serverConfig;
+  private Path pluginData;
+  private Outbox outbox;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    conduit = mock(Conduit.class);
+    serverConfig = new Config();
+    serverConfig.setBoolean("its-phabricator", null, "outbox", true);
+    serverConfig.setString("its-phabricator", null, "outboxRetryInterval", "10ms");
+    pluginData = temporaryFolder.newFolder().toPath();
+  }
+
+  @After
+  public void stopOutbox() {
+    if (outbox != null) {
+      outbox.stop();
+    }
+  }
+
+  @Test
+  public void testDisabledByDefault() throws Exception {
+    outbox = new Outbox("its-phabricator", new Config(), pluginData, conduit, null);
+    outbox.start();
+
+    assertThat(outbox.isEnabled()).isFalse();
+    assertThrows(IOException.class, () -> outbox.add(4711, ImmutableList.of(comment("foo"))));
+  }
+
+  @Test
+  public void testEditsSentInOrder() throws Exception {
+    CountDownLatch blocked = blockFirstEdit();
+    outbox = createOutbox();
+
+    outbox.add(4711, ImmutableList.of(comment("foo")));
+    outbox.add(4712, ImmutableList.of(comment("bar")));
+    outbox.add(4711, ImmutableList.of(comment("baz")));
+    blocked.countDown();
+
+    InOrder inOrder = inOrder(conduit);
+    inOrder.verify(conduit, timeout(5000)).maniphestEdit(4711, ImmutableList.of(comment("foo")));
+    inOrder.verify(conduit, timeout(5000)).maniphestEdit(4712, ImmutableList.of(comment("bar")));
+    inOrder.verify(conduit, timeout(5000)).maniphestEdit(4711, ImmutableList.of(comment("baz")));
+    verifyNoMoreInteractions(conduit);
+  }
+
+  @Test
+  public void testConsecutiveEditsForSameTaskMerged() throws Exception {
+    CountDownLatch blocked = blockFirstEdit();
+    outbox = createOutbox();
+
+    outbox.add(4710, ImmutableList.of(comment("first")));
+    outbox.add(4711, ImmutableList.of(comment("foo")));
+    outbox.add(4711, ImmutableList.of(ManiphestTransaction.addProject("bar")));
+    blocked.countDown();
+
+    verify(conduit, timeout(5000))
+        .maniphestEdit(
+            4711, ImmutableList.of(comment("foo"), ManiphestTransaction.addProject("bar")));
+  }
+
+  @Test
+  public void testUnavailablePhabricatorRetried() throws Exception {
+    when(conduit.maniphestEdit(anyInt(), anyList()))
+        .thenThrow(new ConduitException())
+        .thenThrow(new ConduitException())
+        .thenReturn(null);
+    outbox = createOutbox();
+
+    outbox.add(4711, ImmutableList.of(comment("foo")));
+
+    verify(conduit, timeout(5000).times(3)).maniphestEdit(4711, ImmutableList.of(comment("foo")));
+    waitForPending(0);
+  }
+
+  @Test
+  public void testRejectedEditDropped() throws Exception {
+    when(conduit.maniphestEdit(4711, ImmutableList.of(comment("foo"))))
+        .thenThrow(mock(ConduitErrorException.class));
+    outbox = createOutbox();
+
+    outbox.add(4711, ImmutableList.of(comment("foo")));
+    outbox.add(4712, ImmutableList.of(comment("bar")));
+
+    verify(conduit, timeout(5000)).maniphestEdit(4712, ImmutableList.of(comment("bar")));
+    waitForPending(0);
+  }
+
+  @Test
+  public void testEditOfUnknownProjectDropped() throws Exception {
+    when(conduit.maniphestEdit(4711, ImmutableList.of(ManiphestTransaction.addProject("x"))))
+        .thenThrow(new UnknownProjectException("x"));
+    outbox = createOutbox();
+
+    outbox.add(4711, ImmutableList.of(ManiphestTransaction.addProject("x")));
+    outbox.add(4712, ImmutableList.of(comment("bar")));
+
+    verify(conduit, timeout(5000)).maniphestEdit(4712, ImmutableList.of(comment("bar")));
+    waitForPending(0);
+    verify(conduit).maniphestEdit(4711, ImmutableList.of(ManiphestTransaction.addProject("x")));
+  }
+
+  @Test
+  public void testFailingEditDropped() throws Exception {
+    when(conduit.maniphestEdit(4711, ImmutableList.of(comment("foo"))))
+        .thenThrow(new NullPointerException());
+    outbox = createOutbox();
+
+    outbox.add(4711, ImmutableList.of(comment("foo")));
+    outbox.add(4712, ImmutableList.of(comment("bar")));
+
+    verify(conduit, timeout(5000)).maniphestEdit(4712, ImmutableList.of(comment("bar")));
+    waitForPending(0);
+    verify(conduit).maniphestEdit(4711, ImmutableList.of(comment("foo")));
+  }
+
+  @Test
+  public void testUnsentEditsReplayedAfterRestart() throws Exception {
+    when(conduit.maniphestEdit(anyInt(), anyList())).thenThrow(new ConduitException());
+    serverConfig.setString("its-phabricator", null, "outboxRetryInterval", "1h");
+    outbox = createOutbox();
+    outbox.add(4711, ImmutableList.of(comment("foo")));
+    verify(conduit, timeout(5000)).maniphestEdit(4711, ImmutableList.of(comment("foo")));
+    outbox.stop();
+
+    Conduit restartedConduit = mock(Conduit.class);
+    outbox = new Outbox("its-phabricator", serverConfig, pluginData, restartedConduit, null);
+    outbox.start();
+
+    verify(restartedConduit, timeout(5000)).maniphestEdit(4711, ImmutableList.of(comment("foo")));
+    waitForPending(0);
+  }
+
+  @Test
+  public void testInvalidRecordDoesNotAcknowledgeEarlierEdits() throws Exception {
+    try (OutboxJournal journal =
+        new OutboxJournal(pluginData.resolve(Outbox.DIRECTORY), 16 * 1024 * 1024)) {
+      journal.append(
+          "{\"taskId\":4711,\"transactions\":[{\"type\":\"comment\",\"value\":\"foo\"}]}"
+              .getBytes(UTF_8));
+      journal.append("not an edit".getBytes(UTF_8));
+    }
+    when(conduit.maniphestEdit(anyInt(), anyList())).thenThrow(new ConduitException());
+    serverConfig.setString("its-phabricator", null, "outboxRetryInterval", "1h");
+    outbox = createOutbox();
+    verify(conduit, timeout(5000)).maniphestEdit(4711, ImmutableList.of(comment("foo")));
+    outbox.stop();
+
+    Conduit restartedConduit = mock(Conduit.class);
+    outbox = new Outbox("its-phabricator", serverConfig, pluginData, restartedConduit, null);
+    outbox.start();
+
+    verify(restartedConduit, timeout(5000)).maniphestEdit(4711, ImmutableList.of(comment("foo")));
+    waitForPending(0);
+  }
+
+  @Test
+  public void testStopEndsSendingAfterRunningCall() throws Exception {
+    CountDownLatch blocked = blockFirstEdit();
+    outbox = createOutbox();
+    outbox.add(4711, ImmutableList.of(comment("foo")));
+    outbox.add(4712, ImmutableList.of(comment("bar")));
+    verify(conduit, timeout(5000)).maniphestEdit(4711, ImmutableList.of(comment("foo")));
+
+    Thread stopping = new Thread(outbox::stop);
+    stopping.start();
+    Thread.sleep(100);
+    blocked.countDown();
+    stopping.join(5000);
+
+    verify(conduit, never()).maniphestEdit(4712, ImmutableList.of(comment("bar")));
+    Conduit restartedConduit = mock(Conduit.class);
+    outbox = new Outbox("its-phabricator", serverConfig, pluginData, restartedConduit, null);
+    outbox.start();
+
+    verify(restartedConduit, timeout(5000)).maniphestEdit(4712, ImmutableList.of(comment("bar")));
+    waitForPending(0);
+  }
+
+  @Test
+  public void testSentEditsNotReplayedAfterRestart() throws Exception {
+    outbox = createOutbox();
+    outbox.add(4711, ImmutableList.of(comment("foo")));
+    verify(conduit, timeout(5000)).maniphestEdit(4711, ImmutableList.of(comment("foo")));
+    waitForPending(0);
+    outbox.stop();
+
+    Conduit restartedConduit = mock(Conduit.class);
+    outbox = new Outbox("its-phabricator", serverConfig, pluginData, restartedConduit, null);
+    outbox.start();
+    outbox.stop();
+
+    verifyNoInteractions(restartedConduit);
+  }
+
+  @Test
+  public void testJournalHandedOverOnReload() throws Exception {
+    when(conduit.maniphestEdit(anyInt(), anyList())).thenThrow(new ConduitException());
+    serverConfig.setString("its-phabricator", null, "outboxRetryInterval", "1h");
+    outbox = createOutbox();
+    outbox.add(4711, ImmutableList.of(comment("foo")));
+    verify(conduit, timeout(5000)).maniphestEdit(4711, ImmutableList.of(comment("foo")));
+
+    // The new instance starts before the old one stops.
+    Conduit reloadedConduit = mock(Conduit.class);
+    Outbox reloaded =
+        new Outbox("its-phabricator", serverConfig, pluginData, reloadedConduit, null);
+    reloaded.start();
+    try {
+      Thread.sleep(200);
+      verifyNoInteractions(reloadedConduit);
+      outbox.stop();
+
+      reloaded.add(4712, ImmutableList.of(comment("bar")));
+      InOrder inOrder = inOrder(reloadedConduit);
+      inOrder
+          .verify(reloadedConduit, timeout(5000))
+          .maniphestEdit(4711, ImmutableList.of(comment("foo")));
+      inOrder
+          .verify(reloadedConduit, timeout(5000))
+          .maniphestEdit(4712, ImmutableList.of(comment("bar")));
+    } finally {
+      reloaded.stop();
+    }
+  }
+
+  @Test
+  public void testJournalInUseFailsAfterTimeout() throws Exception {
+    serverConfig.setString("its-phabricator", null, "outboxLockTimeout", "10ms");
+    outbox = createOutbox();
+    outbox.add(4711, ImmutableList.of(comment("foo")));
+
+    Outbox second = new Outbox("its-phabricator", serverConfig, pluginData, conduit, null);
+    second.start();
+    try {
+      assertThrows(IOException.class, () -> second.add(4712, ImmutableList.of(comment("bar"))));
+    } finally {
+      second.stop();
+    }
+  }
+
+  @Test
+  public void testUnsentEditsNotReplayedForOtherServer() throws Exception {
+    when(conduit.maniphestEdit(anyInt(), anyList())).thenThrow(new ConduitException());
+    serverConfig.setString("its-phabricator", null, "outboxRetryInterval", "1h");
+    outbox = createOutbox();
+    outbox.add(4711, ImmutableList.of(comment("foo")));
+    verify(conduit, timeout(5000)).maniphestEdit(4711, ImmutableList.of(comment("foo")));
+    outbox.stop();
+
+    Conduit otherConduit = mock(Conduit.class);
+    outbox = new Outbox("its-phabricator", serverConfig, pluginData, otherConduit, "other");
+    outbox.start();
+
+    assertThat(outbox.getPending()).isEqualTo(0);
+    outbox.stop();
+    verifyNoInteractions(otherConduit);
+  }
+
+  private Outbox createOutbox() {
+    Outbox outbox = new Outbox("its-phabricator", serverConfig, pluginData, conduit, null);
+    outbox.start();
+    return outbox;
+  }
+
+  /** Holds the first edit back until the returned latch is counted down */
+  private CountDownLatch blockFirstEdit() throws Exception {
+    CountDownLatch latch = new CountDownLatch(1);
+    when(conduit.maniphestEdit(anyInt(), anyList()))
+        .thenAnswer(
+            invocation -> {
+              latch.await();
+              return null;
+            })
+        .thenReturn(null);
+    return latch;
+  }
+
+  private void waitForPending(long pending) throws InterruptedException {
+    for (int i = 0; i < 500 && outbox.getPending() != pending; i++) {
+      Thread.sleep(10);
+    }
+    assertThat(outbox.getPending()).isEqualTo(pending);
+  }
+
+  private static ManiphestTransaction comment(String comment) {
+    return ManiphestTransaction.comment(comment);
+  }
+}
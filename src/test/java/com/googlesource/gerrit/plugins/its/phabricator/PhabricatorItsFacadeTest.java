@@ -16,36 +16,50 @@ package com.googlesource.gerrit.plugins.its.phabricator;
 import static com.google.common.truth.Truth.assertThat;
 import static com.google.gerrit.testing.GerritJUnit.assertThrows;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.extensions.annotations.PluginData;
 import com.google.gerrit.extensions.annotations.PluginName;
 import com.google.gerrit.extensions.config.FactoryModule;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.metrics.MetricMaker;
 import com.google.gerrit.server.config.GerritServerConfig;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
+import com.googlesource.gerrit.plugins.its.base.its.ItsFacade;
 import com.googlesource.gerrit.plugins.its.base.testutil.LoggingMockingTestCase;
 import com.googlesource.gerrit.plugins.its.phabricator.conduit.Conduit;
 import com.googlesource.gerrit.plugins.its.phabricator.conduit.ConduitException;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.ManiphestTransaction;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.results.ConduitPing;
 import com.googlesource.gerrit.plugins.its.phabricator.conduit.results.ManiphestEdit;
-import com.googlesource.gerrit.plugins.its.phabricator.conduit.results.ManiphestSearch;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.file.Path;
 import org.eclipse.jgit.lib.Config;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.ArgumentCaptor;
 
 public class PhabricatorItsFacadeTest extends LoggingMockingTestCase {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
   private Injector injector;
   private Config serverConfig;
   private Conduit conduit;
   private Conduit.Factory conduitFactory;
+  private Path pluginData;
 
   @Test
   public void testCreateLinkForWebUiDifferentUrlAndText() {
@@ -139,38 +153,38 @@ public class PhabricatorItsFacadeTest extends LoggingMockingTestCase {
 
   @Test
   public void testExistsNumberExists() throws Exception {
-    when(conduit.maniphestSearch(4711)).thenReturn(new ManiphestSearch());
+    when(conduit.taskExists(4711)).thenReturn(true);
 
     PhabricatorItsFacade itsFacade = createPhabricatorItsFacade();
     Boolean actual = itsFacade.exists("4711");
 
     assertThat(actual).isTrue();
 
-    verify(conduit).maniphestSearch(4711);
+    verify(conduit).taskExists(4711);
     verifyNoMoreInteractions(conduit);
   }
 
   @Test
   public void testExistsNumberDoesNotExist() throws Exception {
-    when(conduit.maniphestSearch(4711)).thenReturn(null);
+    when(conduit.taskExists(4711)).thenReturn(false);
 
     PhabricatorItsFacade itsFacade = createPhabricatorItsFacade();
     Boolean actual = itsFacade.exists("4711");
 
     assertThat(actual).isFalse();
 
-    verify(conduit).maniphestSearch(4711);
+    verify(conduit).taskExists(4711);
     verifyNoMoreInteractions(conduit);
   }
 
   @Test
   public void testExistsNumberConduitException() throws Exception {
-    when(conduit.maniphestSearch(4711)).thenThrow(new ConduitException());
+    when(conduit.taskExists(4711)).thenThrow(new ConduitException());
 
     PhabricatorItsFacade itsFacade = createPhabricatorItsFacade();
     assertThrows(IOException.class, () -> itsFacade.exists("4711"));
 
-    verify(conduit).maniphestSearch(4711);
+    verify(conduit).taskExists(4711);
     verifyNoMoreInteractions(conduit);
   }
 
@@ -234,8 +248,107 @@ public class PhabricatorItsFacadeTest extends LoggingMockingTestCase {
     verifyNoMoreInteractions(conduit);
   }
 
+  @Test
+  public void testCoalescedEdits() throws Exception {
+    when(serverConfig.getString("its-phabricator", null, "coalesceWindow")).thenReturn("100ms");
+
+    PhabricatorItsFacade itsFacade = createPhabricatorItsFacade();
+    itsFacade.addComment("4711", "foo");
+    itsFacade.performAction("4711", "add-project bar");
+    itsFacade.performAction("4711", "remove-project baz");
+
+    verify(conduit, timeout(5000))
+        .maniphestEdit(
+            4711,
+            ImmutableList.of(
+                ManiphestTransaction.comment("foo"),
+                ManiphestTransaction.addProject("bar"),
+                ManiphestTransaction.removeProject("baz")));
+    verifyNoMoreInteractions(conduit);
+  }
+
+  @Test
+  public void testAsyncAddComment() throws Exception {
+    when(serverConfig.getBoolean("its-phabricator", null, "async", false)).thenReturn(true);
+    when(serverConfig.getInt("its-phabricator", null, "asyncThreads", 4)).thenReturn(1);
+    when(serverConfig.getInt("its-phabricator", null, "asyncQueueSize", 1000)).thenReturn(10);
+    when(serverConfig.getEnum(
+            "its-phabricator", null, "asyncOverflowPolicy", DispatchQueue.OverflowPolicy.BLOCK))
+        .thenReturn(DispatchQueue.OverflowPolicy.BLOCK);
+    when(conduit.maniphestEdit(4711, "bar", null, null)).thenThrow(new ConduitException());
+
+    PhabricatorItsFacade itsFacade = createPhabricatorItsFacade();
+    // Failures of asynchronous calls are only logged
+    itsFacade.addComment("4711", "bar");
+
+    verify(conduit, timeout(5000)).maniphestEdit(4711, "bar", null, null);
+    verifyNoMoreInteractions(conduit);
+  }
+
+  @Test
+  public void testOutboxAddComment() throws Exception {
+    when(serverConfig.getBoolean("its-phabricator", null, "outbox", false)).thenReturn(true);
+    when(conduit.maniphestEdit(anyInt(), anyList()))
+        .thenThrow(new ConduitException())
+        .thenReturn(null);
+    when(serverConfig.getString("its-phabricator", null, "outboxRetryInterval")).thenReturn("10ms");
+
+    PhabricatorItsFacade itsFacade = createPhabricatorItsFacade();
+    itsFacade.start();
+    try {
+      // Failures are retried in the background
+      itsFacade.addComment("4711", "foo");
+
+      verify(conduit, timeout(5000).times(2))
+          .maniphestEdit(4711, ImmutableList.of(ManiphestTransaction.comment("foo")));
+    } finally {
+      itsFacade.stop();
+    }
+    verify(conduit).close();
+    verifyNoMoreInteractions(conduit);
+  }
+
+  @Test
+  public void testHealthCheckUnknownWithoutProber() throws Exception {
+    PhabricatorItsFacade itsFacade = createPhabricatorItsFacade();
+
+    assertThat(itsFacade.healthCheck(ItsFacade.Check.ACCESS)).isEqualTo("unknown");
+    assertThat(itsFacade.healthCheck(ItsFacade.Check.SYSINFO)).isEqualTo("unknown");
+    verifyNoInteractions(conduit);
+  }
+
+  @Test
+  public void testHealthCheckFromProbe() throws Exception {
+    ConduitPing ping = mock(ConduitPing.class);
+    when(ping.getHostname()).thenReturn("phab.example.org");
+    when(conduit.conduitPing()).thenReturn(ping);
+    when(conduit.isAuthenticated()).thenReturn(true);
+    when(serverConfig.getBoolean("its-phabricator", null, "healthCheck", false)).thenReturn(true);
+
+    PhabricatorItsFacade itsFacade = createPhabricatorItsFacade();
+    itsFacade.start();
+    try {
+      // Queries are answered from memory, once the first probe is done.
+      String sysinfo = itsFacade.healthCheck(ItsFacade.Check.SYSINFO);
+      for (int i = 0; i < 500 && sysinfo.contains("unknown"); i++) {
+        Thread.sleep(10);
+        sysinfo = itsFacade.healthCheck(ItsFacade.Check.SYSINFO);
+      }
+      String access = itsFacade.healthCheck(ItsFacade.Check.ACCESS);
+
+      assertThat(sysinfo).contains("\"status\":\"ok\"");
+      assertThat(sysinfo).contains("\"hostname\":\"phab.example.org\"");
+      assertThat(sysinfo).contains("\"p99Millis\"");
+      assertThat(access).isEqualTo("{\"status\":\"ok\",\"reachable\":true,\"authenticated\":true}");
+      verify(conduit).conduitPing();
+    } finally {
+      itsFacade.stop();
+    }
+    assertLogMessageContains("healthy");
+  }
+
   private PhabricatorItsFacade createPhabricatorItsFacade() {
-    return injector.getInstance(PhabricatorItsFacade.class);
+    return injector.getInstance(PhabricatorItsFacade.Factory.class).create(null);
   }
 
   @Override
@@ -245,11 +358,14 @@ public class PhabricatorItsFacadeTest extends LoggingMockingTestCase {
     serverConfig = mock(Config.class);
     conduitFactory = mock(Conduit.Factory.class);
     conduit = mock(Conduit.class);
+    pluginData = temporaryFolder.newFolder().toPath();
 
     when(serverConfig.getString("its-phabricator", null, "url"))
         .thenReturn("http://phab.example.org/");
     when(serverConfig.getString("its-phabricator", null, "token")).thenReturn("cli-FOO");
-    when(conduitFactory.create("http://phab.example.org/", "cli-FOO")).thenReturn(conduit);
+    when(serverConfig.getStringList("its-phabricator", null, "projectPreloadSlug"))
+        .thenReturn(new String[0]);
+    when(conduitFactory.create(null, "http://phab.example.org/", "cli-FOO")).thenReturn(conduit);
 
     injector = Guice.createInjector(new TestModule());
   }
@@ -260,6 +376,16 @@ public class PhabricatorItsFacadeTest extends LoggingMockingTestCase {
       bind(Config.class).annotatedWith(GerritServerConfig.class).toInstance(serverConfig);
       bind(String.class).annotatedWith(PluginName.class).toInstance("its-phabricator");
       bind(Conduit.Factory.class).toInstance(conduitFactory);
+      factory(TransactionCoalescer.Factory.class);
+      factory(TaskExistenceBatcher.Factory.class);
+      factory(Outbox.Factory.class);
+      factory(ProjectPreloader.Factory.class);
+      factory(HealthProber.Factory.class);
+      factory(CacheSnapshot.Factory.class);
+      factory(ConnectionWarmer.Factory.class);
+      factory(PhabricatorItsFacade.Factory.class);
+      bind(Path.class).annotatedWith(PluginData.class).toInstance(pluginData);
+      bind(MetricMaker.class).to(DisabledMetricMaker.class);
     }
   }
 }
@@ -0,0 +1,143 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.googlesource.gerrit.plugins.its.phabricator;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.gerrit.testing.GerritJUnit.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.server.config.PluginConfig;
+import com.google.gerrit.server.config.PluginConfigFactory;
+import com.google.gerrit.server.project.NoSuchProjectException;
+import com.googlesource.gerrit.plugins.its.base.testutil.LoggingMockingTestCase;
+import org.eclipse.jgit.lib.Config;
+import org.junit.Test;
+
+public class PhabricatorServersTest extends LoggingMockingTestCase {
+  private static final Project.NameKey PROJECT = Project.nameKey("foo");
+
+  private Config serverConfig;
+  private PluginConfigFactory pluginCfgFactory;
+  private PluginConfig pluginConfig;
+  private PhabricatorItsFacade.Factory facadeFactory;
+  private PhabricatorItsFacade defaultFacade;
+  private PhabricatorItsFacade otherFacade;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    serverConfig = new Config();
+    pluginCfgFactory = mock(PluginConfigFactory.class);
+    pluginConfig = mock(PluginConfig.class);
+    facadeFactory = mock(PhabricatorItsFacade.Factory.class);
+    defaultFacade = mock(PhabricatorItsFacade.class);
+    otherFacade = mock(PhabricatorItsFacade.class);
+    when(pluginCfgFactory.getFromProjectConfigWithInheritance(PROJECT, "its-phabricator"))
+        .thenReturn(pluginConfig);
+    when(facadeFactory.create(null)).thenReturn(defaultFacade);
+    when(facadeFactory.create("other")).thenReturn(otherFacade);
+  }
+
+  @Test
+  public void testIsConfigured() {
+    assertThat(PhabricatorServers.isConfigured(serverConfig, "its-phabricator")).isFalse();
+
+    serverConfig.setString("its-phabricator", "other", "url", "http://other.example.org/");
+
+    assertThat(PhabricatorServers.isConfigured(serverConfig, "its-phabricator")).isTrue();
+  }
+
+  @Test
+  public void testDefaultServer() {
+    serverConfig.setString("its-phabricator", null, "url", "http://phab.example.org/");
+    serverConfig.setString("its-phabricator", "other", "url", "http://other.example.org/");
+    PhabricatorServers servers = createServers();
+
+    assertThat(servers.getFacade(PROJECT)).isSameInstanceAs(defaultFacade);
+  }
+
+  @Test
+  public void testSelectedServer() {
+    serverConfig.setString("its-phabricator", null, "url", "http://phab.example.org/");
+    serverConfig.setString("its-phabricator", "other", "url", "http://other.example.org/");
+    when(pluginConfig.getString("server")).thenReturn("other");
+    PhabricatorServers servers = createServers();
+
+    assertThat(servers.getFacade(PROJECT)).isSameInstanceAs(otherFacade);
+  }
+
+  @Test
+  public void testUnknownServer() {
+    serverConfig.setString("its-phabricator", null, "url", "http://phab.example.org/");
+    when(pluginConfig.getString("server")).thenReturn("other");
+    PhabricatorServers servers = createServers();
+
+    assertThrows(IllegalStateException.class, () -> servers.getFacade(PROJECT));
+  }
+
+  @Test
+  public void testNoDefaultServer() {
+    serverConfig.setString("its-phabricator", "other", "url", "http://other.example.org/");
+    PhabricatorServers servers = createServers();
+
+    assertThrows(IllegalStateException.class, () -> servers.getFacade(PROJECT));
+    verify(facadeFactory, never()).create(null);
+  }
+
+  @Test
+  public void testMissingProjectUsesDefaultServer() throws Exception {
+    serverConfig.setString("its-phabricator", null, "url", "http://phab.example.org/");
+    when(pluginCfgFactory.getFromProjectConfigWithInheritance(PROJECT, "its-phabricator"))
+        .thenThrow(new NoSuchProjectException(PROJECT));
+    PhabricatorServers servers = createServers();
+
+    assertThat(servers.getFacade(PROJECT)).isSameInstanceAs(defaultFacade);
+    assertLogMessageContains("Could not read the Phabricator server");
+  }
+
+  @Test
+  public void testServerWithoutUrlIgnored() {
+    serverConfig.setString("its-phabricator", null, "url", "http://phab.example.org/");
+    serverConfig.setString("its-phabricator", "other", "token", "cli-FOO");
+    PhabricatorServers servers = createServers();
+
+    verify(facadeFactory, never()).create("other");
+    assertLogMessageContains("has no url");
+    servers.start();
+    verify(defaultFacade).start();
+  }
+
+  @Test
+  public void testStartAndStopAllServers() {
+    serverConfig.setString("its-phabricator", null, "url", "http://phab.example.org/");
+    serverConfig.setString("its-phabricator", "other", "url", "http://other.example.org/");
+    PhabricatorServers servers = createServers();
+
+    servers.start();
+    verify(defaultFacade).start();
+    verify(otherFacade).start();
+
+    servers.stop();
+    verify(defaultFacade).stop();
+    verify(otherFacade).stop();
+  }
+
+  private PhabricatorServers createServers() {
+    return new PhabricatorServers("its-phabricator", serverConfig, pluginCfgFactory, facadeFactory);
+  }
+}
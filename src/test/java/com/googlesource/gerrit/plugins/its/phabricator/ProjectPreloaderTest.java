@@ -0,0 +1,127 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.googlesource.gerrit.plugins.its.phabricator;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import com.googlesource.gerrit.plugins.its.base.testutil.LoggingMockingTestCase;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.Conduit;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.ConduitException;
+import org.eclipse.jgit.lib.Config;
+import org.junit.After;
+import org.junit.Test;
+
+public class ProjectPreloaderTest extends LoggingMockingTestCase {
+  private Conduit conduit;
+  private Config serverConfig;
+  private ProjectPreloader preloader;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    conduit = mock(Conduit.class);
+    serverConfig = new Config();
+    serverConfig.setBoolean("its-phabricator", null, "projectPreload", true);
+  }
+
+  @After
+  public void stopPreloader() {
+    if (preloader != null) {
+      preloader.stop();
+    }
+  }
+
+  @Test
+  public void testDisabledByDefault() throws Exception {
+    preloader = new ProjectPreloader("its-phabricator", new Config(), conduit);
+    preloader.start();
+
+    assertThat(preloader.isEnabled()).isFalse();
+    verifyNoInteractions(conduit);
+  }
+
+  @Test
+  public void testLoadsAllProjectsOnStart() throws Exception {
+    preloader = createPreloader();
+    preloader.start();
+
+    verify(conduit, timeout(5000)).loadProjects(ImmutableList.of());
+  }
+
+  @Test
+  public void testLoadsConfiguredSlugs() throws Exception {
+    serverConfig.setStringList(
+        "its-phabricator", null, "projectPreloadSlug", ImmutableList.of("foo", "bar"));
+    preloader = createPreloader();
+    preloader.start();
+
+    verify(conduit, timeout(5000)).loadProjects(ImmutableList.of("foo", "bar"));
+  }
+
+  @Test
+  public void testRefreshesPeriodically() throws Exception {
+    serverConfig.setString("its-phabricator", null, "projectPreloadInterval", "10ms");
+    preloader = createPreloader();
+    preloader.start();
+
+    verify(conduit, timeout(5000).atLeast(3)).loadProjects(ImmutableList.of());
+  }
+
+  @Test
+  public void testRefreshesAfterFailure() throws Exception {
+    serverConfig.setString("its-phabricator", null, "projectPreloadInterval", "10ms");
+    when(conduit.loadProjects(any()))
+        .thenThrow(new ConduitException("foo"))
+        .thenThrow(new RuntimeException("bar"))
+        .thenReturn(1);
+    preloader = createPreloader();
+    preloader.start();
+
+    verify(conduit, timeout(5000).atLeast(3)).loadProjects(ImmutableList.of());
+    assertLogMessageContains("Could not preload Phabricator projects");
+  }
+
+  @Test
+  public void testLoadFailureLogged() throws Exception {
+    when(conduit.loadProjects(any())).thenThrow(new ConduitException("foo"));
+    preloader = createPreloader();
+
+    preloader.load();
+
+    assertLogMessageContains("Could not preload Phabricator projects");
+    verify(conduit).loadProjects(ImmutableList.of());
+  }
+
+  @Test
+  public void testTooSmallCacheLogged() throws Exception {
+    serverConfig.setLong("cache", "phabricator_projects", "memoryLimit", 100);
+    when(conduit.loadProjects(any())).thenReturn(51);
+    preloader = createPreloader();
+
+    preloader.load();
+
+    assertLogMessageContains("Raise cache.phabricator_projects.memoryLimit to at least 102");
+  }
+
+  private ProjectPreloader createPreloader() {
+    return new ProjectPreloader("its-phabricator", serverConfig, conduit);
+  }
+}
@@ -0,0 +1,112 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.googlesource.gerrit.plugins.its.phabricator;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.googlesource.gerrit.plugins.its.base.testutil.LoggingMockingTestCase;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import org.junit.After;
+import org.junit.Test;
+
+public class StripedExecutorTest extends LoggingMockingTestCase {
+  private StripedExecutor executor;
+
+  @After
+  public void stopExecutor() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testSameKeyRunsInOrder() throws Exception {
+    executor = createExecutor(4);
+    List<Integer> ran = Collections.synchronizedList(new ArrayList<>());
+
+    for (int i = 0; i < 100; i++) {
+      int value = i;
+      executor.execute(4711, () -> ran.add(value));
+    }
+    executor.shutdown();
+    assertThat(executor.awaitTermination(5, SECONDS)).isTrue();
+
+    assertThat(ran).hasSize(100);
+    assertThat(ran).isInOrder();
+  }
+
+  @Test
+  public void testDifferentLanesRunInParallel() throws Exception {
+    executor = createExecutor(2);
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch otherLaneRan = new CountDownLatch(1);
+
+    executor.execute(
+        0,
+        () -> {
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        });
+    executor.execute(1, otherLaneRan::countDown);
+
+    assertThat(otherLaneRan.await(5, SECONDS)).isTrue();
+    release.countDown();
+  }
+
+  @Test
+  public void testNegativeKey() throws Exception {
+    executor = createExecutor(3);
+    CountDownLatch ran = new CountDownLatch(1);
+
+    executor.execute(-4711, ran::countDown);
+
+    assertThat(ran.await(5, SECONDS)).isTrue();
+  }
+
+  @Test
+  public void testQueueDepth() throws Exception {
+    executor = createExecutor(2);
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+
+    executor.execute(
+        0,
+        () -> {
+          started.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        });
+    assertThat(started.await(5, SECONDS)).isTrue();
+    executor.execute(0, () -> {});
+    executor.execute(2, () -> {});
+
+    assertThat(executor.getQueueDepth()).isEqualTo(2);
+    release.countDown();
+  }
+
+  private StripedExecutor createExecutor(int lanes) {
+    return new StripedExecutor(
+        lanes, 100, Executors.defaultThreadFactory(), new ThreadPoolExecutor.AbortPolicy());
+  }
+}
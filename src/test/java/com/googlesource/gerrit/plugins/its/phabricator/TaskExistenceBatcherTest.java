@@ -0,0 +1,146 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.googlesource.gerrit.plugins.its.phabricator;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.gerrit.testing.GerritJUnit.assertThrows;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.googlesource.gerrit.plugins.its.base.testutil.LoggingMockingTestCase;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.Conduit;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.ConduitException;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.TaskExistenceCache;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.eclipse.jgit.lib.Config;
+import org.junit.After;
+import org.junit.Test;
+
+public class TaskExistenceBatcherTest extends LoggingMockingTestCase {
+  private Conduit conduit;
+  private TaskExistenceCache taskExistenceCache;
+  private Config serverConfig;
+  private ExecutorService executor;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    conduit = mock(Conduit.class);
+    taskExistenceCache = mock(TaskExistenceCache.class);
+    when(taskExistenceCache.get(anyInt())).thenReturn(null);
+    when(conduit.getTaskExistenceCache()).thenReturn(taskExistenceCache);
+    serverConfig = new Config();
+    executor = Executors.newCachedThreadPool();
+  }
+
+  @After
+  public void stopExecutor() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testDisabledByDefault() throws Exception {
+    TaskExistenceBatcher batcher = createBatcher();
+
+    assertThat(batcher.isEnabled()).isFalse();
+  }
+
+  @Test
+  public void testConcurrentChecksBatched() throws Exception {
+    serverConfig.setString("its-phabricator", null, "existsBatchWindow", "1s");
+    when(conduit.taskExists(anyCollection()))
+        .thenReturn(ImmutableMap.of(4711, true, 4712, false, 4713, true));
+    TaskExistenceBatcher batcher = createBatcher();
+
+    Future<Boolean> exists1 = executor.submit(() -> batcher.exists(4711));
+    Future<Boolean> exists2 = executor.submit(() -> batcher.exists(4712));
+    Future<Boolean> exists3 = executor.submit(() -> batcher.exists(4713));
+
+    assertThat(exists1.get(10, SECONDS)).isTrue();
+    assertThat(exists2.get(10, SECONDS)).isFalse();
+    assertThat(exists3.get(10, SECONDS)).isTrue();
+    verify(conduit).taskExists(ImmutableSet.of(4711, 4712, 4713));
+  }
+
+  @Test
+  public void testCachedTasksNotBatched() throws Exception {
+    serverConfig.setString("its-phabricator", null, "existsBatchWindow", "1h");
+    when(taskExistenceCache.get(4711)).thenReturn(true);
+    when(taskExistenceCache.get(4712)).thenReturn(false);
+    TaskExistenceBatcher batcher = createBatcher();
+
+    assertThat(batcher.exists(4711)).isTrue();
+    assertThat(batcher.exists(4712)).isFalse();
+    verify(conduit, never()).taskExists(anyCollection());
+  }
+
+  @Test
+  public void testFullBatchSentBeforeWindowCloses() throws Exception {
+    serverConfig.setString("its-phabricator", null, "existsBatchWindow", "1h");
+    when(conduit.taskExists(anyCollection()))
+        .thenAnswer(
+            invocation -> {
+              Map<Integer, Boolean> result = new HashMap<>();
+              for (Integer taskId : invocation.<Collection<Integer>>getArgument(0)) {
+                result.put(taskId, true);
+              }
+              return result;
+            });
+    TaskExistenceBatcher batcher = createBatcher();
+
+    List<Future<Boolean>> checks = new ArrayList<>();
+    for (int i = 0; i < Conduit.SEARCH_PAGE_SIZE; i++) {
+      int taskId = i;
+      checks.add(executor.submit(() -> batcher.exists(taskId)));
+    }
+
+    for (Future<Boolean> check : checks) {
+      assertThat(check.get(10, SECONDS)).isTrue();
+    }
+  }
+
+  @Test
+  public void testFailureReachesAllChecks() throws Exception {
+    serverConfig.setString("its-phabricator", null, "existsBatchWindow", "1s");
+    when(conduit.taskExists(anyCollection())).thenThrow(new ConduitException("foo"));
+    TaskExistenceBatcher batcher = createBatcher();
+
+    Future<Boolean> exists1 = executor.submit(() -> batcher.exists(4711));
+    Future<Boolean> exists2 = executor.submit(() -> batcher.exists(4712));
+
+    ExecutionException e1 = assertThrows(ExecutionException.class, () -> exists1.get(10, SECONDS));
+    assertThat(e1).hasCauseThat().isInstanceOf(ConduitException.class);
+    ExecutionException e2 = assertThrows(ExecutionException.class, () -> exists2.get(10, SECONDS));
+    assertThat(e2).hasCauseThat().isInstanceOf(ConduitException.class);
+  }
+
+  private TaskExistenceBatcher createBatcher() {
+    return new TaskExistenceBatcher("its-phabricator", serverConfig, conduit);
+  }
+}
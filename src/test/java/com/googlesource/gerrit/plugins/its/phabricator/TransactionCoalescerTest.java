@@ -0,0 +1,165 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.googlesource.gerrit.plugins.its.phabricator;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.googlesource.gerrit.plugins.its.base.testutil.LoggingMockingTestCase;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.Conduit;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.ConduitException;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.ManiphestTransaction;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.UnknownProjectException;
+import org.eclipse.jgit.lib.Config;
+import org.junit.Test;
+
+public class TransactionCoalescerTest extends LoggingMockingTestCase {
+  private Conduit conduit;
+  private Config serverConfig;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    conduit = mock(Conduit.class);
+    serverConfig = new Config();
+  }
+
+  @Test
+  public void testDisabledByDefault() throws Exception {
+    TransactionCoalescer coalescer = createCoalescer();
+
+    assertThat(coalescer.isEnabled()).isFalse();
+  }
+
+  @Test
+  public void testSameTaskCoalesced() throws Exception {
+    serverConfig.setString("its-phabricator", null, "coalesceWindow", "100ms");
+    TransactionCoalescer coalescer = createCoalescer();
+
+    coalescer.add(4711, ManiphestTransaction.comment("foo"));
+    coalescer.add(4711, ManiphestTransaction.addProject("bar"));
+    coalescer.add(4711, ManiphestTransaction.comment("baz"));
+
+    verify(conduit, timeout(5000))
+        .maniphestEdit(
+            4711,
+            ImmutableList.of(
+                ManiphestTransaction.comment("foo"),
+                ManiphestTransaction.addProject("bar"),
+                ManiphestTransaction.comment("baz")));
+    verifyNoMoreInteractions(conduit);
+  }
+
+  @Test
+  public void testDifferentTasksNotCoalesced() throws Exception {
+    serverConfig.setString("its-phabricator", null, "coalesceWindow", "100ms");
+    TransactionCoalescer coalescer = createCoalescer();
+
+    coalescer.add(4711, ManiphestTransaction.comment("foo"));
+    coalescer.add(4712, ManiphestTransaction.comment("bar"));
+
+    verify(conduit, timeout(5000))
+        .maniphestEdit(4711, ImmutableList.of(ManiphestTransaction.comment("foo")));
+    verify(conduit, timeout(5000))
+        .maniphestEdit(4712, ImmutableList.of(ManiphestTransaction.comment("bar")));
+    verifyNoMoreInteractions(conduit);
+  }
+
+  @Test
+  public void testStopFlushesPending() throws Exception {
+    serverConfig.setString("its-phabricator", null, "coalesceWindow", "1 hour");
+    TransactionCoalescer coalescer = createCoalescer();
+
+    coalescer.add(4711, ManiphestTransaction.comment("foo"));
+    coalescer.stop();
+
+    verify(conduit).maniphestEdit(4711, ImmutableList.of(ManiphestTransaction.comment("foo")));
+    verifyNoMoreInteractions(conduit);
+  }
+
+  @Test
+  public void testDispatchedAsynchronously() throws Exception {
+    serverConfig.setString("its-phabricator", null, "coalesceWindow", "100ms");
+    serverConfig.setBoolean("its-phabricator", null, "async", true);
+    TransactionCoalescer coalescer = createCoalescer();
+
+    coalescer.add(4711, ManiphestTransaction.comment("foo"));
+    coalescer.add(4711, ManiphestTransaction.comment("bar"));
+
+    verify(conduit, timeout(5000))
+        .maniphestEdit(
+            4711,
+            ImmutableList.of(
+                ManiphestTransaction.comment("foo"), ManiphestTransaction.comment("bar")));
+    verifyNoMoreInteractions(conduit);
+  }
+
+  @Test
+  public void testFailureDoesNotBlockLaterWindows() throws Exception {
+    serverConfig.setString("its-phabricator", null, "coalesceWindow", "10ms");
+    when(conduit.maniphestEdit(anyInt(), anyList())).thenThrow(new ConduitException());
+    TransactionCoalescer coalescer = createCoalescer();
+
+    coalescer.add(4711, ManiphestTransaction.comment("foo"));
+    verify(conduit, timeout(5000))
+        .maniphestEdit(4711, ImmutableList.of(ManiphestTransaction.comment("foo")));
+
+    coalescer.add(4711, ManiphestTransaction.comment("bar"));
+    verify(conduit, timeout(5000))
+        .maniphestEdit(4711, ImmutableList.of(ManiphestTransaction.comment("bar")));
+  }
+
+  @Test
+  public void testUnknownProjectDoesNotDropOtherTransactions() throws Exception {
+    serverConfig.setString("its-phabricator", null, "coalesceWindow", "10ms");
+    when(conduit.maniphestEdit(
+            4711,
+            ImmutableList.of(
+                ManiphestTransaction.comment("foo"), ManiphestTransaction.addProject("bar"))))
+        .thenThrow(new UnknownProjectException("bar"));
+    TransactionCoalescer coalescer = createCoalescer();
+
+    coalescer.add(4711, ManiphestTransaction.comment("foo"));
+    coalescer.add(4711, ManiphestTransaction.addProject("bar"));
+
+    verify(conduit, timeout(5000))
+        .maniphestEdit(4711, ImmutableList.of(ManiphestTransaction.comment("foo")));
+  }
+
+  @Test
+  public void testAddAfterStopSentRightAway() throws Exception {
+    serverConfig.setString("its-phabricator", null, "coalesceWindow", "1h");
+    TransactionCoalescer coalescer = createCoalescer();
+    coalescer.stop();
+
+    coalescer.add(4711, ManiphestTransaction.comment("foo"));
+
+    verify(conduit).maniphestEdit(4711, ImmutableList.of(ManiphestTransaction.comment("foo")));
+  }
+
+  private TransactionCoalescer createCoalescer() {
+    DispatchQueue dispatchQueue =
+        new DispatchQueue(
+            "its-phabricator", serverConfig, new DispatchQueue.Metrics(new DisabledMetricMaker()));
+    return new TransactionCoalescer("its-phabricator", serverConfig, conduit, dispatchQueue);
+  }
+}
@@ -0,0 +1,232 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.googlesource.gerrit.plugins.its.phabricator.conduit;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.gerrit.testing.GerritJUnit.assertThrows;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.common.base.Ticker;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.googlesource.gerrit.plugins.its.base.testutil.LoggingMockingTestCase;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.CircuitBreaker.State;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.eclipse.jgit.lib.Config;
+import org.junit.Test;
+
+public class CircuitBreakerTest extends LoggingMockingTestCase {
+  private static final CircuitBreaker.Probe FAILING_PROBE =
+      () -> {
+        throw new ConduitException("down");
+      };
+
+  private FakeTicker ticker;
+
+  @Test
+  public void testDisabledNeverOpens() throws Exception {
+    CircuitBreaker breaker = createCircuitBreaker(false);
+
+    for (int i = 0; i < 20; i++) {
+      breaker.record(true, 0);
+    }
+
+    assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+    breaker.beforeCall(FAILING_PROBE);
+  }
+
+  @Test
+  public void testStaysClosedBelowMinimumCalls() throws Exception {
+    CircuitBreaker breaker = createCircuitBreaker(true);
+
+    for (int i = 0; i < 3; i++) {
+      breaker.record(true, 0);
+    }
+
+    assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+  }
+
+  @Test
+  public void testOpensOnFailureRate() throws Exception {
+    CircuitBreaker breaker = createCircuitBreaker(true);
+
+    breaker.record(false, 0);
+    breaker.record(true, 0);
+    breaker.record(false, 0);
+    breaker.record(true, 0);
+
+    assertThat(breaker.getState()).isEqualTo(State.OPEN);
+    assertThrows(CircuitBreakerOpenException.class, () -> breaker.beforeCall(FAILING_PROBE));
+  }
+
+  @Test
+  public void testOpensOnSlowCallRate() throws Exception {
+    CircuitBreaker breaker = createCircuitBreaker(true);
+
+    for (int i = 0; i < 4; i++) {
+      breaker.record(false, SECONDS.toNanos(2));
+    }
+
+    assertThat(breaker.getState()).isEqualTo(State.OPEN);
+  }
+
+  @Test
+  public void testOldOutcomesLeaveWindow() throws Exception {
+    CircuitBreaker breaker = createCircuitBreaker(true);
+
+    breaker.record(true, 0);
+    for (int i = 0; i < 8; i++) {
+      breaker.record(false, 0);
+    }
+    breaker.record(true, 0);
+    breaker.record(true, 0);
+
+    assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+  }
+
+  @Test
+  public void testClosesAfterSuccessfulProbe() throws Exception {
+    CircuitBreaker breaker = createOpenCircuitBreaker();
+    AtomicInteger probes = new AtomicInteger();
+
+    ticker.advance(SECONDS.toNanos(5));
+    breaker.beforeCall(() -> probes.incrementAndGet());
+
+    assertThat(probes.get()).isEqualTo(1);
+    assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+  }
+
+  @Test
+  public void testConduitErrorOnProbeCountsAsAvailable() throws Exception {
+    CircuitBreaker breaker = createOpenCircuitBreaker();
+
+    ticker.advance(SECONDS.toNanos(5));
+    breaker.beforeCall(
+        () -> {
+          throw new ConduitErrorException("conduit.ping", "ERR-CONDUIT-CORE", "foo");
+        });
+
+    assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+  }
+
+  @Test
+  public void testNoProbeBeforeOpenDurationPassed() throws Exception {
+    CircuitBreaker breaker = createOpenCircuitBreaker();
+    AtomicInteger probes = new AtomicInteger();
+
+    ticker.advance(SECONDS.toNanos(4));
+    assertThrows(
+        CircuitBreakerOpenException.class,
+        () -> breaker.beforeCall(() -> probes.incrementAndGet()));
+
+    assertThat(probes.get()).isEqualTo(0);
+    assertThat(breaker.getState()).isEqualTo(State.OPEN);
+  }
+
+  @Test
+  public void testReopensAfterFailedProbe() throws Exception {
+    CircuitBreaker breaker = createOpenCircuitBreaker();
+
+    ticker.advance(SECONDS.toNanos(5));
+    assertThrows(CircuitBreakerOpenException.class, () -> breaker.beforeCall(FAILING_PROBE));
+    assertThat(breaker.getState()).isEqualTo(State.OPEN);
+
+    ticker.advance(SECONDS.toNanos(4));
+    assertThrows(CircuitBreakerOpenException.class, () -> breaker.beforeCall(FAILING_PROBE));
+
+    ticker.advance(SECONDS.toNanos(1));
+    breaker.beforeCall(() -> {});
+    assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+  }
+
+  @Test
+  public void testOtherCallsFailWhileProbing() throws Exception {
+    CircuitBreaker breaker = createOpenCircuitBreaker();
+
+    ticker.advance(SECONDS.toNanos(5));
+    breaker.beforeCall(
+        () -> {
+          assertThat(breaker.getState()).isEqualTo(State.HALF_OPEN);
+          assertThrows(CircuitBreakerOpenException.class, () -> breaker.beforeCall(() -> {}));
+        });
+
+    assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+  }
+
+  @Test
+  public void testAsyncCallWaitsForProbe() throws Exception {
+    CircuitBreaker breaker = createOpenCircuitBreaker();
+    CompletableFuture<Void> probe = new CompletableFuture<>();
+
+    ticker.advance(SECONDS.toNanos(5));
+    CompletableFuture<Void> call = breaker.beforeCallAsync(() -> probe);
+
+    assertThat(call.isDone()).isFalse();
+    assertThat(breaker.getState()).isEqualTo(State.HALF_OPEN);
+    assertThat(breaker.beforeCallAsync(() -> probe).isCompletedExceptionally()).isTrue();
+
+    probe.complete(null);
+    call.get(10, SECONDS);
+    assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+  }
+
+  @Test
+  public void testAsyncCallFailsAfterFailedProbe() throws Exception {
+    CircuitBreaker breaker = createOpenCircuitBreaker();
+
+    ticker.advance(SECONDS.toNanos(5));
+    CompletableFuture<Void> call =
+        breaker.beforeCallAsync(() -> CompletableFuture.failedFuture(new ConduitException("down")));
+
+    ExecutionException e = assertThrows(ExecutionException.class, () -> call.get(10, SECONDS));
+    assertThat(e).hasCauseThat().isInstanceOf(CircuitBreakerOpenException.class);
+    assertThat(breaker.getState()).isEqualTo(State.OPEN);
+  }
+
+  private CircuitBreaker createOpenCircuitBreaker() {
+    CircuitBreaker breaker = createCircuitBreaker(true);
+    for (int i = 0; i < 4; i++) {
+      breaker.record(true, 0);
+    }
+    assertThat(breaker.getState()).isEqualTo(State.OPEN);
+    return breaker;
+  }
+
+  private CircuitBreaker createCircuitBreaker(boolean enabled) {
+    Config cfg = new Config();
+    cfg.setBoolean("its-phabricator", null, "circuitBreaker", enabled);
+    cfg.setInt("its-phabricator", null, "circuitBreakerWindow", 10);
+    cfg.setInt("its-phabricator", null, "circuitBreakerMinimumCalls", 4);
+    cfg.setString("its-phabricator", null, "circuitBreakerSlowCallDuration", "1s");
+    cfg.setString("its-phabricator", null, "circuitBreakerOpenDuration", "5s");
+    ticker = new FakeTicker();
+    return new CircuitBreaker(
+        "its-phabricator", cfg, new CircuitBreaker.Metrics(new DisabledMetricMaker()), ticker);
+  }
+
+  private static class FakeTicker extends Ticker {
+    private long nanos = MILLISECONDS.toNanos(1000);
+
+    void advance(long delta) {
+      nanos += delta;
+    }
+
+    @Override
+    public long read() {
+      return nanos;
+    }
+  }
+}
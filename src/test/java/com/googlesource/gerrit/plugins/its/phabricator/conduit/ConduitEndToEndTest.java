@@ -0,0 +1,341 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.googlesource.gerrit.plugins.its.phabricator.conduit;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.gerrit.testing.GerritJUnit.assertThrows;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.googlesource.gerrit.plugins.its.base.testutil.LoggingMockingTestCase;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.FakeConduitServer.Failure;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.results.ManiphestEdit;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.results.ManiphestSearch;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.eclipse.jgit.lib.Config;
+import org.junit.After;
+import org.junit.Test;
+
+/** Runs Conduit calls over real HTTP against a {@link FakeConduitServer} */
+public class ConduitEndToEndTest extends LoggingMockingTestCase {
+  private FakeConduitServer server;
+  private Config serverConfig;
+  private Conduit conduit;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    server = new FakeConduitServer();
+    serverConfig = new Config();
+    serverConfig.setInt("its-phabricator", null, "retries", 3);
+    serverConfig.setString("its-phabricator", null, "retryBackoff", "1ms");
+  }
+
+  @After
+  public void stopServer() {
+    if (conduit != null) {
+      conduit.close();
+    }
+    server.close();
+  }
+
+  @Test
+  public void testPing() throws Exception {
+    server.start();
+
+    assertThat(createConduit().conduitPing().getHostname()).isEqualTo("fake-phabricator");
+  }
+
+  @Test
+  public void testEditAndSearch() throws Exception {
+    server.addTask(4711).addProject(12, "foo").start();
+    Conduit conduit = createConduit();
+
+    assertThat(conduit.taskExists(4711)).isTrue();
+    assertThat(conduit.taskExists(4712)).isFalse();
+    conduit.maniphestEdit(4711, "bar", "foo", null);
+
+    assertThat(server.getComments(4711)).containsExactly("bar");
+    assertThat(server.getProjectPhids(4711)).containsExactly("PHID-PROJ-12");
+  }
+
+  @Test
+  public void testProjectSearchExactMatch() throws Exception {
+    server.addProject(12, "Foo Bar").addProject(13, "Foo").start();
+    Conduit conduit = createConduit();
+
+    assertThat(conduit.projectSearch("foo bar").getPhid()).isEqualTo("PHID-PROJ-12");
+    assertThat(conduit.projectSearch("Foo").getPhid()).isEqualTo("PHID-PROJ-13");
+    assertThat(conduit.projectSearch("foo_bar").getPhid()).isEqualTo("PHID-PROJ-12");
+    assertThat(conduit.projectSearch("Fo")).isNull();
+    assertThat(server.getCalls("project.search")).isEqualTo(3);
+  }
+
+  @Test
+  public void testEditOfMissingTask() throws Exception {
+    server.start();
+    Conduit conduit = createConduit();
+
+    assertThrows(ConduitErrorException.class, () -> conduit.maniphestEdit(4711, "bar", null, null));
+  }
+
+  @Test
+  public void testPaginatedSearch() throws Exception {
+    for (int i = 1; i <= 25; i++) {
+      server.addTask(i);
+    }
+    server.start();
+    Conduit conduit = createConduit();
+
+    List<Integer> ids;
+    try (Stream<ManiphestSearch> stream =
+        conduit.search("maniphest.search", new HashMap<>(), ManiphestSearch.class, 10, null)) {
+      ids = stream.map(ManiphestSearch::getId).collect(Collectors.toList());
+    }
+
+    assertThat(ids).hasSize(25);
+    assertThat(ids).isInOrder();
+    assertThat(server.getCalls("maniphest.search")).isEqualTo(3);
+  }
+
+  @Test
+  public void testTransientFailureRetried() throws Exception {
+    server.addTask(4711).failNextCalls(Failure.HTTP_503, 2).start();
+
+    assertThat(createConduit().taskExists(4711)).isTrue();
+    assertThat(server.getCalls("maniphest.search")).isEqualTo(3);
+  }
+
+  @Test
+  public void testEditNotRetriedAfterServiceUnavailable() throws Exception {
+    server.addTask(4711).failNextCalls(Failure.HTTP_503, 1).start();
+    Conduit conduit = createConduit();
+
+    assertThrows(ConduitException.class, () -> conduit.maniphestEdit(4711, "bar", null, null));
+    assertThat(server.getCalls("maniphest.edit")).isEqualTo(1);
+  }
+
+  @Test
+  public void testEditNotRetriedAfterDisconnect() throws Exception {
+    server.addTask(4711).failNextCalls(Failure.DISCONNECT, 1).start();
+    Conduit conduit = createConduit();
+
+    assertThrows(ConduitException.class, () -> conduit.maniphestEdit(4711, "bar", null, null));
+    assertThat(server.getCalls("maniphest.edit")).isEqualTo(1);
+  }
+
+  @Test
+  public void testCircuitBreakerFailsFast() throws Exception {
+    serverConfig.setInt("its-phabricator", null, "retries", 0);
+    serverConfig.setBoolean("its-phabricator", null, "circuitBreaker", true);
+    serverConfig.setInt("its-phabricator", null, "circuitBreakerMinimumCalls", 2);
+    serverConfig.setString("its-phabricator", null, "circuitBreakerOpenDuration", "1h");
+    server.addTask(4711).setFailureRate(Failure.HTTP_500, 1).start();
+    Conduit conduit = createConduit();
+
+    assertThrows(ConduitHttpException.class, () -> conduit.maniphestSearch(4711));
+    assertThrows(ConduitHttpException.class, () -> conduit.maniphestSearch(4711));
+    assertThrows(CircuitBreakerOpenException.class, () -> conduit.maniphestSearch(4711));
+    assertThat(server.getCalls("maniphest.search")).isEqualTo(2);
+  }
+
+  @Test
+  public void testRateLimitKeepsBelowServerCap() throws Exception {
+    serverConfig.setInt("its-phabricator", null, "retries", 0);
+    serverConfig.setInt("its-phabricator", null, "writeRateLimit", 4);
+    serverConfig.setInt("its-phabricator", null, "writeRateLimitBurst", 1);
+    server.addTask(4711).setMaxCallsPerSecond(5).start();
+    Conduit conduit = createConduit();
+
+    for (int i = 0; i < 8; i++) {
+      conduit.maniphestEdit(4711, "c" + i, null, null);
+    }
+
+    assertThat(server.getComments(4711)).hasSize(8);
+  }
+
+  @Test
+  public void testConcurrentEdits() throws Exception {
+    int tasks = 8;
+    int editsPerTask = 25;
+    for (int i = 0; i < tasks; i++) {
+      server.addTask(i);
+    }
+    server.setThreads(4).setLatency(1, 2).start();
+    Conduit conduit = createConduit();
+
+    ExecutorService executor = Executors.newFixedThreadPool(tasks);
+    try {
+      List<Future<?>> edits = new ArrayList<>();
+      for (int i = 0; i < tasks; i++) {
+        int taskId = i;
+        edits.add(
+            executor.submit(
+                () -> {
+                  for (int j = 0; j < editsPerTask; j++) {
+                    conduit.maniphestEdit(
+                        taskId, ImmutableList.of(ManiphestTransaction.comment("c" + j)));
+                  }
+                  return null;
+                }));
+      }
+      for (Future<?> edit : edits) {
+        edit.get(60, SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    List<String> expectedComments = new ArrayList<>();
+    for (int j = 0; j < editsPerTask; j++) {
+      expectedComments.add("c" + j);
+    }
+    for (int i = 0; i < tasks; i++) {
+      assertThat(server.getComments(i)).containsExactlyElementsIn(expectedComments).inOrder();
+    }
+    assertThat(server.getMaxInFlight()).isAtMost(4);
+  }
+
+  @Test
+  public void testAsyncEditAndSearch() throws Exception {
+    server.addTask(4711).addProject(12, "foo").start();
+    Conduit conduit = createConduit();
+
+    assertThat(conduit.maniphestSearchAsync(4711).get(10, SECONDS).getId()).isEqualTo(4711);
+    assertThat(conduit.maniphestSearchAsync(4712).get(10, SECONDS)).isNull();
+    conduit
+        .maniphestEditAsync(
+            4711,
+            ImmutableList.of(
+                ManiphestTransaction.comment("bar"), ManiphestTransaction.addProject("foo")))
+        .get(10, SECONDS);
+
+    assertThat(server.getComments(4711)).containsExactly("bar");
+    assertThat(server.getProjectPhids(4711)).containsExactly("PHID-PROJ-12");
+  }
+
+  @Test
+  public void testEditOfUnknownProject() throws Exception {
+    server.addTask(4711).start();
+    Conduit conduit = createConduit();
+
+    ConduitException e =
+        assertThrows(
+            ConduitException.class,
+            () ->
+                conduit.maniphestEdit(
+                    4711, ImmutableList.of(ManiphestTransaction.addProject("x"))));
+    assertThat(e).hasMessageThat().contains("Could not find project 'x'");
+    assertThat(server.getCalls("maniphest.edit")).isEqualTo(0);
+  }
+
+  @Test
+  public void testAsyncEditOfUnknownProject() throws Exception {
+    server.addTask(4711).start();
+    Conduit conduit = createConduit();
+
+    ExecutionException e =
+        assertThrows(
+            ExecutionException.class,
+            () ->
+                conduit
+                    .maniphestEditAsync(
+                        4711, ImmutableList.of(ManiphestTransaction.addProject("x")))
+                    .get(10, SECONDS));
+    assertThat(e).hasCauseThat().isInstanceOf(ConduitException.class);
+    assertThat(server.getCalls("maniphest.edit")).isEqualTo(0);
+  }
+
+  @Test
+  public void testAsyncTransientFailureRetried() throws Exception {
+    server.addTask(4711).failNextCalls(Failure.HTTP_503, 2).start();
+
+    assertThat(createConduit().maniphestSearchAsync(4711).get(10, SECONDS)).isNotNull();
+    assertThat(server.getCalls("maniphest.search")).isEqualTo(3);
+  }
+
+  @Test
+  public void testAsyncConduitError() throws Exception {
+    server.start();
+    Conduit conduit = createConduit();
+
+    ExecutionException e =
+        assertThrows(
+            ExecutionException.class,
+            () ->
+                conduit
+                    .maniphestEditAsync(4711, ImmutableList.of(ManiphestTransaction.comment("bar")))
+                    .get(10, SECONDS));
+    assertThat(e).hasCauseThat().isInstanceOf(ConduitErrorException.class);
+  }
+
+  @Test
+  public void testAsyncCallsInFlightExceedIoThreads() throws Exception {
+    int calls = 200;
+    serverConfig.setInt("its-phabricator", null, "asyncIoThreads", 2);
+    for (int i = 0; i < calls; i++) {
+      server.addTask(i);
+    }
+    server.setThreads(calls).setLatency(200, 0).start();
+    Conduit conduit = createConduit();
+
+    List<CompletableFuture<ManiphestEdit>> edits = new ArrayList<>();
+    for (int i = 0; i < calls; i++) {
+      edits.add(conduit.maniphestEditAsync(i, ImmutableList.of(ManiphestTransaction.comment("c"))));
+    }
+    CompletableFuture.allOf(edits.toArray(new CompletableFuture<?>[0])).get(60, SECONDS);
+
+    for (int i = 0; i < calls; i++) {
+      assertThat(server.getComments(i)).containsExactly("c");
+    }
+    assertThat(server.getMaxInFlight()).isGreaterThan(2);
+  }
+
+  private Conduit createConduit() {
+    ConduitConnection connection =
+        new ConduitConnection(
+            "its-phabricator",
+            serverConfig,
+            new CircuitBreaker.Metrics(new DisabledMetricMaker()),
+            new ConduitMetrics(new DisabledMetricMaker()),
+            server.getUrl());
+    conduit =
+        new Conduit(
+            baseUrl -> connection,
+            new SearchUtils(),
+            new ProjectSearchCache(CacheBuilder.newBuilder().build()),
+            new TaskExistenceCache(
+                CacheBuilder.newBuilder().build(), CacheBuilder.newBuilder().build()),
+            new CommentDeduplicator(
+                "its-phabricator",
+                new Config(),
+                CacheBuilder.newBuilder().build(),
+                new DisabledMetricMaker()),
+            null,
+            server.getUrl(),
+            "api-token");
+    return conduit;
+  }
+}
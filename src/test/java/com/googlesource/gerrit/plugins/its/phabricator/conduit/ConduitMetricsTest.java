@@ -0,0 +1,43 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.googlesource.gerrit.plugins.its.phabricator.conduit;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.googlesource.gerrit.plugins.its.base.testutil.LoggingMockingTestCase;
+import java.net.ConnectException;
+import org.junit.Test;
+
+public class ConduitMetricsTest extends LoggingMockingTestCase {
+  @Test
+  public void testDescribeConduitError() throws Exception {
+    ConduitException e = new ConduitErrorException("maniphest.edit", "ERR-CONDUIT-CORE", "foo");
+
+    assertThat(ConduitMetrics.describeError(e)).isEqualTo("ERR-CONDUIT-CORE");
+  }
+
+  @Test
+  public void testDescribeHttpError() throws Exception {
+    ConduitException e = new ConduitHttpException("maniphest.edit", 503, "Service Unavailable");
+
+    assertThat(ConduitMetrics.describeError(e)).isEqualTo("http_503");
+  }
+
+  @Test
+  public void testDescribeTransportError() throws Exception {
+    ConduitException e = new ConduitException("foo", new ConnectException());
+
+    assertThat(ConduitMetrics.describeError(e)).isEqualTo("transport");
+  }
+}
@@ -15,27 +15,40 @@ package com.googlesource.gerrit.plugins.its.phabricator.conduit;
 
 import static com.google.common.truth.Truth.assertThat;
 import static com.google.gerrit.testing.GerritJUnit.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.gerrit.metrics.DisabledMetricMaker;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonReader;
 import com.googlesource.gerrit.plugins.its.base.testutil.LoggingMockingTestCase;
 import com.googlesource.gerrit.plugins.its.phabricator.conduit.results.ConduitPing;
 import com.googlesource.gerrit.plugins.its.phabricator.conduit.results.ManiphestEdit;
 import com.googlesource.gerrit.plugins.its.phabricator.conduit.results.ManiphestSearch;
 import com.googlesource.gerrit.plugins.its.phabricator.conduit.results.ProjectSearch;
+import java.io.StringReader;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Stream;
+import org.eclipse.jgit.lib.Config;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -44,6 +57,9 @@ public class ConduitTest extends LoggingMockingTestCase {
   private static final String TOKEN = "tokenFoo";
   private ConduitConnection.Factory conduitConnectionFactory;
   private ConduitConnection conduitConnection;
+  private ProjectSearchCache projectSearchCache;
+  private TaskExistenceCache taskExistenceCache;
+  private CommentDeduplicator commentDeduplicator;
 
   @Override
   @Before
@@ -52,6 +68,18 @@ public class ConduitTest extends LoggingMockingTestCase {
     conduitConnection = mock(ConduitConnection.class);
     conduitConnectionFactory = mock(ConduitConnection.Factory.class);
     when(conduitConnectionFactory.create(URL)).thenReturn(conduitConnection);
+    projectSearchCache = new ProjectSearchCache(CacheBuilder.newBuilder().build());
+    taskExistenceCache =
+        new TaskExistenceCache(
+            CacheBuilder.newBuilder().build(), CacheBuilder.newBuilder().build());
+    Config serverConfig = new Config();
+    serverConfig.setBoolean("its-phabricator", null, "commentDedup", true);
+    commentDeduplicator =
+        new CommentDeduplicator(
+            "its-phabricator",
+            serverConfig,
+            CacheBuilder.newBuilder().build(),
+            new DisabledMetricMaker());
   }
 
   @Test
@@ -96,10 +124,39 @@ public class ConduitTest extends LoggingMockingTestCase {
     verifyNoMoreInteractions(conduitConnectionFactory);
   }
 
+  @Test
+  public void testIsAuthenticated() throws Exception {
+    JsonObject result = new JsonObject();
+    result.addProperty("userName", "gerrit-bot");
+    mockCall("user.whoami", new HashMap<>(), result);
+
+    assertThat(createConduit().isAuthenticated()).isTrue();
+  }
+
+  @Test
+  public void testIsAuthenticatedInvalidToken() throws Exception {
+    ConduitErrorException error = mock(ConduitErrorException.class);
+    when(error.getErrorCode()).thenReturn("ERR-INVALID-AUTH");
+    when(conduitConnection.call(eq("user.whoami"), any(), eq(TOKEN), any())).thenThrow(error);
+
+    assertThat(createConduit().isAuthenticated()).isFalse();
+  }
+
+  @Test
+  public void testIsAuthenticatedOtherError() throws Exception {
+    ConduitErrorException error = mock(ConduitErrorException.class);
+    when(error.getErrorCode()).thenReturn("ERR-CONDUIT-CORE");
+    when(conduitConnection.call(eq("user.whoami"), any(), eq(TOKEN), any())).thenThrow(error);
+
+    Conduit conduit = createConduit();
+
+    assertThrows(ConduitErrorException.class, () -> conduit.isAuthenticated());
+  }
+
   @Test
   public void testProjectSearchPass() throws Exception {
     Map<String, Object> params = new HashMap<>();
-    params.put("constraints", ImmutableMap.of("query", "foo"));
+    params.put("constraints", ImmutableMap.of("slugs", ImmutableList.of("foo")));
 
     JsonArray data = new JsonArray();
     data.add(createProjectJson(2, "foo"));
@@ -107,7 +164,7 @@ public class ConduitTest extends LoggingMockingTestCase {
     JsonObject result = new JsonObject();
     result.add("data", data);
 
-    when(conduitConnection.call("project.search", params, TOKEN)).thenReturn(result);
+    mockCall("project.search", params, result);
 
     Conduit conduit = createConduit();
 
@@ -118,12 +175,12 @@ public class ConduitTest extends LoggingMockingTestCase {
   @Test
   public void testProjectSearchNotFound() throws Exception {
     Map<String, Object> params = new HashMap<>();
-    params.put("constraints", ImmutableMap.of("query", "foo"));
+    params.put("constraints", ImmutableMap.of("slugs", ImmutableList.of("foo")));
 
     JsonObject result = new JsonObject();
     result.add("data", new JsonArray());
 
-    when(conduitConnection.call("project.search", params, TOKEN)).thenReturn(result);
+    mockCall("project.search", params, result);
 
     Conduit conduit = createConduit();
 
@@ -131,6 +188,179 @@ public class ConduitTest extends LoggingMockingTestCase {
     assertThat(actual).isNull();
   }
 
+  @Test
+  public void testProjectSearchCached() throws Exception {
+    Map<String, Object> params = new HashMap<>();
+    params.put("constraints", ImmutableMap.of("slugs", ImmutableList.of("foo")));
+
+    JsonArray data = new JsonArray();
+    data.add(createProjectJson(2, "foo"));
+
+    JsonObject result = new JsonObject();
+    result.add("data", data);
+
+    mockCall("project.search", params, result);
+
+    Conduit conduit = createConduit();
+
+    ProjectSearch actual1 = conduit.projectSearch("foo");
+    ProjectSearch actual2 = conduit.projectSearch("foo");
+    assertThat(actual1.getPhid()).isEqualTo("PHID-PROJ-foo");
+    assertThat(actual2.getPhid()).isEqualTo("PHID-PROJ-foo");
+
+    verify(conduitConnection).call(eq("project.search"), eq(params), eq(TOKEN), any());
+    verifyNoMoreInteractions(conduitConnection);
+  }
+
+  @Test
+  public void testProjectSearchNotFoundNotCached() throws Exception {
+    Map<String, Object> params = new HashMap<>();
+    params.put("constraints", ImmutableMap.of("slugs", ImmutableList.of("foo")));
+
+    JsonObject result = new JsonObject();
+    result.add("data", new JsonArray());
+
+    mockCall("project.search", params, result);
+
+    Conduit conduit = createConduit();
+
+    assertThat(conduit.projectSearch("foo")).isNull();
+    assertThat(conduit.projectSearch("foo")).isNull();
+
+    verify(conduitConnection, times(2)).call(eq("project.search"), eq(params), eq(TOKEN), any());
+  }
+
+  @Test
+  public void testProjectSearchInvalidate() throws Exception {
+    Map<String, Object> params = new HashMap<>();
+    params.put("constraints", ImmutableMap.of("slugs", ImmutableList.of("foo")));
+
+    JsonArray data = new JsonArray();
+    data.add(createProjectJson(2, "foo"));
+
+    JsonObject result = new JsonObject();
+    result.add("data", data);
+
+    mockCall("project.search", params, result);
+
+    Conduit conduit = createConduit();
+
+    conduit.projectSearch("foo");
+    conduit.invalidateProject("foo");
+    conduit.projectSearch("foo");
+
+    verify(conduitConnection, times(2)).call(eq("project.search"), eq(params), eq(TOKEN), any());
+  }
+
+  @Test
+  public void testProjectSearchIgnoresCase() throws Exception {
+    Map<String, Object> params = new HashMap<>();
+    params.put("constraints", ImmutableMap.of("slugs", ImmutableList.of("Foo")));
+
+    JsonArray data = new JsonArray();
+    data.add(createProjectJson(2, "foo"));
+
+    JsonObject result = new JsonObject();
+    result.add("data", data);
+
+    mockCall("project.search", params, result);
+
+    Conduit conduit = createConduit();
+
+    assertThat(conduit.projectSearch("Foo").getPhid()).isEqualTo("PHID-PROJ-foo");
+    assertThat(conduit.projectSearch("FOO").getPhid()).isEqualTo("PHID-PROJ-foo");
+    assertThat(conduit.projectSearch("foo").getPhid()).isEqualTo("PHID-PROJ-foo");
+
+    verify(conduitConnection).call(eq("project.search"), eq(params), eq(TOKEN), any());
+    verifyNoMoreInteractions(conduitConnection);
+  }
+
+  @Test
+  public void testProjectSearchCachesNameAndSlug() throws Exception {
+    Map<String, Object> params = new HashMap<>();
+    params.put("constraints", ImmutableMap.of("slugs", ImmutableList.of("Bar Baz")));
+
+    JsonArray data = new JsonArray();
+    data.add(createProjectJson(3, "Bar Baz", "bar_baz"));
+
+    JsonObject result = new JsonObject();
+    result.add("data", data);
+
+    mockCall("project.search", params, result);
+
+    Conduit conduit = createConduit();
+
+    assertThat(conduit.projectSearch("Bar Baz").getPhid()).isEqualTo("PHID-PROJ-Bar Baz");
+    assertThat(conduit.projectSearch("bar_baz").getPhid()).isEqualTo("PHID-PROJ-Bar Baz");
+
+    verify(conduitConnection).call(eq("project.search"), eq(params), eq(TOKEN), any());
+    verifyNoMoreInteractions(conduitConnection);
+  }
+
+  @Test
+  public void testProjectSearchInvalidateBySlug() throws Exception {
+    projectSearchCache.put(new ProjectSearch("PHID-PROJ-bar", 3, "Bar Baz", "bar_baz"));
+
+    Conduit conduit = createConduit();
+
+    conduit.invalidateProject("BAR_BAZ");
+
+    assertThat(projectSearchCache.get("Bar Baz")).isNull();
+    assertThat(projectSearchCache.get("bar_baz")).isNull();
+  }
+
+  @Test
+  public void testLoadProjectsAll() throws Exception {
+    Map<String, Object> params1 = new HashMap<>();
+    params1.put("constraints", ImmutableMap.of());
+    params1.put("limit", 100);
+    JsonArray data1 = new JsonArray();
+    data1.add(createProjectJson(2, "foo"));
+    mockCall("project.search", params1, createProjectPage("2", data1));
+
+    Map<String, Object> params2 = new HashMap<>(params1);
+    params2.put("after", "2");
+    JsonArray data2 = new JsonArray();
+    data2.add(createProjectJson(3, "Bar Baz", "bar_baz"));
+    mockCall("project.search", params2, createProjectPage(null, data2));
+
+    Conduit conduit = createConduit();
+
+    assertThat(conduit.loadProjects(ImmutableList.of())).isEqualTo(2);
+    assertThat(conduit.projectSearch("foo").getPhid()).isEqualTo("PHID-PROJ-foo");
+    assertThat(conduit.projectSearch("Bar Baz").getPhid()).isEqualTo("PHID-PROJ-Bar Baz");
+    assertThat(conduit.projectSearch("bar_baz").getPhid()).isEqualTo("PHID-PROJ-Bar Baz");
+
+    verify(conduitConnection).call(eq("project.search"), eq(params1), eq(TOKEN), any());
+    verify(conduitConnection).call(eq("project.search"), eq(params2), eq(TOKEN), any());
+    verifyNoMoreInteractions(conduitConnection);
+  }
+
+  @Test
+  public void testLoadProjectsSlugs() throws Exception {
+    Map<String, Object> params = new HashMap<>();
+    params.put("constraints", ImmutableMap.of("slugs", ImmutableList.of("foo")));
+    params.put("limit", 100);
+    JsonArray data = new JsonArray();
+    data.add(createProjectJson(2, "foo"));
+    mockCall("project.search", params, createProjectPage(null, data));
+
+    Conduit conduit = createConduit();
+
+    assertThat(conduit.loadProjects(ImmutableList.of("foo"))).isEqualTo(1);
+    assertThat(projectSearchCache.get("foo").getPhid()).isEqualTo("PHID-PROJ-foo");
+  }
+
+  @Test
+  public void testLoadProjectsFailure() throws Exception {
+    when(conduitConnection.call(eq("project.search"), any(), eq(TOKEN), any()))
+        .thenThrow(new ConduitException("foo"));
+
+    Conduit conduit = createConduit();
+
+    assertThrows(ConduitException.class, () -> conduit.loadProjects(ImmutableList.of()));
+  }
+
   @Test
   public void testManiphestEditNoop() throws Exception {
     Conduit conduit = createConduit();
@@ -163,7 +393,7 @@ public class ConduitTest extends LoggingMockingTestCase {
     data.add(createProjectJson(2, "foo"));
 
     JsonObject response = createEditResponse(1);
-    when(conduitConnection.call("maniphest.edit", params, TOKEN)).thenReturn(response);
+    mockCall("maniphest.edit", params, response);
 
     Conduit conduit = createConduit();
 
@@ -189,7 +419,7 @@ public class ConduitTest extends LoggingMockingTestCase {
     data.add(createProjectJson(2, "foo"));
 
     JsonObject response = createEditResponse(1);
-    when(conduitConnection.call("maniphest.edit", params, TOKEN)).thenReturn(response);
+    mockCall("maniphest.edit", params, response);
 
     Conduit conduit = spy(createConduit());
 
@@ -218,7 +448,7 @@ public class ConduitTest extends LoggingMockingTestCase {
     data.add(createProjectJson(2, "foo"));
 
     JsonObject response = createEditResponse(1);
-    when(conduitConnection.call("maniphest.edit", params, TOKEN)).thenReturn(response);
+    mockCall("maniphest.edit", params, response);
 
     Conduit conduit = spy(createConduit());
 
@@ -255,7 +485,7 @@ public class ConduitTest extends LoggingMockingTestCase {
     data.add(createProjectJson(2, "foo"));
 
     JsonObject response = createEditResponse(3);
-    when(conduitConnection.call("maniphest.edit", params, TOKEN)).thenReturn(response);
+    mockCall("maniphest.edit", params, response);
 
     Conduit conduit = spy(createConduit());
 
@@ -281,7 +511,7 @@ public class ConduitTest extends LoggingMockingTestCase {
     JsonObject result = new JsonObject();
     result.add("data", new JsonArray());
 
-    when(conduitConnection.call("maniphest.search", params, TOKEN)).thenReturn(result);
+    mockCall("maniphest.search", params, result);
     Conduit conduit = createConduit();
 
     verifyNoMoreInteractions(conduitConnection);
@@ -303,13 +533,439 @@ public class ConduitTest extends LoggingMockingTestCase {
     JsonObject result = new JsonObject();
     result.add("data", data);
 
-    when(conduitConnection.call("maniphest.search", params, TOKEN)).thenReturn(result);
+    mockCall("maniphest.search", params, result);
     Conduit conduit = createConduit();
 
     ManiphestSearch actual = conduit.maniphestSearch(4711);
     assertThat(actual.getId()).isEqualTo(23);
   }
 
+  @Test
+  public void testTaskExistsCached() throws Exception {
+    Map<String, Object> params = new HashMap<>();
+    params.put("constraints", ImmutableMap.of("ids", ImmutableList.of(4711)));
+
+    JsonObject needle = new JsonObject();
+    needle.addProperty("id", 4711);
+
+    JsonArray data = new JsonArray();
+    data.add(needle);
+
+    JsonObject result = new JsonObject();
+    result.add("data", data);
+
+    mockCall("maniphest.search", params, result);
+    Conduit conduit = createConduit();
+
+    assertThat(conduit.taskExists(4711)).isTrue();
+    assertThat(conduit.taskExists(4711)).isTrue();
+
+    verify(conduitConnection).call(eq("maniphest.search"), eq(params), eq(TOKEN), any());
+    assertThat(taskExistenceCache.get(4711)).isTrue();
+  }
+
+  @Test
+  public void testTaskMissingCached() throws Exception {
+    Map<String, Object> params = new HashMap<>();
+    params.put("constraints", ImmutableMap.of("ids", ImmutableList.of(4711)));
+
+    JsonObject result = new JsonObject();
+    result.add("data", new JsonArray());
+
+    mockCall("maniphest.search", params, result);
+    Conduit conduit = createConduit();
+
+    assertThat(conduit.taskExists(4711)).isFalse();
+    assertThat(conduit.taskExists(4711)).isFalse();
+
+    verify(conduitConnection).call(eq("maniphest.search"), eq(params), eq(TOKEN), any());
+    assertThat(taskExistenceCache.get(4711)).isFalse();
+  }
+
+  @Test
+  public void testTaskExistenceCachedPerServer() throws Exception {
+    Map<String, Object> params = new HashMap<>();
+    params.put("constraints", ImmutableMap.of("ids", ImmutableList.of(4711)));
+
+    JsonObject result = new JsonObject();
+    result.add("data", new JsonArray());
+
+    mockCall("maniphest.search", params, result);
+    taskExistenceCache.put(4711, true);
+    Conduit conduit = createConduit("other");
+
+    assertThat(conduit.taskExists(4711)).isFalse();
+
+    verify(conduitConnection).call(eq("maniphest.search"), eq(params), eq(TOKEN), any());
+    assertThat(taskExistenceCache.get(4711)).isTrue();
+    assertThat(taskExistenceCache.forServer("other").get(4711)).isFalse();
+  }
+
+  @Test
+  public void testCacheViewsPerServer() throws Exception {
+    Conduit conduit = createConduit("other");
+    ProjectSearch project = new ProjectSearch("PHID-PROJ-foo", 2, "Foo", "foo_slug");
+    conduit.getProjectSearchCache().put("Foo Bar", project);
+    conduit.getTaskExistenceCache().put(4711, true);
+    conduit.getTaskExistenceCache().put(4712, false);
+    projectSearchCache.put(new ProjectSearch("PHID-PROJ-bar", 3, "Bar", "bar"));
+    taskExistenceCache.put(4713, true);
+
+    assertThat(conduit.getProjectSearchCache().asMap())
+        .containsExactly("foo bar", project, "foo", project, "foo_slug", project);
+    assertThat(conduit.getTaskExistenceCache().getExisting()).containsExactly(4711);
+    assertThat(taskExistenceCache.getExisting()).containsExactly(4713);
+
+    conduit.getTaskExistenceCache().invalidateAll();
+
+    assertThat(conduit.getTaskExistenceCache().get(4711)).isNull();
+    assertThat(taskExistenceCache.get(4713)).isTrue();
+  }
+
+  @Test
+  public void testManiphestEditMarksTaskExisting() throws Exception {
+    Map<String, Object> transaction = new HashMap<>();
+    transaction.put("type", "comment");
+    transaction.put("value", "foo");
+
+    Map<String, Object> params = new HashMap<>();
+    params.put("objectIdentifier", 4711);
+    params.put("transactions", ImmutableList.of(transaction));
+
+    mockCall("maniphest.edit", params, createEditResponse(1));
+    taskExistenceCache.put(4711, false);
+    Conduit conduit = createConduit();
+
+    conduit.maniphestEdit(4711, "foo", null, null);
+
+    assertThat(conduit.taskExists(4711)).isTrue();
+    verify(conduitConnection).call(eq("maniphest.edit"), eq(params), eq(TOKEN), any());
+    verifyNoMoreInteractions(conduitConnection);
+  }
+
+  @Test
+  public void testManiphestEditDuplicateCommentSuppressed() throws Exception {
+    Map<String, Object> transaction = new HashMap<>();
+    transaction.put("type", "comment");
+    transaction.put("value", "foo");
+
+    Map<String, Object> params = new HashMap<>();
+    params.put("objectIdentifier", 4711);
+    params.put("transactions", ImmutableList.of(transaction));
+
+    mockCall("maniphest.edit", params, createEditResponse(1));
+    Conduit conduit = createConduit();
+
+    assertThat(conduit.maniphestEdit(4711, "foo", null, null)).isNotNull();
+    assertThat(conduit.maniphestEdit(4711, "foo", null, null)).isNull();
+
+    verify(conduitConnection).call(eq("maniphest.edit"), eq(params), eq(TOKEN), any());
+    verifyNoMoreInteractions(conduitConnection);
+  }
+
+  @Test
+  public void testManiphestEditDuplicateCommentNotSuppressedByDefault() throws Exception {
+    Map<String, Object> transaction = new HashMap<>();
+    transaction.put("type", "comment");
+    transaction.put("value", "foo");
+
+    Map<String, Object> params = new HashMap<>();
+    params.put("objectIdentifier", 4711);
+    params.put("transactions", ImmutableList.of(transaction));
+
+    mockCall("maniphest.edit", params, createEditResponse(1));
+    commentDeduplicator =
+        new CommentDeduplicator(
+            "its-phabricator",
+            new Config(),
+            CacheBuilder.newBuilder().build(),
+            new DisabledMetricMaker());
+    Conduit conduit = createConduit();
+
+    assertThat(conduit.maniphestEdit(4711, "foo", null, null)).isNotNull();
+    assertThat(conduit.maniphestEdit(4711, "foo", null, null)).isNotNull();
+
+    verify(conduitConnection, times(2)).call(eq("maniphest.edit"), eq(params), eq(TOKEN), any());
+  }
+
+  @Test
+  public void testManiphestEditSameCommentOnOtherServerNotSuppressed() throws Exception {
+    Map<String, Object> transaction = new HashMap<>();
+    transaction.put("type", "comment");
+    transaction.put("value", "foo");
+
+    Map<String, Object> params = new HashMap<>();
+    params.put("objectIdentifier", 4711);
+    params.put("transactions", ImmutableList.of(transaction));
+
+    mockCall("maniphest.edit", params, createEditResponse(1));
+
+    assertThat(createConduit().maniphestEdit(4711, "foo", null, null)).isNotNull();
+    assertThat(createConduit("other").maniphestEdit(4711, "foo", null, null)).isNotNull();
+
+    verify(conduitConnection, times(2)).call(eq("maniphest.edit"), eq(params), eq(TOKEN), any());
+  }
+
+  @Test
+  public void testManiphestEditSameCommentOnOtherTaskNotSuppressed() throws Exception {
+    Map<String, Object> transaction = new HashMap<>();
+    transaction.put("type", "comment");
+    transaction.put("value", "foo");
+
+    Map<String, Object> params = new HashMap<>();
+    params.put("transactions", ImmutableList.of(transaction));
+    params.put("objectIdentifier", 4711);
+    mockCall("maniphest.edit", params, createEditResponse(1));
+    Map<String, Object> otherParams = new HashMap<>(params);
+    otherParams.put("objectIdentifier", 4712);
+    mockCall("maniphest.edit", otherParams, createEditResponse(1));
+    Conduit conduit = createConduit();
+
+    conduit.maniphestEdit(4711, "foo", null, null);
+    conduit.maniphestEdit(4712, "foo", null, null);
+
+    verify(conduitConnection).call(eq("maniphest.edit"), eq(params), eq(TOKEN), any());
+    verify(conduitConnection).call(eq("maniphest.edit"), eq(otherParams), eq(TOKEN), any());
+    verifyNoMoreInteractions(conduitConnection);
+  }
+
+  @Test
+  public void testManiphestEditFailedCommentNotSuppressed() throws Exception {
+    Map<String, Object> transaction = new HashMap<>();
+    transaction.put("type", "comment");
+    transaction.put("value", "foo");
+
+    Map<String, Object> params = new HashMap<>();
+    params.put("objectIdentifier", 4711);
+    params.put("transactions", ImmutableList.of(transaction));
+
+    when(conduitConnection.call(eq("maniphest.edit"), eq(params), eq(TOKEN), any()))
+        .thenThrow(new ConduitException());
+    Conduit conduit = createConduit();
+
+    assertThrows(ConduitException.class, () -> conduit.maniphestEdit(4711, "foo", null, null));
+    assertThrows(ConduitException.class, () -> conduit.maniphestEdit(4711, "foo", null, null));
+
+    verify(conduitConnection, times(2)).call(eq("maniphest.edit"), eq(params), eq(TOKEN), any());
+  }
+
+  @Test
+  public void testManiphestEditDuplicateProjectNotSuppressed() throws Exception {
+    projectSearchCache.put("foo", new ProjectSearch("PHID-PROJ-foo", 2));
+    Map<String, Object> transaction = new HashMap<>();
+    transaction.put("type", "projects.add");
+    transaction.put("value", ImmutableList.of("PHID-PROJ-foo"));
+
+    Map<String, Object> params = new HashMap<>();
+    params.put("objectIdentifier", 4711);
+    params.put("transactions", ImmutableList.of(transaction));
+
+    mockCall("maniphest.edit", params, createEditResponse(1));
+    Conduit conduit = createConduit();
+
+    conduit.maniphestEdit(4711, null, "foo", null);
+    conduit.maniphestEdit(4711, null, "foo", null);
+
+    verify(conduitConnection, times(2)).call(eq("maniphest.edit"), eq(params), eq(TOKEN), any());
+  }
+
+  @Test
+  public void testProjectSearchAsyncCached() throws Exception {
+    projectSearchCache.put(new ProjectSearch("PHID-PROJ-foo", 2, "foo", "foo"));
+
+    Conduit conduit = createConduit();
+
+    assertThat(conduit.projectSearchAsync("foo").get().getPhid()).isEqualTo("PHID-PROJ-foo");
+    verifyNoInteractions(conduitConnection);
+  }
+
+  @Test
+  public void testManiphestEditAsyncResolvesProjects() throws Exception {
+    Map<String, Object> searchParams = new HashMap<>();
+    searchParams.put("constraints", ImmutableMap.of("slugs", ImmutableList.of("foo")));
+    JsonArray data = new JsonArray();
+    data.add(createProjectJson(2, "foo"));
+    JsonObject searchResult = new JsonObject();
+    searchResult.add("data", data);
+    mockCallAsync("project.search", searchParams, searchResult);
+
+    Map<String, Object> comment = new HashMap<>();
+    comment.put("type", "comment");
+    comment.put("value", "bar");
+    Map<String, Object> addProject = new HashMap<>();
+    addProject.put("type", "projects.add");
+    addProject.put("value", ImmutableList.of("PHID-PROJ-foo"));
+    Map<String, Object> editParams = new HashMap<>();
+    editParams.put("objectIdentifier", 4711);
+    editParams.put("transactions", ImmutableList.of(comment, addProject));
+    mockCallAsync("maniphest.edit", editParams, createEditResponse(2));
+
+    Conduit conduit = createConduit();
+
+    ManiphestEdit actual =
+        conduit
+            .maniphestEditAsync(
+                4711,
+                ImmutableList.of(
+                    ManiphestTransaction.comment("bar"), ManiphestTransaction.addProject("foo")))
+            .get();
+
+    assertThat(actual.getTransactions()).hasSize(2);
+    assertThat(taskExistenceCache.get(4711)).isTrue();
+    verify(conduitConnection).callAsync(eq("project.search"), eq(searchParams), eq(TOKEN), any());
+    verify(conduitConnection).callAsync(eq("maniphest.edit"), eq(editParams), eq(TOKEN), any());
+    verifyNoMoreInteractions(conduitConnection);
+  }
+
+  @Test
+  public void testManiphestEditAsyncConduitError() throws Exception {
+    projectSearchCache.put(new ProjectSearch("PHID-PROJ-foo", 2, "foo", "foo"));
+    when(conduitConnection.callAsync(eq("maniphest.edit"), any(), eq(TOKEN), any()))
+        .thenReturn(CompletableFuture.failedFuture(mock(ConduitErrorException.class)));
+
+    Conduit conduit = createConduit();
+
+    List<ManiphestTransaction> transactions =
+        ImmutableList.of(
+            ManiphestTransaction.comment("bar"), ManiphestTransaction.addProject("foo"));
+    ExecutionException e =
+        assertThrows(
+            ExecutionException.class, () -> conduit.maniphestEditAsync(4711, transactions).get());
+
+    assertThat(e).hasCauseThat().isInstanceOf(ConduitErrorException.class);
+    // The stale project is dropped, and the comment may get posted again.
+    assertThat(projectSearchCache.get("foo")).isNull();
+    assertThat(commentDeduplicator.claim(4711, transactions)).hasSize(2);
+  }
+
+  @Test
+  public void testManiphestSearchMultiple() throws Exception {
+    Map<String, Object> params = new HashMap<>();
+    params.put("constraints", ImmutableMap.of("ids", ImmutableList.of(4711, 4712)));
+
+    JsonObject needle = new JsonObject();
+    needle.addProperty("id", 4711);
+
+    JsonArray data = new JsonArray();
+    data.add(needle);
+
+    JsonObject result = new JsonObject();
+    result.add("data", data);
+
+    mockCall("maniphest.search", params, result);
+    Conduit conduit = createConduit();
+
+    Map<Integer, ManiphestSearch> actual = conduit.maniphestSearch(ImmutableList.of(4711, 4712));
+    assertThat(actual.keySet()).containsExactly(4711);
+  }
+
+  @Test
+  public void testTaskExistsMultipleOnlyLooksUpUncached() throws Exception {
+    Map<String, Object> params = new HashMap<>();
+    params.put("constraints", ImmutableMap.of("ids", ImmutableList.of(4712, 4713)));
+
+    JsonObject needle = new JsonObject();
+    needle.addProperty("id", 4712);
+
+    JsonArray data = new JsonArray();
+    data.add(needle);
+
+    JsonObject result = new JsonObject();
+    result.add("data", data);
+
+    mockCall("maniphest.search", params, result);
+    taskExistenceCache.put(4711, true);
+    Conduit conduit = createConduit();
+
+    Map<Integer, Boolean> actual = conduit.taskExists(ImmutableList.of(4711, 4712, 4713));
+    assertThat(actual).containsExactly(4711, true, 4712, true, 4713, false);
+    assertThat(taskExistenceCache.get(4713)).isFalse();
+  }
+
+  @Test
+  public void testSearchFetchesPagesWhenNeeded() throws Exception {
+    Map<String, Object> constraints = ImmutableMap.of("statuses", ImmutableList.of("open"));
+    Map<String, Object> params1 = new HashMap<>();
+    params1.put("constraints", constraints);
+    params1.put("limit", 2);
+    mockCall("maniphest.search", params1, createSearchPage("2", 1, 2));
+
+    Map<String, Object> params2 = new HashMap<>(params1);
+    params2.put("after", "2");
+    mockCall("maniphest.search", params2, createSearchPage(null, 3));
+
+    Conduit conduit = createConduit();
+
+    try (Stream<ManiphestSearch> stream =
+        conduit.search("maniphest.search", constraints, ManiphestSearch.class, 2, null)) {
+      Iterator<ManiphestSearch> iterator = stream.iterator();
+      assertThat(iterator.next().getId()).isEqualTo(1);
+      assertThat(iterator.next().getId()).isEqualTo(2);
+      verify(conduitConnection).call(eq("maniphest.search"), eq(params1), eq(TOKEN), any());
+      verifyNoMoreInteractions(conduitConnection);
+
+      assertThat(iterator.next().getId()).isEqualTo(3);
+      assertThat(iterator.hasNext()).isFalse();
+      verify(conduitConnection).call(eq("maniphest.search"), eq(params2), eq(TOKEN), any());
+    }
+  }
+
+  @Test
+  public void testSearchPrefetchesNextPage() throws Exception {
+    Map<String, Object> constraints = ImmutableMap.of("statuses", ImmutableList.of("open"));
+    Map<String, Object> params1 = new HashMap<>();
+    params1.put("constraints", constraints);
+    params1.put("limit", 100);
+    mockCall("maniphest.search", params1, createSearchPage("1", 1));
+
+    Map<String, Object> params2 = new HashMap<>(params1);
+    params2.put("after", "1");
+    mockCall("maniphest.search", params2, createSearchPage(null, 2));
+
+    Conduit conduit = createConduit();
+
+    try (Stream<ManiphestSearch> stream =
+        conduit.search(
+            "maniphest.search", constraints, ManiphestSearch.class, 500, Runnable::run)) {
+      Iterator<ManiphestSearch> iterator = stream.iterator();
+      assertThat(iterator.next().getId()).isEqualTo(1);
+      verify(conduitConnection).call(eq("maniphest.search"), eq(params2), eq(TOKEN), any());
+
+      assertThat(iterator.next().getId()).isEqualTo(2);
+      assertThat(iterator.hasNext()).isFalse();
+    }
+  }
+
+  @Test
+  public void testSearchFailure() throws Exception {
+    when(conduitConnection.call(eq("maniphest.search"), any(), eq(TOKEN), any()))
+        .thenThrow(new ConduitException("foo"));
+
+    Conduit conduit = createConduit();
+
+    try (Stream<ManiphestSearch> stream =
+        conduit.search("maniphest.search", ImmutableMap.of(), ManiphestSearch.class, 100, null)) {
+      assertThrows(UncheckedConduitException.class, () -> stream.findFirst());
+    }
+  }
+
+  private JsonObject createSearchPage(String after, int... ids) {
+    JsonArray data = new JsonArray();
+    for (int id : ids) {
+      JsonObject entry = new JsonObject();
+      entry.addProperty("id", id);
+      data.add(entry);
+    }
+
+    JsonObject cursor = new JsonObject();
+    cursor.addProperty("after", after);
+
+    JsonObject result = new JsonObject();
+    result.add("data", data);
+    result.add("cursor", cursor);
+    return result;
+  }
+
   private JsonObject createEditResponse(int transactions) {
     JsonObject resultObject = new JsonObject();
     resultObject.addProperty("id", 4712);
@@ -329,10 +985,24 @@ public class ConduitTest extends LoggingMockingTestCase {
     return response;
   }
 
+  private JsonObject createProjectPage(String after, JsonArray data) {
+    JsonObject cursor = new JsonObject();
+    cursor.addProperty("after", after);
+
+    JsonObject result = new JsonObject();
+    result.add("data", data);
+    result.add("cursor", cursor);
+    return result;
+  }
+
   private JsonObject createProjectJson(int id, String name) {
+    return createProjectJson(id, name, name);
+  }
+
+  private JsonObject createProjectJson(int id, String name, String slug) {
     JsonObject fields = new JsonObject();
     fields.addProperty("name", name);
-    fields.addProperty("slug", name);
+    fields.addProperty("slug", slug);
 
     JsonObject ret = new JsonObject();
     ret.addProperty("id", id);
@@ -342,7 +1012,41 @@ public class ConduitTest extends LoggingMockingTestCase {
     return ret;
   }
 
+  /** Stubs a streamed call on the connection to return the given result */
+  private void mockCall(String method, Map<String, Object> params, JsonElement result)
+      throws ConduitException {
+    when(conduitConnection.call(eq(method), eq(params), eq(TOKEN), any()))
+        .thenAnswer(
+            invocation -> {
+              ConduitConnection.ResultReader<?> resultReader = invocation.getArgument(3);
+              return resultReader.read(new JsonReader(new StringReader(result.toString())));
+            });
+  }
+
+  /** Stubs an asynchronous call on the connection to return the given result */
+  private void mockCallAsync(String method, Map<String, Object> params, JsonElement result) {
+    when(conduitConnection.callAsync(eq(method), eq(params), eq(TOKEN), any()))
+        .thenAnswer(
+            invocation -> {
+              ConduitConnection.ResultReader<?> resultReader = invocation.getArgument(3);
+              return CompletableFuture.completedFuture(
+                  resultReader.read(new JsonReader(new StringReader(result.toString()))));
+            });
+  }
+
   private Conduit createConduit() {
-    return new Conduit(conduitConnectionFactory, new SearchUtils(), URL, TOKEN);
+    return createConduit(null);
+  }
+
+  private Conduit createConduit(String server) {
+    return new Conduit(
+        conduitConnectionFactory,
+        new SearchUtils(),
+        projectSearchCache,
+        taskExistenceCache,
+        commentDeduplicator,
+        server,
+        URL,
+        TOKEN);
   }
 }
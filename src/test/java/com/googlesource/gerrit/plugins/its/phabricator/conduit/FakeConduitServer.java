@@ -0,0 +1,495 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.googlesource.gerrit.plugins.its.phabricator.conduit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process stand-in for a Phabricator instance
+ *
+ * <p>The server answers the Conduit methods the plugin uses ('conduit.ping', 'maniphest.search',
+ * 'maniphest.edit', and 'project.search') from an in-memory set of tasks and projects. Latency,
+ * failures, and the server's capacity can be configured, so the plugin's HTTP handling, pooling,
+ * and concurrency can be exercised end-to-end without a Phabricator install.
+ *
+ * <p>Configure the server before calling {@link #start()}.
+ */
+public class FakeConduitServer implements AutoCloseable {
+  /** Kinds of failures the server can inject */
+  public enum Failure {
+    /** Answer with HTTP status 503 */
+    HTTP_503,
+
+    /** Answer with HTTP status 500 */
+    HTTP_500,
+
+    /** Answer with a Conduit error */
+    CONDUIT_ERROR,
+
+    /** Close the connection without answering */
+    DISCONNECT
+  }
+
+  private final Map<Integer, Task> tasks = new ConcurrentHashMap<>();
+  private final Map<String, Project> projects = new ConcurrentHashMap<>();
+  private final Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+  private final AtomicInteger nextTransaction = new AtomicInteger(1);
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicInteger maxInFlight = new AtomicInteger();
+  private final Random random = new Random();
+
+  private volatile long latencyMillis;
+  private volatile long latencyJitterMillis;
+  private volatile double failureRate;
+  private volatile Failure failure = Failure.HTTP_503;
+  private volatile int failNextCalls;
+  private volatile int threads = 8;
+  private volatile int maxCallsPerSecond;
+
+  private long rateWindowStart;
+  private int rateWindowCalls;
+
+  private HttpServer server;
+  private ExecutorService executor;
+
+  /** Adds a task that 'maniphest.search' finds and 'maniphest.edit' can edit */
+  public FakeConduitServer addTask(int id) {
+    tasks.put(id, new Task(id));
+    return this;
+  }
+
+  /** Adds a project that 'project.search' finds by its slug, which is derived from its name */
+  public FakeConduitServer addProject(int id, String name) {
+    projects.put(name, new Project(id, name));
+    return this;
+  }
+
+  /**
+   * Delays each answer
+   *
+   * @param latencyMillis The minimum delay
+   * @param jitterMillis The maximum random delay on top of the minimum
+   */
+  public FakeConduitServer setLatency(long latencyMillis, long jitterMillis) {
+    this.latencyMillis = latencyMillis;
+    this.latencyJitterMillis = jitterMillis;
+    return this;
+  }
+
+  /**
+   * Lets a share of calls fail at random
+   *
+   * @param failure How the calls fail
+   * @param rate The share of calls to fail, between 0 and 1
+   */
+  public FakeConduitServer setFailureRate(Failure failure, double rate) {
+    this.failure = failure;
+    this.failureRate = rate;
+    return this;
+  }
+
+  /** Lets the next calls fail */
+  public FakeConduitServer failNextCalls(Failure failure, int count) {
+    this.failure = failure;
+    this.failNextCalls = count;
+    return this;
+  }
+
+  /** Sets the number of calls the server works on in parallel. Further calls wait. */
+  public FakeConduitServer setThreads(int threads) {
+    this.threads = threads;
+    return this;
+  }
+
+  /**
+   * Caps the calls per second, as Phabricator's rate limiting does
+   *
+   * <p>Calls above the cap get answered with HTTP status 429. 0 (the default) disables the cap.
+   */
+  public FakeConduitServer setMaxCallsPerSecond(int maxCallsPerSecond) {
+    this.maxCallsPerSecond = maxCallsPerSecond;
+    return this;
+  }
+
+  public FakeConduitServer start() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    executor =
+        Executors.newFixedThreadPool(
+            threads,
+            new ThreadFactoryBuilder().setNameFormat("fake-conduit-%d").setDaemon(true).build());
+    server.setExecutor(executor);
+    server.createContext("/api/", this::handle);
+    server.start();
+    return this;
+  }
+
+  @Override
+  public void close() {
+    if (server != null) {
+      server.stop(0);
+      executor.shutdownNow();
+      server = null;
+    }
+  }
+
+  /** Gives the base URL to configure the plugin with */
+  public String getUrl() {
+    return "http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + getPort();
+  }
+
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  /** Gives the number of calls of a method the server received, including failed ones */
+  public int getCalls(String method) {
+    AtomicInteger count = calls.get(method);
+    return count == null ? 0 : count.get();
+  }
+
+  /** Gives the highest number of calls the server worked on at the same time */
+  public int getMaxInFlight() {
+    return maxInFlight.get();
+  }
+
+  /** Gives the comments that got added to a task, in the order they got added */
+  public List<String> getComments(int taskId) {
+    Task task = tasks.get(taskId);
+    if (task == null) {
+      return Collections.emptyList();
+    }
+    synchronized (task) {
+      return new ArrayList<>(task.comments);
+    }
+  }
+
+  /** Gives the PHIDs of the projects a task is tagged with */
+  public List<String> getProjectPhids(int taskId) {
+    Task task = tasks.get(taskId);
+    if (task == null) {
+      return Collections.emptyList();
+    }
+    synchronized (task) {
+      return new ArrayList<>(task.projectPhids);
+    }
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    String method = exchange.getRequestURI().getPath().substring("/api/".length());
+    calls.computeIfAbsent(method, m -> new AtomicInteger()).incrementAndGet();
+    maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+    try {
+      JsonObject params = readParams(exchange);
+      delay();
+
+      if (!acquireRate()) {
+        respond(exchange, 429, "");
+        return;
+      }
+
+      Failure injected = nextFailure();
+      if (injected != null) {
+        switch (injected) {
+          case HTTP_503:
+            respond(exchange, 503, "");
+            return;
+          case HTTP_500:
+            respond(exchange, 500, "");
+            return;
+          case CONDUIT_ERROR:
+            respond(exchange, 200, error("ERR-CONDUIT-CORE", "Injected failure"));
+            return;
+          case DISCONNECT:
+          default:
+            exchange.close();
+            return;
+        }
+      }
+
+      respond(exchange, 200, answer(method, params));
+    } finally {
+      inFlight.decrementAndGet();
+      exchange.close();
+    }
+  }
+
+  private JsonObject readParams(HttpExchange exchange) throws IOException {
+    String body = new String(ByteStreams.toByteArray(exchange.getRequestBody()), UTF_8);
+    for (String pair : body.split("&")) {
+      int equals = pair.indexOf('=');
+      if (equals > 0 && "params".equals(pair.substring(0, equals))) {
+        String json = URLDecoder.decode(pair.substring(equals + 1), UTF_8);
+        return JsonParser.parseString(json).getAsJsonObject();
+      }
+    }
+    return new JsonObject();
+  }
+
+  private void delay() {
+    long delay = latencyMillis;
+    if (latencyJitterMillis > 0) {
+      synchronized (random) {
+        delay += (long) (random.nextDouble() * latencyJitterMillis);
+      }
+    }
+    if (delay > 0) {
+      try {
+        Thread.sleep(delay);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private synchronized boolean acquireRate() {
+    if (maxCallsPerSecond <= 0) {
+      return true;
+    }
+    long now = System.nanoTime();
+    if (now - rateWindowStart >= 1_000_000_000L) {
+      rateWindowStart = now;
+      rateWindowCalls = 0;
+    }
+    return ++rateWindowCalls <= maxCallsPerSecond;
+  }
+
+  private synchronized Failure nextFailure() {
+    if (failNextCalls > 0) {
+      failNextCalls--;
+      return failure;
+    }
+    if (failureRate > 0 && random.nextDouble() < failureRate) {
+      return failure;
+    }
+    return null;
+  }
+
+  private String answer(String method, JsonObject params) {
+    switch (method) {
+      case "conduit.ping":
+        return result(new JsonPrimitive("fake-phabricator"));
+      case "maniphest.search":
+        return maniphestSearch(params);
+      case "maniphest.edit":
+        return maniphestEdit(params);
+      case "project.search":
+        return projectSearch(params);
+      default:
+        return error("ERR-CONDUIT-CALL", "Conduit method '" + method + "' does not exist.");
+    }
+  }
+
+  private String maniphestSearch(JsonObject params) {
+    JsonObject constraints = params.getAsJsonObject("constraints");
+    TreeMap<Integer, Task> matches = new TreeMap<>();
+    if (constraints != null && constraints.has("ids")) {
+      for (JsonElement id : constraints.getAsJsonArray("ids")) {
+        Task task = tasks.get(id.getAsInt());
+        if (task != null) {
+          matches.put(task.id, task);
+        }
+      }
+    } else {
+      matches.putAll(tasks);
+    }
+
+    int limit = params.has("limit") ? params.get("limit").getAsInt() : Conduit.SEARCH_PAGE_SIZE;
+    int after = params.has("after") ? Integer.parseInt(params.get("after").getAsString()) : 0;
+    JsonArray data = new JsonArray();
+    String nextAfter = null;
+    int lastId = after;
+    for (Task task : matches.tailMap(after, false).values()) {
+      if (data.size() == limit) {
+        nextAfter = Integer.toString(lastId);
+        break;
+      }
+      lastId = task.id;
+      JsonObject fields = new JsonObject();
+      fields.addProperty("name", "Task " + task.id);
+      JsonObject entry = new JsonObject();
+      entry.addProperty("id", task.id);
+      entry.addProperty("type", "TASK");
+      entry.addProperty("phid", task.phid);
+      entry.add("fields", fields);
+      data.add(entry);
+    }
+    return result(searchResult(data, nextAfter));
+  }
+
+  private String maniphestEdit(JsonObject params) {
+    Task task = tasks.get(params.get("objectIdentifier").getAsInt());
+    if (task == null) {
+      return error("ERR-CONDUIT-CORE", "Monogram or object not found");
+    }
+
+    JsonArray transactionPhids = new JsonArray();
+    synchronized (task) {
+      for (JsonElement element : params.getAsJsonArray("transactions")) {
+        JsonObject transaction = element.getAsJsonObject();
+        String type = transaction.get("type").getAsString();
+        JsonElement value = transaction.get("value");
+        switch (type) {
+          case Conduit.ACTION_COMMENT:
+            task.comments.add(value.getAsString());
+            break;
+          case Conduit.ACTION_PROJECT_ADD:
+            value.getAsJsonArray().forEach(phid -> task.projectPhids.add(phid.getAsString()));
+            break;
+          case Conduit.ACTION_PROJECT_REMOVE:
+            value.getAsJsonArray().forEach(phid -> task.projectPhids.remove(phid.getAsString()));
+            break;
+          default:
+            return error("ERR-CONDUIT-CORE", "Transaction type '" + type + "' is unknown.");
+        }
+        JsonObject transactionPhid = new JsonObject();
+        transactionPhid.addProperty("phid", "PHID-XACT-TASK-" + nextTransaction.getAndIncrement());
+        transactionPhids.add(transactionPhid);
+      }
+    }
+
+    JsonObject object = new JsonObject();
+    object.addProperty("id", task.id);
+    object.addProperty("phid", task.phid);
+    JsonObject result = new JsonObject();
+    result.add("object", object);
+    result.add("transactions", transactionPhids);
+    return result(result);
+  }
+
+  private String projectSearch(JsonObject params) {
+    JsonObject constraints = params.getAsJsonObject("constraints");
+    Set<String> slugs = null;
+    if (constraints != null && constraints.has("slugs")) {
+      slugs = new HashSet<>();
+      for (JsonElement slug : constraints.getAsJsonArray("slugs")) {
+        slugs.add(normalizeSlug(slug.getAsString()));
+      }
+    }
+    JsonArray data = new JsonArray();
+    for (Project project : projects.values()) {
+      if (slugs == null || slugs.contains(project.slug)) {
+        JsonObject fields = new JsonObject();
+        fields.addProperty("name", project.name);
+        fields.addProperty("slug", project.slug);
+        JsonObject entry = new JsonObject();
+        entry.addProperty("id", project.id);
+        entry.addProperty("type", "PROJ");
+        entry.addProperty("phid", project.phid);
+        entry.add("fields", fields);
+        data.add(entry);
+      }
+    }
+    return result(searchResult(data, null));
+  }
+
+  /** Normalizes a slug like Phabricator does, by lower-casing and replacing whitespace */
+  private static String normalizeSlug(String slug) {
+    return slug.trim().toLowerCase(Locale.ROOT).replaceAll("\\s+", "_");
+  }
+
+  private static JsonObject searchResult(JsonArray data, String after) {
+    JsonObject cursor = new JsonObject();
+    cursor.addProperty("limit", Conduit.SEARCH_PAGE_SIZE);
+    cursor.addProperty("after", after);
+    cursor.add("before", JsonNull.INSTANCE);
+
+    JsonObject result = new JsonObject();
+    result.add("data", data);
+    result.add("maps", new JsonObject());
+    result.add("cursor", cursor);
+    return result;
+  }
+
+  private static String result(JsonElement result) {
+    JsonObject capsule = new JsonObject();
+    capsule.add("result", result);
+    capsule.add("error_code", JsonNull.INSTANCE);
+    capsule.add("error_info", JsonNull.INSTANCE);
+    return capsule.toString();
+  }
+
+  private static String error(String errorCode, String errorInfo) {
+    JsonObject capsule = new JsonObject();
+    capsule.add("result", JsonNull.INSTANCE);
+    capsule.addProperty("error_code", errorCode);
+    capsule.addProperty("error_info", errorInfo);
+    return capsule.toString();
+  }
+
+  private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+    byte[] bytes = body.getBytes(UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+    exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+    if (bytes.length > 0) {
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(bytes);
+      }
+    }
+  }
+
+  private static class Task {
+    final int id;
+    final String phid;
+    final List<String> comments = new ArrayList<>();
+    final List<String> projectPhids = new ArrayList<>();
+
+    Task(int id) {
+      this.id = id;
+      this.phid = "PHID-TASK-" + id;
+    }
+  }
+
+  private static class Project {
+    final int id;
+    final String name;
+    final String slug;
+    final String phid;
+
+    Project(int id, String name) {
+      this.id = id;
+      this.name = name;
+      this.slug = normalizeSlug(name);
+      this.phid = "PHID-PROJ-" + id;
+    }
+  }
+}
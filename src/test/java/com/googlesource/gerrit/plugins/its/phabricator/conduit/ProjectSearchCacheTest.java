@@ -0,0 +1,43 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.googlesource.gerrit.plugins.its.phabricator.conduit;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.cache.CacheBuilder;
+import com.googlesource.gerrit.plugins.its.base.testutil.LoggingMockingTestCase;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.results.ProjectSearch;
+import org.junit.Test;
+
+public class ProjectSearchCacheTest extends LoggingMockingTestCase {
+  private ProjectSearchCache cache;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    cache = new ProjectSearchCache(CacheBuilder.newBuilder().build());
+  }
+
+  @Test
+  public void testServerNamesPrefixingEachOther() throws Exception {
+    ProjectSearch foo = new ProjectSearch("PHID-PROJ-foo", 1, "Foo", "foo");
+    ProjectSearch bar = new ProjectSearch("PHID-PROJ-bar", 2, "Bar", "bar");
+    cache.forServer("a").put(foo);
+    cache.forServer("a/b").put(bar);
+
+    assertThat(cache.forServer("a").asMap()).containsExactly("foo", foo);
+    assertThat(cache.forServer("a/b").asMap()).containsExactly("bar", bar);
+    assertThat(cache.asMap()).isEmpty();
+  }
+}
@@ -0,0 +1,132 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.googlesource.gerrit.plugins.its.phabricator.conduit;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import com.google.common.base.Ticker;
+import com.googlesource.gerrit.plugins.its.base.testutil.LoggingMockingTestCase;
+import com.googlesource.gerrit.plugins.its.phabricator.conduit.RateLimiter.Budget;
+import org.eclipse.jgit.lib.Config;
+import org.junit.Test;
+
+public class RateLimiterTest extends LoggingMockingTestCase {
+  private FakeTicker ticker;
+
+  @Test
+  public void testDisabledByDefault() throws Exception {
+    RateLimiter limiter = createRateLimiter(new Config());
+
+    assertThat(limiter.isEnabled(Budget.READ)).isFalse();
+    assertThat(limiter.isEnabled(Budget.WRITE)).isFalse();
+    for (int i = 0; i < 100; i++) {
+      assertThat(limiter.reserve(Budget.WRITE)).isEqualTo(0);
+    }
+  }
+
+  @Test
+  public void testBurstPassesRightAway() throws Exception {
+    RateLimiter limiter = createRateLimiter(10, 5);
+
+    for (int i = 0; i < 5; i++) {
+      assertThat(limiter.reserve(Budget.WRITE)).isEqualTo(0);
+    }
+    assertThat(limiter.reserve(Budget.WRITE)).isEqualTo(MILLISECONDS.toNanos(100));
+  }
+
+  @Test
+  public void testWaitingCallersQueueUp() throws Exception {
+    RateLimiter limiter = createRateLimiter(10, 1);
+
+    assertThat(limiter.reserve(Budget.WRITE)).isEqualTo(0);
+    assertThat(limiter.reserve(Budget.WRITE)).isEqualTo(MILLISECONDS.toNanos(100));
+    assertThat(limiter.reserve(Budget.WRITE)).isEqualTo(MILLISECONDS.toNanos(200));
+
+    ticker.advance(MILLISECONDS.toNanos(150));
+
+    assertThat(limiter.reserve(Budget.WRITE)).isEqualTo(MILLISECONDS.toNanos(150));
+  }
+
+  @Test
+  public void testRefillsUpToBurst() throws Exception {
+    RateLimiter limiter = createRateLimiter(10, 3);
+    for (int i = 0; i < 3; i++) {
+      limiter.reserve(Budget.WRITE);
+    }
+
+    ticker.advance(MILLISECONDS.toNanos(10000));
+
+    for (int i = 0; i < 3; i++) {
+      assertThat(limiter.reserve(Budget.WRITE)).isEqualTo(0);
+    }
+    assertThat(limiter.reserve(Budget.WRITE)).isGreaterThan(0L);
+  }
+
+  @Test
+  public void testBurstDefaultsToRate() throws Exception {
+    RateLimiter limiter = createRateLimiter(4, 0);
+
+    for (int i = 0; i < 4; i++) {
+      assertThat(limiter.reserve(Budget.WRITE)).isEqualTo(0);
+    }
+    assertThat(limiter.reserve(Budget.WRITE)).isEqualTo(MILLISECONDS.toNanos(250));
+  }
+
+  @Test
+  public void testBudgetsAreSeparate() throws Exception {
+    Config cfg = new Config();
+    cfg.setInt("its-phabricator", null, "readRateLimit", 10);
+    cfg.setInt("its-phabricator", null, "readRateLimitBurst", 1);
+    cfg.setInt("its-phabricator", null, "writeRateLimit", 1);
+    cfg.setInt("its-phabricator", null, "writeRateLimitBurst", 1);
+    RateLimiter limiter = createRateLimiter(cfg);
+
+    assertThat(limiter.reserve(Budget.WRITE)).isEqualTo(0);
+    assertThat(limiter.reserve(Budget.READ)).isEqualTo(0);
+    assertThat(limiter.reserve(Budget.WRITE)).isEqualTo(MILLISECONDS.toNanos(1000));
+    assertThat(limiter.reserve(Budget.READ)).isEqualTo(MILLISECONDS.toNanos(100));
+  }
+
+  @Test
+  public void testGetBudget() throws Exception {
+    assertThat(RateLimiter.getBudget("maniphest.search")).isEqualTo(Budget.READ);
+    assertThat(RateLimiter.getBudget("maniphest.edit")).isEqualTo(Budget.WRITE);
+  }
+
+  private RateLimiter createRateLimiter(int writeRate, int writeBurst) {
+    Config cfg = new Config();
+    cfg.setInt("its-phabricator", null, "writeRateLimit", writeRate);
+    cfg.setInt("its-phabricator", null, "writeRateLimitBurst", writeBurst);
+    return createRateLimiter(cfg);
+  }
+
+  private RateLimiter createRateLimiter(Config cfg) {
+    ticker = new FakeTicker();
+    return new RateLimiter("its-phabricator", cfg, ticker);
+  }
+
+  private static class FakeTicker extends Ticker {
+    private long nanos = MILLISECONDS.toNanos(1000);
+
+    void advance(long delta) {
+      nanos += delta;
+    }
+
+    @Override
+    public long read() {
+      return nanos;
+    }
+  }
+}
@@ -0,0 +1,114 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.googlesource.gerrit.plugins.its.phabricator.conduit;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.googlesource.gerrit.plugins.its.base.testutil.LoggingMockingTestCase;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import org.apache.http.NoHttpResponseException;
+import org.junit.Test;
+
+public class RetryPolicyTest extends LoggingMockingTestCase {
+  @Test
+  public void testConduitErrorNotRetried() throws Exception {
+    RetryPolicy policy = createRetryPolicy();
+    ConduitException e = new ConduitErrorException("maniphest.search", "ERR-CONDUIT-CORE", "foo");
+
+    assertThat(policy.shouldRetry("maniphest.search", 1, e)).isFalse();
+  }
+
+  @Test
+  public void testTransportFailureRetriedForSearch() throws Exception {
+    RetryPolicy policy = createRetryPolicy();
+    ConduitException e = new ConduitException("foo", new SocketTimeoutException());
+
+    assertThat(policy.shouldRetry("maniphest.search", 1, e)).isTrue();
+  }
+
+  @Test
+  public void testTransportFailureAfterSendNotRetriedForEdit() throws Exception {
+    RetryPolicy policy = createRetryPolicy();
+
+    assertThat(
+            policy.shouldRetry(
+                "maniphest.edit", 1, new ConduitException("foo", new SocketTimeoutException())))
+        .isFalse();
+    assertThat(
+            policy.shouldRetry(
+                "maniphest.edit", 1, new ConduitException("foo", new NoHttpResponseException("x"))))
+        .isFalse();
+  }
+
+  @Test
+  public void testConnectFailureRetriedForEdit() throws Exception {
+    RetryPolicy policy = createRetryPolicy();
+    ConduitException e = new ConduitException("foo", new ConnectException());
+
+    assertThat(policy.shouldRetry("maniphest.edit", 1, e)).isTrue();
+  }
+
+  @Test
+  public void testHttpStatusForSearch() throws Exception {
+    RetryPolicy policy = createRetryPolicy();
+
+    assertThat(policy.shouldRetry("project.search", 1, httpException(502))).isTrue();
+    assertThat(policy.shouldRetry("project.search", 1, httpException(503))).isTrue();
+    assertThat(policy.shouldRetry("project.search", 1, httpException(429))).isTrue();
+    assertThat(policy.shouldRetry("project.search", 1, httpException(404))).isFalse();
+    assertThat(policy.shouldRetry("project.search", 1, httpException(500))).isFalse();
+  }
+
+  @Test
+  public void testHttpStatusForEdit() throws Exception {
+    RetryPolicy policy = createRetryPolicy();
+
+    assertThat(policy.shouldRetry("maniphest.edit", 1, httpException(429))).isTrue();
+    assertThat(policy.shouldRetry("maniphest.edit", 1, httpException(503))).isFalse();
+    assertThat(policy.shouldRetry("maniphest.edit", 1, httpException(502))).isFalse();
+    assertThat(policy.shouldRetry("maniphest.edit", 1, httpException(504))).isFalse();
+  }
+
+  @Test
+  public void testMaxRetries() throws Exception {
+    RetryPolicy policy = createRetryPolicy();
+    ConduitException e = new ConduitException("foo", new ConnectException());
+
+    assertThat(policy.shouldRetry("conduit.ping", 3, e)).isTrue();
+    assertThat(policy.shouldRetry("conduit.ping", 4, e)).isFalse();
+  }
+
+  @Test
+  public void testBackoffIsCapped() throws Exception {
+    RetryPolicy policy = createRetryPolicy();
+
+    for (int i = 0; i < 100; i++) {
+      assertThat(policy.getBackoffMillis(1)).isAtMost(100);
+      assertThat(policy.getBackoffMillis(2)).isAtMost(200);
+      assertThat(policy.getBackoffMillis(3)).isAtMost(400);
+      assertThat(policy.getBackoffMillis(10)).isAtMost(1000);
+      assertThat(policy.getBackoffMillis(100)).isAtMost(1000);
+      assertThat(policy.getBackoffMillis(100)).isAtLeast(0);
+    }
+  }
+
+  private ConduitHttpException httpException(int status) {
+    return new ConduitHttpException("foo", status, null);
+  }
+
+  private RetryPolicy createRetryPolicy() {
+    return new RetryPolicy(3, 100, 1000);
+  }
+}
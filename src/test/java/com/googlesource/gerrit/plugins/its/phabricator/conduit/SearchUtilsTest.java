@@ -18,8 +18,11 @@ import static com.google.common.truth.Truth.assertThat;
 import com.google.common.collect.Lists;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import com.googlesource.gerrit.plugins.its.base.testutil.LoggingMockingTestCase;
 import com.googlesource.gerrit.plugins.its.phabricator.conduit.results.PhabObject;
+import java.io.StringReader;
 import java.util.List;
 import java.util.stream.Stream;
 import org.junit.Test;
@@ -66,6 +69,77 @@ public class SearchUtilsTest extends LoggingMockingTestCase {
     assertThat(streamAsPhidList).containsExactly("PHID1", "PHID2", "PHID3");
   }
 
+  @Test
+  public void testStreamFromReaderMultiple() throws Exception {
+    JsonReader reader =
+        createReader("{\"data\": [{\"phid\": \"PHID1\"}, {\"phid\": \"PHID2\"}], \"maps\": {}}");
+
+    SearchUtils searchUtils = createSearchUtils();
+    List<String> streamAsPhidList;
+    try (Stream<PhabObject> stream = searchUtils.stream(reader, PhabObject.class)) {
+      streamAsPhidList = Lists.newArrayList(stream.map(o -> o.getPhid()).iterator());
+    }
+    assertThat(streamAsPhidList).containsExactly("PHID1", "PHID2");
+    assertThat(reader.peek()).isEqualTo(JsonToken.END_DOCUMENT);
+  }
+
+  @Test
+  public void testStreamFromReaderWithoutData() throws Exception {
+    JsonReader reader = createReader("{\"data\": null, \"maps\": {}}");
+
+    SearchUtils searchUtils = createSearchUtils();
+    try (Stream<PhabObject> stream = searchUtils.stream(reader, PhabObject.class)) {
+      assertThat(stream.findFirst().isPresent()).isFalse();
+    }
+    assertThat(reader.peek()).isEqualTo(JsonToken.END_DOCUMENT);
+  }
+
+  @Test
+  public void testStreamFromReaderDecodesLazily() throws Exception {
+    // The second entry cannot get decoded, so the stream must not try to.
+    JsonReader reader =
+        createReader(
+            "{\"data\": [{\"phid\": \"PHID1\"}, \"no object\"],"
+                + " \"cursor\": {\"after\": null}}");
+
+    SearchUtils searchUtils = createSearchUtils();
+    PhabObject first;
+    try (Stream<PhabObject> stream = searchUtils.stream(reader, PhabObject.class)) {
+      first = stream.findFirst().orElse(null);
+    }
+    assertThat(first.getPhid()).isEqualTo("PHID1");
+    assertThat(reader.peek()).isEqualTo(JsonToken.END_DOCUMENT);
+  }
+
+  @Test
+  public void testReadPage() throws Exception {
+    JsonReader reader =
+        createReader(
+            "{\"data\": [{\"phid\": \"PHID1\"}, {\"phid\": \"PHID2\"}],"
+                + " \"cursor\": {\"limit\": 2, \"after\": \"2\", \"before\": null}}");
+
+    SearchPage<PhabObject> page = createSearchUtils().readPage(reader, PhabObject.class);
+
+    assertThat(Lists.transform(page.getData(), o -> o.getPhid())).containsExactly("PHID1", "PHID2");
+    assertThat(page.getAfter()).isEqualTo("2");
+    assertThat(reader.peek()).isEqualTo(JsonToken.END_DOCUMENT);
+  }
+
+  @Test
+  public void testReadLastPage() throws Exception {
+    JsonReader reader =
+        createReader("{\"data\": [{\"phid\": \"PHID1\"}], \"cursor\": {\"after\": null}}");
+
+    SearchPage<PhabObject> page = createSearchUtils().readPage(reader, PhabObject.class);
+
+    assertThat(page.getData()).hasSize(1);
+    assertThat(page.getAfter()).isNull();
+  }
+
+  private JsonReader createReader(String json) {
+    return new JsonReader(new StringReader(json));
+  }
+
   private SearchUtils createSearchUtils() {
     return new SearchUtils();
   }
@@ -0,0 +1,63 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.googlesource.gerrit.plugins.its.phabricator.conduit;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.cache.CacheBuilder;
+import com.googlesource.gerrit.plugins.its.base.testutil.LoggingMockingTestCase;
+import org.junit.Test;
+
+public class TaskExistenceCacheTest extends LoggingMockingTestCase {
+  private TaskExistenceCache cache;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    cache =
+        new TaskExistenceCache(
+            CacheBuilder.newBuilder().build(), CacheBuilder.newBuilder().build());
+  }
+
+  @Test
+  public void testServersKeptApart() throws Exception {
+    cache.forServer("a").put(4711, true);
+
+    assertThat(cache.forServer("a").get(4711)).isTrue();
+    assertThat(cache.forServer("b").get(4711)).isNull();
+    assertThat(cache.get(4711)).isNull();
+  }
+
+  @Test
+  public void testServerNamesPrefixingEachOther() throws Exception {
+    cache.forServer("a").put(4711, true);
+    cache.forServer("a/b").put(4712, true);
+    cache.put(4713, true);
+
+    assertThat(cache.forServer("a").getExisting()).containsExactly(4711);
+    assertThat(cache.forServer("a/b").getExisting()).containsExactly(4712);
+    assertThat(cache.getExisting()).containsExactly(4713);
+  }
+
+  @Test
+  public void testInvalidateAllKeepsOtherServers() throws Exception {
+    cache.forServer("a").put(4711, true);
+    cache.forServer("a/b").put(4712, false);
+
+    cache.forServer("a").invalidateAll();
+
+    assertThat(cache.forServer("a").get(4711)).isNull();
+    assertThat(cache.forServer("a/b").get(4712)).isFalse();
+  }
+}